@@ -0,0 +1,80 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base of the benchmarks. Each benchmark method processes all jars of the corpus once, so the results are the time a
+ * build needs for the profile and not per jar. The jars are processed in the work directory, the corpus isn't touched.
+ *
+ * @author j.boesl, 17.10.26
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public abstract class AbstractCorpusBenchmark
+{
+
+  /**
+   * The name of a {@link JarCorpus.PROFILE}.
+   */
+  @Param({"SMALL", "HUGE", "MANY_ENTRIES", "SIGNED"})
+  public String profile;
+
+  @Param({"" + JarCorpus.DEFAULT_SEED})
+  public long seed;
+
+  JarCorpus corpus;
+  Path workDirectory;
+
+
+  @Setup(Level.Trial)
+  public final void setUpCorpus() throws Exception
+  {
+    corpus = JarCorpus.get(JarCorpus.PROFILE.valueOf(profile), seed);
+    workDirectory = Files.createTempDirectory("repository-jarsign-benchmark");
+    setUpTrial();
+  }
+
+  @TearDown(Level.Trial)
+  public final void tearDownCorpus() throws Exception
+  {
+    try
+    {
+      tearDownTrial();
+    }
+    finally
+    {
+      JarCorpus.delete(workDirectory);
+    }
+  }
+
+  /**
+   * Called once per trial after the corpus and the work directory were created.
+   */
+  void setUpTrial() throws Exception
+  {
+  }
+
+  /**
+   * Called once per trial before the work directory is deleted.
+   */
+  void tearDownTrial() throws Exception
+  {
+  }
+
+  /**
+   * @return a log that only shows warnings and errors, so the output of JMH stays readable.
+   */
+  static Log createLog()
+  {
+    return new DefaultLog(new ConsoleLogger(Logger.LEVEL_WARN, "repository-jarsign"));
+  }
+
+}
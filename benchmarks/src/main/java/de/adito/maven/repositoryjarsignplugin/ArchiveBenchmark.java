@@ -0,0 +1,58 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Rewriting of the jars before they are repacked: former signatures are removed and the manifest is updated. The jars
+ * are copied from the corpus before each iteration. Use the <tt>SIGNED</tt> profile to measure unsigning.
+ *
+ * @author j.boesl, 17.10.26
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+public class ArchiveBenchmark extends AbstractCorpusBenchmark
+{
+
+  private Map<String, String> additionalManifestEntries;
+  private List<Path> jars;
+
+
+  @Override
+  void setUpTrial()
+  {
+    additionalManifestEntries = new LinkedHashMap<>();
+    additionalManifestEntries.put("Permissions", "all-permissions");
+    additionalManifestEntries.put("Codebase", "*");
+  }
+
+  @Setup(Level.Iteration)
+  public void copyJars() throws Exception
+  {
+    jars = corpus.copyTo(workDirectory.resolve("jars"));
+  }
+
+  /**
+   * Removes the signatures and adds manifest entries like configured <tt>additionalManifestEntries</tt> do.
+   */
+  @Benchmark
+  public void rewriteManifest() throws Exception
+  {
+    for (Path jar : jars)
+      ArchiveRewriter.rewrite(jar, additionalManifestEntries);
+  }
+
+  /**
+   * Removes the signatures only.
+   */
+  @Benchmark
+  public void unsign() throws Exception
+  {
+    for (Path jar : jars)
+      ArchiveRewriter.rewrite(jar, null);
+  }
+
+}
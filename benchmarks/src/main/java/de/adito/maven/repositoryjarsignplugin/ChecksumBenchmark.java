@@ -0,0 +1,64 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Checksums of the jars like they are calculated to look up the cache. A new {@link SignChecksumHelper} is used for
+ * each invocation, so nothing is known from a former calculation.
+ *
+ * @author j.boesl, 17.10.26
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ChecksumBenchmark extends AbstractCorpusBenchmark
+{
+
+  /**
+   * The name of a {@link SignChecksumHelper.ALGORITHM}.
+   */
+  @Param({"SHA1", "SHA256", "XXH64"})
+  public String algorithm;
+
+  private List<Path> jars;
+  private Path copyDirectory;
+
+
+  @Override
+  void setUpTrial() throws Exception
+  {
+    jars = corpus.getJars();
+    copyDirectory = workDirectory.resolve("copies");
+    corpus.copyTo(copyDirectory);
+  }
+
+  @Benchmark
+  public void checksum(Blackhole pBlackhole) throws Exception
+  {
+    SignChecksumHelper checksumHelper = _createChecksumHelper();
+    for (Path jar : jars)
+      pBlackhole.consume(checksumHelper.getChecksum(jar, false));
+  }
+
+  /**
+   * Copies the jars and calculates their checksums on the way, like new jars are put into the cache.
+   */
+  @Benchmark
+  public void copyWithChecksum() throws Exception
+  {
+    SignChecksumHelper checksumHelper = _createChecksumHelper();
+    for (Path jar : jars)
+      checksumHelper.copy(jar, copyDirectory.resolve(jar.getFileName()));
+  }
+
+  private SignChecksumHelper _createChecksumHelper()
+  {
+    return new SignChecksumHelper(createLog(), SignChecksumHelper.ALGORITHM.valueOf(algorithm), null,
+                                  new SignMetrics());
+  }
+
+}
@@ -0,0 +1,63 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Compressing signed jars for distribution and decompressing them again. <tt>PACK200</tt> only runs on JVMs up to Java
+ * 13, the jars are repacked first then.
+ *
+ * @author j.boesl, 17.10.26
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class CompressionBenchmark extends AbstractCorpusBenchmark
+{
+
+  /**
+   * The name of a {@link Compressor.TYPE}.
+   */
+  @Param({"GZIP", "PACK200"})
+  public String compression;
+
+  private Compressor.TYPE type;
+  private Compressor compressor;
+  private List<Path> jars;
+  private List<Path> compressedJars;
+
+
+  @Override
+  void setUpTrial() throws Exception
+  {
+    type = Compressor.TYPE.valueOf(compression);
+    compressor = type == Compressor.TYPE.PACK200 ? new Pack200Compressor() : new GzipCompressor();
+    jars = corpus.copyTo(workDirectory.resolve("jars"));
+    compressedJars = new ArrayList<>();
+    for (Path jar : jars)
+    {
+      if (type == Compressor.TYPE.PACK200)
+        PackUtility.repack(jar);
+      Path compressedJar = type.getPath(jar);
+      compressor.compress(jar, compressedJar);
+      compressedJars.add(compressedJar);
+    }
+  }
+
+  @Benchmark
+  public void compress() throws Exception
+  {
+    for (int i = 0; i < jars.size(); i++)
+      compressor.compress(jars.get(i), compressedJars.get(i));
+  }
+
+  @Benchmark
+  public void decompress() throws Exception
+  {
+    for (int i = 0; i < jars.size(); i++)
+      compressor.decompress(compressedJars.get(i), jars.get(i));
+  }
+
+}
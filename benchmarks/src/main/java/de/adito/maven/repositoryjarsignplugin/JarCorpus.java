@@ -0,0 +1,306 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.jar.*;
+import java.util.zip.*;
+
+/**
+ * Generates the jars the benchmarks work on. The corpus only depends on its profile and seed, so results of different
+ * plugin versions are comparable. Class entries are taken from the BouncyCastle provider jar, so Pack200 gets real
+ * class files. Generated corpora are kept in the temp directory and reused by later runs and forks.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class JarCorpus
+{
+
+  static final long DEFAULT_SEED = 20171026L;
+
+  private static final long ENTRY_TIME = 1508976000000L;
+  private static final String COMPLETE_MARKER = ".complete";
+  private static List<Map.Entry<String, byte[]>> classPool;
+
+  private final Path root;
+  private final PROFILE profile;
+
+
+  private JarCorpus(Path pRoot, PROFILE pProfile)
+  {
+    root = pRoot;
+    profile = pProfile;
+  }
+
+  /**
+   * Returns the corpus of a profile and generates it if it doesn't exist yet.
+   *
+   * @param pProfile the profile.
+   * @param pSeed    the seed of the generated content.
+   * @return the corpus.
+   */
+  static JarCorpus get(PROFILE pProfile, long pSeed) throws Exception
+  {
+    Path root = Paths.get(System.getProperty("java.io.tmpdir"), "repository-jarsign-benchmarks",
+                          pProfile.name().toLowerCase(Locale.ENGLISH) + "-" + pSeed);
+    JarCorpus corpus = new JarCorpus(root, pProfile);
+    synchronized (JarCorpus.class)
+    {
+      if (!Files.exists(root.resolve(COMPLETE_MARKER)))
+      {
+        delete(root);
+        corpus._generate(pSeed);
+        Files.createFile(root.resolve(COMPLETE_MARKER));
+      }
+    }
+    return corpus;
+  }
+
+  PROFILE getProfile()
+  {
+    return profile;
+  }
+
+  /**
+   * @return the keystore with the key the benchmarks sign with. See {@link TestKeys}.
+   */
+  Path getKeystore()
+  {
+    return root.resolve("keystore");
+  }
+
+  /**
+   * @return the directory with the original jars. It must not be modified.
+   */
+  Path getJarDirectory()
+  {
+    return root.resolve("jars");
+  }
+
+  /**
+   * @return the original jars ordered by name.
+   */
+  List<Path> getJars() throws IOException
+  {
+    List<Path> jars = new ArrayList<>();
+    try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(getJarDirectory(), "*.jar"))
+    {
+      for (Path jar : directoryStream)
+        jars.add(jar);
+    }
+    Collections.sort(jars);
+    return jars;
+  }
+
+  /**
+   * Replaces the content of a directory with copies of the original jars.
+   *
+   * @param pDirectory the directory.
+   * @return the copies ordered by name.
+   */
+  List<Path> copyTo(Path pDirectory) throws IOException
+  {
+    delete(pDirectory);
+    Files.createDirectories(pDirectory);
+    List<Path> copies = new ArrayList<>();
+    for (Path jar : getJars())
+      copies.add(Files.copy(jar, pDirectory.resolve(jar.getFileName())));
+    return copies;
+  }
+
+  /**
+   * Deletes a file or a directory with its content. Missing files are ignored.
+   *
+   * @param pPath the file or directory.
+   */
+  static void delete(Path pPath) throws IOException
+  {
+    if (!Files.exists(pPath, LinkOption.NOFOLLOW_LINKS))
+      return;
+    Files.walkFileTree(pPath, new SimpleFileVisitor<Path>()
+    {
+      @Override
+      public FileVisitResult visitFile(Path pFile, BasicFileAttributes pAttributes) throws IOException
+      {
+        Files.delete(pFile);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path pDirectory, IOException pException) throws IOException
+      {
+        if (pException != null)
+          throw pException;
+        Files.delete(pDirectory);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private void _generate(long pSeed) throws Exception
+  {
+    Files.createDirectories(getJarDirectory());
+    TestKeys.create("Benchmark", false).store(getKeystore());
+
+    Random random = new Random(pSeed);
+    List<Map.Entry<String, byte[]>> classes = _getClassPool();
+    for (int i = 0; i < profile.jarCount; i++)
+    {
+      Path jar = getJarDirectory().resolve(String.format("%s-%04d.jar", profile.name().toLowerCase(Locale.ENGLISH), i));
+      try (JarOutputStream outputStream = new JarOutputStream(Files.newOutputStream(jar), _createManifest(i)))
+      {
+        int classOffset = random.nextInt(classes.size());
+        for (int j = 0; j < profile.classCount && j < classes.size(); j++)
+        {
+          Map.Entry<String, byte[]> classEntry = classes.get((classOffset + j) % classes.size());
+          _write(outputStream, classEntry.getKey(), classEntry.getValue());
+        }
+        for (int j = 0; j < profile.resourceCount; j++)
+          _write(outputStream, String.format("resources/r%d/resource-%05d.properties", j % 16, j),
+                 _createText(random, profile.resourceSize));
+        for (int j = 0; j < profile.blobCount; j++)
+        {
+          byte[] blob = new byte[profile.blobSize];
+          random.nextBytes(blob);
+          _write(outputStream, String.format("blobs/blob-%02d.bin", j), blob);
+        }
+      }
+    }
+
+    if (profile.signed)
+    {
+      // signed by another key, so they have to be unsigned before they are signed again
+      Path foreignKeystore = root.resolve("foreign-keystore");
+      TestKeys.create("Foreign", false).store(foreignKeystore);
+      SigningKey foreignKey = SigningKey.load(foreignKeystore.toString(), TestKeys.ALIAS, TestKeys.PASSWORD, null);
+      SignEngine signEngine = new InternalSignEngine(foreignKey, null, null);
+      for (Path jar : getJars())
+        signEngine.sign(jar, null, null);
+    }
+  }
+
+  private static Manifest _createManifest(int pIndex)
+  {
+    Manifest manifest = new Manifest();
+    Attributes attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Created-By", "repository-jarsign-maven-plugin-benchmarks");
+    attributes.putValue("Implementation-Title", "corpus-" + pIndex);
+    return manifest;
+  }
+
+  private static void _write(JarOutputStream pOutputStream, String pName, byte[] pContent) throws IOException
+  {
+    ZipEntry entry = new ZipEntry(pName);
+    entry.setTime(ENTRY_TIME);
+    pOutputStream.putNextEntry(entry);
+    pOutputStream.write(pContent);
+    pOutputStream.closeEntry();
+  }
+
+  /**
+   * @return compressible text like the resources of real jars.
+   */
+  private static byte[] _createText(Random pRandom, int pSize)
+  {
+    StringBuilder builder = new StringBuilder(pSize + 64);
+    while (builder.length() < pSize)
+      builder.append("key.").append(pRandom.nextInt(1000)).append('=').append("value ")
+          .append(Long.toString(pRandom.nextLong(), 36)).append('\n');
+    return builder.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return the class files of the BouncyCastle provider jar ordered by name.
+   */
+  private static synchronized List<Map.Entry<String, byte[]>> _getClassPool() throws IOException, URISyntaxException
+  {
+    if (classPool == null)
+    {
+      final Path classJar = Paths.get(
+          BouncyCastleProvider.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+      final TreeMap<String, byte[]> classes = new TreeMap<>();
+      if (Files.isDirectory(classJar))
+        Files.walkFileTree(classJar, new SimpleFileVisitor<Path>()
+        {
+          @Override
+          public FileVisitResult visitFile(Path pFile, BasicFileAttributes pAttributes) throws IOException
+          {
+            if (pFile.toString().endsWith(".class"))
+              classes.put(classJar.relativize(pFile).toString().replace('\\', '/'), Files.readAllBytes(pFile));
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      else
+        try (ZipFile zipFile = new ZipFile(classJar.toFile()))
+        {
+          Enumeration<? extends ZipEntry> entries = zipFile.entries();
+          while (entries.hasMoreElements())
+          {
+            ZipEntry entry = entries.nextElement();
+            if (entry.getName().startsWith("org/bouncycastle/") && entry.getName().endsWith(".class"))
+              try (InputStream inputStream = zipFile.getInputStream(entry))
+              {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer))
+                  outputStream.write(buffer, 0, read);
+                classes.put(entry.getName(), outputStream.toByteArray());
+              }
+          }
+        }
+      classPool = new ArrayList<>(classes.entrySet());
+    }
+    return classPool;
+  }
+
+
+  /**
+   * The kinds of corpora.
+   */
+  enum PROFILE
+  {
+    /**
+     * Many small jars, like the dependencies of an application.
+     */
+    SMALL(200, 40, 20, 2048, 0, 0, false),
+    /**
+     * A few huge jars with large incompressible entries.
+     */
+    HUGE(3, 2000, 100, 8192, 8, 8 * 1024 * 1024, false),
+    /**
+     * Jars with many small entries, so per-entry costs dominate.
+     */
+    MANY_ENTRIES(5, 3000, 20000, 256, 0, 0, false),
+    /**
+     * Small jars that are signed by another key already.
+     */
+    SIGNED(50, 40, 20, 2048, 0, 0, true);
+
+    final int jarCount;
+    final int classCount;
+    final int resourceCount;
+    final int resourceSize;
+    final int blobCount;
+    final int blobSize;
+    final boolean signed;
+
+    PROFILE(int pJarCount, int pClassCount, int pResourceCount, int pResourceSize, int pBlobCount, int pBlobSize,
+            boolean pSigned)
+    {
+      jarCount = pJarCount;
+      classCount = pClassCount;
+      resourceCount = pResourceCount;
+      resourceSize = pResourceSize;
+      blobCount = pBlobCount;
+      blobSize = pBlobSize;
+      signed = pSigned;
+    }
+  }
+
+}
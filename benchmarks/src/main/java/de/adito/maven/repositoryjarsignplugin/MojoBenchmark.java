@@ -0,0 +1,157 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.artifact.repository.MavenArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.execution.*;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.digest.Sha1Digester;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.Collections;
+
+/**
+ * End-to-end executions of the <tt>sign</tt> goal with the <tt>INTERNAL</tt> engine. A cold run starts with an empty
+ * cache, so every jar is signed. A warm run finds all jars in the cache of a former run, like a build without changes.
+ * A remote run starts with an empty cache, too, but downloads all jars from a {@link RemoteCacheServer} that was filled
+ * by another machine. The jar directory is restored from the corpus before each iteration and each execution belongs to
+ * a new build.
+ *
+ * @author j.boesl, 17.10.26
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class MojoBenchmark extends AbstractCorpusBenchmark
+{
+
+  /**
+   * Whether signatures are time stamped by a {@link StubTsa}.
+   */
+  @Param({"false", "true"})
+  public boolean timestamp;
+
+  /**
+   * The delay of each time stamp response in milliseconds.
+   */
+  @Param({"20"})
+  public long tsaLatency;
+
+  /**
+   * The name of the {@link SignChecksumHelper.ALGORITHM} of the checksums that identify jars in the cache.
+   */
+  @Param({"SHA1"})
+  public String checksumAlgorithm;
+
+  private StubTsa stubTsa;
+  private RemoteCacheServer remoteCacheServer;
+  private Path coldDirectory;
+  private Path warmDirectory;
+  private Path remoteDirectory;
+
+
+  @Override
+  void setUpTrial() throws Exception
+  {
+    if (timestamp)
+      stubTsa = new StubTsa(TestKeys.create("Benchmark TSA", true), tsaLatency);
+    coldDirectory = workDirectory.resolve("cold");
+    warmDirectory = workDirectory.resolve("warm");
+    remoteDirectory = workDirectory.resolve("remote");
+    remoteCacheServer = new RemoteCacheServer(workDirectory.resolve("remote-cache"), "127.0.0.1", 0);
+
+    // fills the cache of the warm runs and the remote cache
+    corpus.copyTo(warmDirectory.resolve("jars"));
+    _createMojo(warmDirectory, remoteCacheServer.getUrl()).execute();
+  }
+
+  @Override
+  void tearDownTrial()
+  {
+    if (stubTsa != null)
+      stubTsa.close();
+    if (remoteCacheServer != null)
+      remoteCacheServer.close();
+  }
+
+  @Setup(Level.Iteration)
+  public void copyJars() throws Exception
+  {
+    JarCorpus.delete(coldDirectory);
+    JarCorpus.delete(remoteDirectory);
+    corpus.copyTo(coldDirectory.resolve("jars"));
+    corpus.copyTo(warmDirectory.resolve("jars"));
+    corpus.copyTo(remoteDirectory.resolve("jars"));
+  }
+
+  @Benchmark
+  public void cold() throws Exception
+  {
+    _createMojo(coldDirectory, null).execute();
+  }
+
+  @Benchmark
+  public void warm() throws Exception
+  {
+    _createMojo(warmDirectory, null).execute();
+  }
+
+  @Benchmark
+  public void remote() throws Exception
+  {
+    _createMojo(remoteDirectory, remoteCacheServer.getUrl()).execute();
+  }
+
+  /**
+   * @param pDirectory   the directory of the project. It contains the jar directory <tt>jars</tt> and the local
+   *                     repository, so the cache is created next to them.
+   * @param pRemoteCache the url of the remote cache or <tt>null</tt>.
+   * @return a mojo that is configured like by a pom with a new session.
+   */
+  private SignMojo _createMojo(Path pDirectory, String pRemoteCache) throws Exception
+  {
+    MavenProject project = new MavenProject();
+    project.setFile(pDirectory.resolve("pom.xml").toFile());
+    project.getBuild().setDirectory(pDirectory.resolve("target").toString());
+    MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+    @SuppressWarnings("deprecation")
+    MavenSession session = new MavenSession(null, request, new DefaultMavenExecutionResult(), project);
+
+    SignMojo mojo = new SignMojo();
+    mojo.setLog(createLog());
+    _set(mojo, "project", project);
+    _set(mojo, "session", session);
+    _set(mojo, "digester", new Sha1Digester());
+    _set(mojo, "localRepository", new MavenArtifactRepository(
+        "local", pDirectory.resolve("repository").toUri().toString(), new DefaultRepositoryLayout(), null, null));
+    _set(mojo, "id", "benchmark");
+    _set(mojo, "jarDirectory", pDirectory.resolve("jars").toString());
+    _set(mojo, "scopes", "compile,runtime");
+    _set(mojo, "types", "jar");
+    _set(mojo, "includes", Collections.<String>emptyList());
+    _set(mojo, "excludes", Collections.<String>emptyList());
+    _set(mojo, "alias", TestKeys.ALIAS);
+    _set(mojo, "keystore", corpus.getKeystore().toString());
+    _set(mojo, "storepass", TestKeys.PASSWORD);
+    _set(mojo, "tsa", stubTsa == null ? null : stubTsa.getUrl());
+    _set(mojo, "tsaMaxRequests", 8);
+    _set(mojo, "checksumAlgorithm", SignChecksumHelper.ALGORITHM.valueOf(checksumAlgorithm));
+    _set(mojo, "checksumMigration", false);
+    _set(mojo, "engine", SignEngine.TYPE.INTERNAL);
+    _set(mojo, "materialization", FileUtility.MATERIALIZATION.COPY);
+    _set(mojo, "remoteCache", pRemoteCache);
+    _set(mojo, "remoteCacheUpload", true);
+    _set(mojo, "remoteCacheThreads", 8);
+    _set(mojo, "report", false);
+    return mojo;
+  }
+
+  private static void _set(Object pObject, String pFieldName, Object pValue) throws ReflectiveOperationException
+  {
+    Field field = pObject.getClass().getDeclaredField(pFieldName);
+    field.setAccessible(true);
+    field.set(pObject, pValue);
+  }
+
+}
@@ -0,0 +1,68 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Pack200 repacking, packing and unpacking. The jars are copied from the corpus before each iteration. Pack200 was
+ * removed in Java 14, so these benchmarks only run on older JVMs.
+ *
+ * @author j.boesl, 17.10.26
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class PackBenchmark extends AbstractCorpusBenchmark
+{
+
+  private List<Path> jars;
+  private List<Path> packs;
+
+
+  @Override
+  void setUpTrial() throws Exception
+  {
+    packs = new ArrayList<>();
+    for (Path jar : corpus.copyTo(workDirectory.resolve("packs")))
+    {
+      packs.add(PackUtility.pack(jar));
+      Files.delete(jar);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void copyJars() throws Exception
+  {
+    jars = corpus.copyTo(workDirectory.resolve("jars"));
+  }
+
+  /**
+   * Packs and unpacks each jar, so it can be signed and packed later.
+   */
+  @Benchmark
+  public void repack() throws Exception
+  {
+    for (Path jar : jars)
+      PackUtility.repack(jar);
+  }
+
+  /**
+   * Creates the <tt>.pack.gz</tt> files of signed jars.
+   */
+  @Benchmark
+  public void pack() throws Exception
+  {
+    for (Path jar : jars)
+      PackUtility.pack(jar);
+  }
+
+  @Benchmark
+  public void unpack() throws Exception
+  {
+    for (int i = 0; i < packs.size(); i++)
+      PackUtility.unpack(packs.get(i), jars.get(i));
+  }
+
+}
@@ -0,0 +1,96 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Signing and verifying inside the JVM with the <tt>INTERNAL</tt> engine. Time stamps are requested from a
+ * {@link StubTsa}. The jars are signed one after the other, so the results are the costs of a single sign thread.
+ *
+ * @author j.boesl, 17.10.26
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+public class SignBenchmark extends AbstractCorpusBenchmark
+{
+
+  /**
+   * The delay of each time stamp response in milliseconds.
+   */
+  @Param({"20"})
+  public long tsaLatency;
+
+  private StubTsa stubTsa;
+  private SignEngine signEngine;
+  private SignEngine timestampSignEngine;
+  private JarVerifier verifier;
+  private List<Path> jars;
+  private List<Path> signedJars;
+
+
+  @Override
+  void setUpTrial() throws Exception
+  {
+    SigningKey signingKey = SigningKey.load(corpus.getKeystore().toString(), TestKeys.ALIAS,
+                                            TestKeys.PASSWORD, null);
+    stubTsa = new StubTsa(TestKeys.create("Benchmark TSA", true), tsaLatency);
+    signEngine = new InternalSignEngine(signingKey, null, null);
+    timestampSignEngine = new InternalSignEngine(
+        signingKey, new TimestampClient(Collections.singletonList(stubTsa.getUrl()), 0, 0), null);
+    verifier = new JarVerifier(signingKey.getCertificate(), signingKey.getTrustedCertificates());
+
+    signedJars = corpus.copyTo(workDirectory.resolve("signed"));
+    for (Path jar : signedJars)
+      timestampSignEngine.sign(jar, null, null);
+  }
+
+  @Override
+  void tearDownTrial()
+  {
+    stubTsa.close();
+  }
+
+  @Setup(Level.Iteration)
+  public void copyJars() throws Exception
+  {
+    jars = corpus.copyTo(workDirectory.resolve("jars"));
+  }
+
+  @Benchmark
+  public void sign() throws Exception
+  {
+    for (Path jar : jars)
+      signEngine.sign(jar, null, null);
+  }
+
+  @Benchmark
+  public void signWithTimestamp() throws Exception
+  {
+    for (Path jar : jars)
+      timestampSignEngine.sign(jar, null, null);
+  }
+
+  /**
+   * Signs with the signed copies as former versions, so the digests of all entries are reused.
+   */
+  @Benchmark
+  public void signIncremental() throws Exception
+  {
+    for (int i = 0; i < jars.size(); i++)
+      signEngine.sign(jars.get(i), null, signedJars.get(i));
+  }
+
+  /**
+   * Verifies time stamped jars, so the time stamp tokens are validated, too.
+   */
+  @Benchmark
+  public void verify() throws Exception
+  {
+    for (Path jar : signedJars)
+      verifier.verify(jar);
+  }
+
+}
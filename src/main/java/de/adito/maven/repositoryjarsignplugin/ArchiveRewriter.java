@@ -0,0 +1,271 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.zip.*;
+
+/**
+ * Rewrites an archive in one pass. Former signatures are dropped, additional entries are merged into the manifest and
+ * new signature files can be inserted while the archive is written. Unchanged entries are copied without being
+ * decompressed, so their bytes stay identical.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class ArchiveRewriter implements Closeable
+{
+
+  private Path source;
+  private ZipFile zipFile;
+  private Manifest manifest;
+
+
+  /**
+   * @param pSource                    the archive to be rewritten.
+   * @param pAdditionalManifestEntries entries that are added to the main section of the manifest. May be <tt>null</tt>.
+   */
+  ArchiveRewriter(Path pSource, Map<String, String> pAdditionalManifestEntries) throws IOException
+  {
+    source = pSource;
+    zipFile = new ZipFile(pSource.toFile());
+    try
+    {
+      manifest = _readUnsignedManifest(zipFile);
+    }
+    catch (IOException | RuntimeException e)
+    {
+      zipFile.close();
+      throw e;
+    }
+    if (pAdditionalManifestEntries != null)
+      for (Map.Entry<String, String> entry : pAdditionalManifestEntries.entrySet())
+        manifest.getMainAttributes().putValue(entry.getKey(), entry.getValue());
+  }
+
+  /**
+   * Removes the signature of an archive and adds the additional manifest entries.
+   *
+   * @param pArchivePath               the archive that is rewritten in place.
+   * @param pAdditionalManifestEntries entries that are added to the main section of the manifest. May be <tt>null</tt>.
+   */
+  static void rewrite(Path pArchivePath, Map<String, String> pAdditionalManifestEntries) throws IOException
+  {
+    Path tempPath = getTempPath(pArchivePath);
+    try
+    {
+      try (ArchiveRewriter rewriter = new ArchiveRewriter(pArchivePath, pAdditionalManifestEntries))
+      {
+        rewriter.write(tempPath, rewriter.getManifestBytes(), Collections.<String, byte[]>emptyMap());
+      }
+      Files.move(tempPath, pArchivePath, StandardCopyOption.REPLACE_EXISTING);
+    }
+    finally
+    {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+  /**
+   * @param pArchivePath an archive.
+   * @return whether the archive contains signature files or its manifest contains digests of a former signature.
+   */
+  static boolean isSigned(Path pArchivePath) throws IOException
+  {
+    try (ZipFile zipFile = new ZipFile(pArchivePath.toFile()))
+    {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements())
+        if (SignUtility.isSignatureFile(entries.nextElement().getName()))
+          return true;
+
+      ZipEntry manifestEntry = zipFile.getEntry(JarFile.MANIFEST_NAME);
+      if (manifestEntry != null)
+        try (InputStream inputStream = zipFile.getInputStream(manifestEntry))
+        {
+          for (Attributes attributes : new Manifest(inputStream).getEntries().values())
+            for (Object name : attributes.keySet())
+              if (_isDigest(name))
+                return true;
+        }
+    }
+    return false;
+  }
+
+  static Path getTempPath(Path pArchivePath)
+  {
+    return pArchivePath.resolveSibling(pArchivePath.getFileName() + ".rewrite");
+  }
+
+  /**
+   * @return the unsigned and merged manifest. Changes are written by {@link #write(Path, byte[], Map)}.
+   */
+  Manifest getManifest()
+  {
+    return manifest;
+  }
+
+  byte[] getManifestBytes() throws IOException
+  {
+    try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream())
+    {
+      manifest.write(outputStream);
+      return outputStream.toByteArray();
+    }
+  }
+
+  /**
+   * @return all entries that have to be digested when the archive is signed.
+   */
+  List<ZipEntry> getContentEntries()
+  {
+    List<ZipEntry> entries = new ArrayList<>();
+    Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+    while (enumeration.hasMoreElements())
+    {
+      ZipEntry entry = enumeration.nextElement();
+      if (isContentEntry(entry))
+        entries.add(entry);
+    }
+    return entries;
+  }
+
+  InputStream getInputStream(ZipEntry pEntry) throws IOException
+  {
+    return zipFile.getInputStream(pEntry);
+  }
+
+  /**
+   * Writes the rewritten archive. The manifest and the additional meta entries are written first as expected by
+   * {@link JarInputStream}, former signatures are skipped. All other entries are copied as raw compressed bytes, only
+   * when the archive can't be read that way they are decompressed and compressed again.
+   *
+   * @param pTarget      the target archive.
+   * @param pManifest    the serialized manifest.
+   * @param pMetaEntries further entries like signature files by name.
+   */
+  void write(Path pTarget, byte[] pManifest, Map<String, byte[]> pMetaEntries) throws IOException
+  {
+    RawZipFile rawZipFile;
+    try
+    {
+      rawZipFile = new RawZipFile(source);
+    }
+    catch (ZipException e)
+    {
+      _writeRecompressed(pTarget, pManifest, pMetaEntries);
+      return;
+    }
+
+    try (RawZipFile ignored = rawZipFile;
+         RawZipOutput rawZipOutput = new RawZipOutput(pTarget))
+    {
+      rawZipOutput.putEntry(JarFile.MANIFEST_NAME, pManifest);
+      for (Map.Entry<String, byte[]> metaEntry : pMetaEntries.entrySet())
+        rawZipOutput.putEntry(metaEntry.getKey(), metaEntry.getValue());
+
+      for (RawZipFile.Entry entry : rawZipFile.getEntries())
+        if (!_isReplaced(entry.getName(), pMetaEntries))
+          rawZipOutput.putRawEntry(rawZipFile, entry);
+    }
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    zipFile.close();
+  }
+
+  private void _writeRecompressed(Path pTarget, byte[] pManifest, Map<String, byte[]> pMetaEntries) throws IOException
+  {
+    try (ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(pTarget))))
+    {
+      _putEntry(zipOutputStream, JarFile.MANIFEST_NAME, pManifest);
+      for (Map.Entry<String, byte[]> metaEntry : pMetaEntries.entrySet())
+        _putEntry(zipOutputStream, metaEntry.getKey(), metaEntry.getValue());
+
+      byte[] buffer = new byte[8192];
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements())
+      {
+        ZipEntry entry = entries.nextElement();
+        if (_isReplaced(entry.getName(), pMetaEntries))
+          continue;
+        ZipEntry targetEntry = new ZipEntry(entry);
+        if (targetEntry.getMethod() == ZipEntry.DEFLATED)
+          targetEntry.setCompressedSize(-1);
+        zipOutputStream.putNextEntry(targetEntry);
+        try (InputStream inputStream = zipFile.getInputStream(entry))
+        {
+          for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer))
+            zipOutputStream.write(buffer, 0, read);
+        }
+        zipOutputStream.closeEntry();
+      }
+    }
+  }
+
+  /**
+   * @param pEntry a zip entry.
+   * @return whether the entry is neither a directory, the manifest nor a signature file.
+   */
+  static boolean isContentEntry(ZipEntry pEntry)
+  {
+    return !pEntry.isDirectory() && !_isManifest(pEntry.getName()) && !SignUtility.isSignatureFile(pEntry.getName());
+  }
+
+  private static boolean _isReplaced(String pName, Map<String, byte[]> pMetaEntries)
+  {
+    return _isManifest(pName) || SignUtility.isSignatureFile(pName) || pMetaEntries.containsKey(pName);
+  }
+
+  private static boolean _isManifest(String pName)
+  {
+    return pName.equalsIgnoreCase(JarFile.MANIFEST_NAME);
+  }
+
+  private static Manifest _readUnsignedManifest(ZipFile pZipFile) throws IOException
+  {
+    Manifest manifest;
+    ZipEntry manifestEntry = pZipFile.getEntry(JarFile.MANIFEST_NAME);
+    if (manifestEntry == null)
+      manifest = new Manifest();
+    else
+      try (InputStream inputStream = pZipFile.getInputStream(manifestEntry))
+      {
+        manifest = new Manifest(inputStream);
+      }
+
+    if (manifest.getMainAttributes().getValue(Attributes.Name.MANIFEST_VERSION) == null)
+      manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+    // digests of former signatures are removed, sections that only contained digests are dropped
+    Iterator<Attributes> sections = manifest.getEntries().values().iterator();
+    while (sections.hasNext())
+    {
+      Attributes attributes = sections.next();
+      Iterator<Object> names = attributes.keySet().iterator();
+      while (names.hasNext())
+        if (_isDigest(names.next()))
+          names.remove();
+      if (attributes.isEmpty())
+        sections.remove();
+    }
+    return manifest;
+  }
+
+  private static boolean _isDigest(Object pAttributeName)
+  {
+    return pAttributeName.toString().toUpperCase(Locale.ENGLISH).endsWith("-DIGEST");
+  }
+
+  private static void _putEntry(ZipOutputStream pZipOutputStream, String pName, byte[] pContent) throws IOException
+  {
+    ZipEntry entry = new ZipEntry(pName);
+    entry.setTime(System.currentTimeMillis());
+    pZipOutputStream.putNextEntry(entry);
+    pZipOutputStream.write(pContent);
+    pZipOutputStream.closeEntry();
+  }
+
+}
@@ -0,0 +1,117 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.util.concurrent.*;
+
+/**
+ * Executor for one stage of the sign pipeline. Only a limited number of tasks can be submitted without being finished,
+ * further submits block. This way a fast stage can't run ahead of a slow one and pile up work. The executor is shared by
+ * all executions of a build, so its threads are daemons that end when they are idle.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class BoundedExecutor
+{
+
+  private ExecutorService executorService;
+  private Semaphore semaphore;
+
+
+  /**
+   * @param pThreads  the number of tasks that are executed concurrently.
+   * @param pCapacity the number of tasks that can wait for execution.
+   */
+  BoundedExecutor(int pThreads, int pCapacity)
+  {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(pThreads, pThreads, 60, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(Runnable pRunnable)
+      {
+        Thread thread = new Thread(pRunnable, "jarsign");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.allowCoreThreadTimeOut(true);
+    executorService = executor;
+    semaphore = new Semaphore(pThreads + pCapacity);
+  }
+
+  /**
+   * Submits a task and blocks while the stage is full.
+   */
+  <T> Future<T> submit(Callable<T> pCallable) throws InterruptedException
+  {
+    return submit(pCallable, null);
+  }
+
+  /**
+   * Submits a task and blocks while the stage is full.
+   *
+   * @param pCallable   the task.
+   * @param pCompletion runs when the task is done, also if it was cancelled before it started. May be <tt>null</tt>.
+   */
+  <T> Future<T> submit(Callable<T> pCallable, Runnable pCompletion) throws InterruptedException
+  {
+    semaphore.acquire();
+    return _execute(new BoundedTask<>(pCallable, pCompletion, true));
+  }
+
+  /**
+   * Submits a task without waiting for a free place. Only for tasks that were admitted to the stage before, e.g. when
+   * they had to wait for another task, so that the completion of a task never blocks.
+   */
+  <T> Future<T> submitAdmitted(Callable<T> pCallable)
+  {
+    return _execute(new BoundedTask<>(pCallable, null, false));
+  }
+
+  private <T> Future<T> _execute(BoundedTask<T> pTask)
+  {
+    try
+    {
+      executorService.execute(pTask);
+      return pTask;
+    }
+    catch (RejectedExecutionException e)
+    {
+      pTask.release();
+      throw e;
+    }
+  }
+
+
+  /**
+   * Frees its place in the stage when it is done. Tasks that are cancelled while they wait in the queue never run, so
+   * the place can't be freed by the task itself.
+   */
+  private class BoundedTask<T> extends FutureTask<T>
+  {
+    private final Runnable completion;
+    private boolean bounded;
+
+    BoundedTask(Callable<T> pCallable, Runnable pCompletion, boolean pBounded)
+    {
+      super(pCallable);
+      completion = pCompletion;
+      bounded = pBounded;
+    }
+
+    @Override
+    protected void done()
+    {
+      release();
+      if (completion != null)
+        completion.run();
+    }
+
+    synchronized void release()
+    {
+      if (bounded)
+        semaphore.release();
+      bounded = false;
+    }
+  }
+
+}
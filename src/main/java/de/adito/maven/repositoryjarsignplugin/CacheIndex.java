@@ -0,0 +1,615 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Index of a jarsign-cache. It maps the name of each cache entry to the checksum of the unsigned input, the checksum of
+ * the signed result and the digest of the key it was signed with. The index of an id references the entries of the
+ * {@link SignStore} the id's archives are signed with and the index of the store records when its entries were used
+ * and verified last. In incremental mode it also holds the fingerprints of the processed archives.
+ * <p>
+ * The index is an append-only log of tab separated records where later records replace earlier ones. It is read with
+ * one sequential read, updates are appended while the index is locked, so a crash can leave an incomplete last line at
+ * most, which is ignored and separated from the next append. The log is compacted by an atomic replace when it contains
+ * too many outdated records. Each compaction writes a header with a new generation, so other processes notice the
+ * replace by the header also on file systems without file keys.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class CacheIndex
+{
+
+  static final String FILE_NAME = "_index";
+  private static final String HEADER = "#jarsign-cache-index 2";
+  private static final String ENTRY_RECORD = "E";
+  private static final String FINGERPRINT_RECORD = "F";
+  private static final String REFERENCE_RECORD = "R";
+  private static final String HIT_RECORD = "H";
+  private static final String VERIFICATION_RECORD = "V";
+  private static final int MIN_COMPACTION_SIZE = 128;
+
+  private Path indexPath;
+  private ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private ConcurrentMap<String, String> references = new ConcurrentHashMap<>();
+  private ConcurrentMap<String, FileFingerprint> fingerprints = new ConcurrentHashMap<>();
+  private ConcurrentMap<String, Long> hits = new ConcurrentHashMap<>();
+  private ConcurrentMap<String, Verification> verifications = new ConcurrentHashMap<>();
+  private ConcurrentMap<String, String> pendingRecords = new ConcurrentHashMap<>();
+  private long loadedLength;
+  private Object loadedFileKey;
+  private FileTime loadedModified;
+  private String loadedHeader;
+  private int recordCount;
+
+
+  private CacheIndex(Path pIndexPath)
+  {
+    indexPath = pIndexPath;
+  }
+
+  /**
+   * Loads the index of a cache. Checksum files of former versions are migrated into the index and deleted.
+   *
+   * @param pCachePath        the path of the cache.
+   * @param pChecksumPostfix  the postfix of former checksum files or <tt>null</tt> if there are none to migrate.
+   * @param pKeyDigest        the digest of the key that former checksum files belong to.
+   * @return the loaded index.
+   */
+  static CacheIndex load(Path pCachePath, String pChecksumPostfix, String pKeyDigest)
+      throws IOException, InterruptedException
+  {
+    CacheIndex index = new CacheIndex(pCachePath.resolve(FILE_NAME));
+    try (CacheLock ignored = CacheLock.lock(index.indexPath))
+    {
+      if (Files.exists(index.indexPath))
+        index._read();
+      else if (pChecksumPostfix != null)
+        index._migrate(pCachePath, pChecksumPostfix, pKeyDigest);
+    }
+    return index;
+  }
+
+  /**
+   * @param pName the name of the cache entry.
+   * @return the indexed entry or <tt>null</tt>.
+   */
+  Entry get(String pName) throws IOException
+  {
+    _refresh();
+    return entries.get(pName);
+  }
+
+  /**
+   * Adds or replaces an entry. The caller has to hold the lock of the cache entry.
+   *
+   * @param pName  the name of the cache entry.
+   * @param pEntry the entry.
+   */
+  void put(String pName, Entry pEntry) throws IOException, InterruptedException
+  {
+    try (CacheLock ignored = CacheLock.lock(indexPath))
+    {
+      synchronized (this)
+      {
+        _refresh();
+        entries.put(pName, pEntry);
+        _write(pEntry.toRecord(pName) + "\n");
+      }
+    }
+  }
+
+  /**
+   * @param pName the name of a reference.
+   * @return the referenced store key or <tt>null</tt>.
+   */
+  String getReference(String pName) throws IOException
+  {
+    _refresh();
+    return references.get(pName);
+  }
+
+  /**
+   * Sets a reference to an entry of the {@link SignStore}. Unchanged references are not written again.
+   *
+   * @param pName the name of the reference.
+   * @param pKey  the referenced store key.
+   */
+  void putReference(String pName, String pKey) throws IOException, InterruptedException
+  {
+    if (pKey.equals(getReference(pName)))
+      return;
+    try (CacheLock ignored = CacheLock.lock(indexPath))
+    {
+      synchronized (this)
+      {
+        _refresh();
+        references.put(pName, pKey);
+        _write(REFERENCE_RECORD + "\t" + pName + "\t" + pKey + "\n");
+      }
+    }
+  }
+
+  /**
+   * @param pPath the absolute path of an archive.
+   * @return the fingerprint that was stored for the archive or <tt>null</tt>.
+   */
+  FileFingerprint getFingerprint(String pPath)
+  {
+    return fingerprints.get(pPath);
+  }
+
+  /**
+   * Stores the fingerprint of an archive. Fingerprints are written by {@link #flush()}.
+   *
+   * @param pPath        the absolute path of an archive.
+   * @param pFingerprint the fingerprint.
+   */
+  void putFingerprint(String pPath, FileFingerprint pFingerprint)
+  {
+    fingerprints.put(pPath, pFingerprint);
+    pendingRecords.put(FINGERPRINT_RECORD + pPath, _toRecord(pPath, pFingerprint));
+  }
+
+  /**
+   * @param pName the name of a cache entry.
+   * @return the time the entry was used last or <tt>null</tt> if no use was recorded.
+   */
+  Long getHit(String pName)
+  {
+    return hits.get(pName);
+  }
+
+  /**
+   * Records the use of a cache entry. Hits are written by {@link #flush()}.
+   *
+   * @param pName the name of the cache entry.
+   * @param pTime the time of the use.
+   */
+  void putHit(String pName, long pTime)
+  {
+    hits.put(pName, pTime);
+    pendingRecords.put(HIT_RECORD + pName, HIT_RECORD + "\t" + pName + "\t" + pTime);
+  }
+
+  /**
+   * @param pName the name of a cache entry.
+   * @return the last successful verification of the entry or <tt>null</tt>.
+   */
+  Verification getVerification(String pName)
+  {
+    return verifications.get(pName);
+  }
+
+  /**
+   * Records a successful verification of a cache entry. Verifications are written by {@link #flush()}.
+   *
+   * @param pName         the name of the cache entry.
+   * @param pVerification the verification.
+   */
+  void putVerification(String pName, Verification pVerification)
+  {
+    verifications.put(pName, pVerification);
+    pendingRecords.put(VERIFICATION_RECORD + pName, pVerification.toRecord(pName));
+  }
+
+  /**
+   * @return a snapshot of all entries by name.
+   */
+  Map<String, Entry> getEntries() throws IOException
+  {
+    _refresh();
+    return new HashMap<>(entries);
+  }
+
+  /**
+   * @return a snapshot of all references by name.
+   */
+  Map<String, String> getReferences() throws IOException
+  {
+    _refresh();
+    return new HashMap<>(references);
+  }
+
+  /**
+   * @return a snapshot of all fingerprints by path.
+   */
+  Map<String, FileFingerprint> getFingerprints() throws IOException
+  {
+    _refresh();
+    return new HashMap<>(fingerprints);
+  }
+
+  /**
+   * Removes entries, references, fingerprints, hits and verifications with the given names. The index is compacted afterwards.
+   *
+   * @param pNames the names to remove.
+   */
+  void remove(Collection<String> pNames) throws IOException, InterruptedException
+  {
+    if (pNames.isEmpty())
+      return;
+    try (CacheLock ignored = CacheLock.lock(indexPath))
+    {
+      synchronized (this)
+      {
+        _refresh();
+        for (String name : pNames)
+        {
+          entries.remove(name);
+          references.remove(name);
+          fingerprints.remove(name);
+          hits.remove(name);
+          verifications.remove(name);
+          pendingRecords.remove(FINGERPRINT_RECORD + name);
+          pendingRecords.remove(HIT_RECORD + name);
+          pendingRecords.remove(VERIFICATION_RECORD + name);
+        }
+        _compact();
+      }
+    }
+  }
+
+  /**
+   * Writes all fingerprints, hits and verifications that were stored since the last flush with one append.
+   */
+  void flush() throws IOException, InterruptedException
+  {
+    if (pendingRecords.isEmpty())
+      return;
+    try (CacheLock ignored = CacheLock.lock(indexPath))
+    {
+      synchronized (this)
+      {
+        StringBuilder builder = new StringBuilder();
+        Iterator<String> iterator = pendingRecords.values().iterator();
+        while (iterator.hasNext())
+        {
+          builder.append(iterator.next()).append("\n");
+          iterator.remove();
+        }
+        _refresh();
+        _write(builder.toString());
+      }
+    }
+  }
+
+  /**
+   * Reads records that other processes appended since the index was loaded.
+   */
+  private synchronized void _refresh() throws IOException
+  {
+    if (!Files.exists(indexPath))
+      return;
+    BasicFileAttributes attributes = Files.readAttributes(indexPath, BasicFileAttributes.class);
+    // a compaction replaces the file, so an unchanged file with the same size means that nothing was appended
+    if (attributes.fileKey() != null && attributes.fileKey().equals(loadedFileKey) &&
+        attributes.lastModifiedTime().equals(loadedModified) && attributes.size() == loadedLength)
+      return;
+    _read();
+  }
+
+  private void _read() throws IOException
+  {
+    byte[] bytes;
+    BasicFileAttributes attributes;
+    try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ))
+    {
+      attributes = Files.readAttributes(indexPath, BasicFileAttributes.class);
+      String header = _readHeader(channel);
+      if (header == null)
+        // the index is still created by another process
+        return;
+      if (!header.equals(loadedHeader) || channel.size() < loadedLength)
+      {
+        // the index was compacted by another process
+        entries.clear();
+        references.clear();
+        fingerprints.clear();
+        hits.clear();
+        verifications.clear();
+        recordCount = 0;
+        loadedLength = 0;
+      }
+      long length = channel.size() - loadedLength;
+      ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, length));
+      while (buffer.hasRemaining())
+        if (channel.read(buffer, loadedLength + buffer.position()) < 0)
+          break;
+      bytes = Arrays.copyOf(buffer.array(), buffer.position());
+      loadedHeader = header;
+    }
+
+    int lineStart = 0;
+    for (int i = 0; i < bytes.length; i++)
+    {
+      if (bytes[i] == '\n')
+      {
+        _parse(new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8));
+        lineStart = i + 1;
+      }
+    }
+    // an incomplete last line is a record that is still written or was interrupted by a crash
+    loadedLength += lineStart;
+    loadedFileKey = attributes.fileKey();
+    loadedModified = attributes.lastModifiedTime();
+  }
+
+  /**
+   * @return the first line of the index or <tt>null</tt> if it isn't complete yet.
+   */
+  private static String _readHeader(FileChannel pChannel) throws IOException
+  {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER.length() + 64);
+    while (buffer.hasRemaining())
+      if (pChannel.read(buffer, buffer.position()) < 0)
+        break;
+    for (int i = 0; i < buffer.position(); i++)
+      if (buffer.get(i) == '\n')
+        return new String(buffer.array(), 0, i, StandardCharsets.UTF_8);
+    return null;
+  }
+
+  private void _parse(String pLine)
+  {
+    if (pLine.isEmpty() || pLine.startsWith("#"))
+      return;
+    String[] fields = pLine.split("\t", -1);
+    try
+    {
+      if (!_parseRecord(fields))
+        return;
+    }
+    catch (NumberFormatException e)
+    {
+      // a line that was torn by a crash and completed by the next append
+      return;
+    }
+    recordCount++;
+  }
+
+  /**
+   * @return whether the fields are a known record.
+   */
+  private boolean _parseRecord(String[] pFields)
+  {
+    if (pFields.length == 4)
+      // untyped entry records of the first index version
+      entries.put(pFields[0], new Entry(_emptyToNull(pFields[1]), _emptyToNull(pFields[2]), _emptyToNull(pFields[3])));
+    else if (pFields.length == 5 && pFields[0].equals(ENTRY_RECORD))
+      entries.put(pFields[1], new Entry(_emptyToNull(pFields[2]), _emptyToNull(pFields[3]), _emptyToNull(pFields[4])));
+    else if (pFields.length == 3 && pFields[0].equals(REFERENCE_RECORD))
+      references.put(pFields[1], pFields[2]);
+    else if (pFields.length == 3 && pFields[0].equals(HIT_RECORD))
+      hits.put(pFields[1], Long.parseLong(pFields[2]));
+    else if (pFields.length == 5 && pFields[0].equals(VERIFICATION_RECORD))
+      verifications.put(pFields[1], new Verification(pFields[2], pFields[3], Long.parseLong(pFields[4])));
+    else if (pFields.length == 7 && pFields[0].equals(FINGERPRINT_RECORD))
+      fingerprints.put(pFields[1], new FileFingerprint(Long.parseLong(pFields[2]), Long.parseLong(pFields[3]),
+                                                       pFields[4], Long.parseLong(pFields[5]), pFields[6]));
+    else
+      return false;
+    return true;
+  }
+
+  private void _write(String pRecords) throws IOException
+  {
+    if (recordCount > MIN_COMPACTION_SIZE && recordCount > 2 * _getSize())
+      _compact();
+    else
+      _append(pRecords);
+  }
+
+  private void _append(String pRecords) throws IOException
+  {
+    try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.APPEND))
+    {
+      String records = pRecords;
+      if (channel.size() == 0)
+      {
+        loadedHeader = _createHeader();
+        records = loadedHeader + "\n" + pRecords;
+      }
+      else if (channel.size() > loadedLength)
+        // the incomplete last line of a crashed process must not swallow the first record
+        records = "\n" + pRecords;
+      ByteBuffer buffer = ByteBuffer.wrap(records.getBytes(StandardCharsets.UTF_8));
+      while (buffer.hasRemaining())
+        channel.write(buffer);
+      channel.force(false);
+    }
+    BasicFileAttributes attributes = Files.readAttributes(indexPath, BasicFileAttributes.class);
+    loadedLength = attributes.size();
+    loadedFileKey = attributes.fileKey();
+    loadedModified = attributes.lastModifiedTime();
+    for (int i = 0; i < pRecords.length(); i++)
+      if (pRecords.charAt(i) == '\n')
+        recordCount++;
+  }
+
+  private void _compact() throws IOException
+  {
+    String header = _createHeader();
+    StringBuilder builder = new StringBuilder(header).append("\n");
+    for (Map.Entry<String, Entry> entry : entries.entrySet())
+      builder.append(entry.getValue().toRecord(entry.getKey())).append("\n");
+    for (Map.Entry<String, String> reference : references.entrySet())
+      builder.append(REFERENCE_RECORD).append("\t").append(reference.getKey()).append("\t").append(reference.getValue())
+          .append("\n");
+    for (Map.Entry<String, FileFingerprint> fingerprint : fingerprints.entrySet())
+      builder.append(_toRecord(fingerprint.getKey(), fingerprint.getValue())).append("\n");
+    for (Map.Entry<String, Long> hit : hits.entrySet())
+      builder.append(HIT_RECORD).append("\t").append(hit.getKey()).append("\t").append(hit.getValue()).append("\n");
+    for (Map.Entry<String, Verification> verification : verifications.entrySet())
+      builder.append(verification.getValue().toRecord(verification.getKey())).append("\n");
+    FileUtility.write(indexPath, builder.toString().getBytes(StandardCharsets.UTF_8));
+    BasicFileAttributes attributes = Files.readAttributes(indexPath, BasicFileAttributes.class);
+    loadedLength = attributes.size();
+    loadedFileKey = attributes.fileKey();
+    loadedModified = attributes.lastModifiedTime();
+    loadedHeader = header;
+    recordCount = _getSize();
+  }
+
+  private int _getSize()
+  {
+    return entries.size() + references.size() + fingerprints.size() + hits.size() + verifications.size();
+  }
+
+  private void _migrate(Path pCachePath, String pChecksumPostfix, String pKeyDigest) throws IOException
+  {
+    // only checksum files with a signed sibling belong to entries, others like the key digest file are kept
+    String signedPostfix = ".signed" + pChecksumPostfix;
+    List<Path> migratedFiles = new ArrayList<>();
+    try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(pCachePath, "*" + signedPostfix))
+    {
+      for (Path signedPath : directoryStream)
+      {
+        String signedFileName = signedPath.getFileName().toString();
+        String name = signedFileName.substring(0, signedFileName.length() - signedPostfix.length());
+        Path path = pCachePath.resolve(name + pChecksumPostfix);
+        if (!Files.exists(path))
+          continue;
+        if (Files.exists(pCachePath.resolve(name)))
+          entries.put(name, new Entry(_readString(path), _readString(signedPath), pKeyDigest));
+        migratedFiles.add(path);
+        migratedFiles.add(signedPath);
+      }
+    }
+    _compact();
+    for (Path path : migratedFiles)
+      Files.deleteIfExists(path);
+  }
+
+  /**
+   * @return a header with a new generation.
+   */
+  private static String _createHeader()
+  {
+    return HEADER + "\t" + UUID.randomUUID();
+  }
+
+  private static String _toRecord(String pPath, FileFingerprint pFingerprint)
+  {
+    return FINGERPRINT_RECORD + "\t" + pPath + "\t" + pFingerprint.getSize() + "\t" + pFingerprint.getLastModified() +
+        "\t" + pFingerprint.getFileKey() + "\t" + pFingerprint.getCalculatedAt() + "\t" + pFingerprint.getDigest();
+  }
+
+  private static String _readString(Path pPath) throws IOException
+  {
+    return new String(Files.readAllBytes(pPath), StandardCharsets.UTF_8).trim();
+  }
+
+  private static String _emptyToNull(String pValue)
+  {
+    return pValue.isEmpty() ? null : pValue;
+  }
+
+
+  /**
+   * The indexed data of a cache entry.
+   */
+  static class Entry
+  {
+    private String checksum;
+    private String signedChecksum;
+    private String keyDigest;
+
+    Entry(String pChecksum, String pSignedChecksum, String pKeyDigest)
+    {
+      checksum = pChecksum;
+      signedChecksum = pSignedChecksum;
+      keyDigest = pKeyDigest;
+    }
+
+    /**
+     * @return the checksum of the unsigned input.
+     */
+    String getChecksum()
+    {
+      return checksum;
+    }
+
+    /**
+     * @return the checksum of the signed result.
+     */
+    String getSignedChecksum()
+    {
+      return signedChecksum;
+    }
+
+    /**
+     * @return the digest of the key the entry was signed with.
+     */
+    String getKeyDigest()
+    {
+      return keyDigest;
+    }
+
+    private String toRecord(String pName)
+    {
+      return ENTRY_RECORD + "\t" + pName + "\t" + _nullToEmpty(checksum) + "\t" + _nullToEmpty(signedChecksum) + "\t" +
+          _nullToEmpty(keyDigest);
+    }
+
+    private static String _nullToEmpty(String pValue)
+    {
+      return pValue == null ? "" : pValue;
+    }
+  }
+
+
+  /**
+   * A successful verification of a signed jar.
+   */
+  static class Verification
+  {
+    private String signedChecksum;
+    private String certificateFingerprint;
+    private long time;
+
+    Verification(String pSignedChecksum, String pCertificateFingerprint, long pTime)
+    {
+      signedChecksum = pSignedChecksum;
+      certificateFingerprint = pCertificateFingerprint;
+      time = pTime;
+    }
+
+    /**
+     * @return the checksum of the verified jar.
+     */
+    String getSignedChecksum()
+    {
+      return signedChecksum;
+    }
+
+    /**
+     * @return the fingerprint of the certificate the jar was verified with.
+     */
+    String getCertificateFingerprint()
+    {
+      return certificateFingerprint;
+    }
+
+    /**
+     * @return the time of the verification.
+     */
+    long getTime()
+    {
+      return time;
+    }
+
+    private String toRecord(String pName)
+    {
+      return VERIFICATION_RECORD + "\t" + pName + "\t" + signedChecksum + "\t" + certificateFingerprint + "\t" + time;
+    }
+  }
+
+}
@@ -0,0 +1,87 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.io.IOException;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock for a single entry of the jarsign-cache. Entries are locked separately so that different archives can be
+ * processed concurrently. Threads of the same JVM are synchronized with a {@link ReentrantLock}, other processes that
+ * share the cache with a {@link FileLock} on a lock file next to the entry.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class CacheLock implements AutoCloseable
+{
+
+  static final String LOCK = ".lock";
+  private static final ConcurrentMap<Path, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+  private ReentrantLock lock;
+  private FileChannel channel;
+  private FileLock fileLock;
+
+
+  private CacheLock(ReentrantLock pLock, FileChannel pChannel, FileLock pFileLock)
+  {
+    lock = pLock;
+    channel = pChannel;
+    fileLock = pFileLock;
+  }
+
+  /**
+   * Blocks until the entry is available.
+   *
+   * @param pEntryPath the path of the cache entry.
+   * @return the acquired lock. It has to be closed to release the entry.
+   */
+  static CacheLock lock(Path pEntryPath) throws IOException, InterruptedException
+  {
+    Path key = pEntryPath.toAbsolutePath().normalize();
+    ReentrantLock lock = new ReentrantLock();
+    ReentrantLock existingLock = LOCKS.putIfAbsent(key, lock);
+    if (existingLock != null)
+      lock = existingLock;
+    lock.lockInterruptibly();
+
+    // the file lock is held by the outermost lock of a thread only, file locks are not reentrant.
+    if (lock.getHoldCount() > 1)
+      return new CacheLock(lock, null, null);
+
+    FileChannel channel = null;
+    try
+    {
+      channel = FileChannel.open(key.resolveSibling(key.getFileName() + LOCK),
+                                 StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      return new CacheLock(lock, channel, channel.lock());
+    }
+    catch (IOException | RuntimeException e)
+    {
+      if (channel != null)
+        channel.close();
+      lock.unlock();
+      if (e instanceof ClosedByInterruptException)
+        throw new InterruptedException();
+      throw e;
+    }
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    try
+    {
+      if (fileLock != null)
+        fileLock.release();
+      if (channel != null)
+        channel.close();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+}
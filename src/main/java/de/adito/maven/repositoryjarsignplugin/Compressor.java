@@ -0,0 +1,66 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Compresses signed jars for distribution.
+ *
+ * @author j.boesl, 17.10.26
+ */
+interface Compressor
+{
+
+  TYPE getType();
+
+  /**
+   * @param pArchivePath the signed jar.
+   * @param pTargetPath  the file the compressed jar is written to.
+   */
+  void compress(Path pArchivePath, Path pTargetPath) throws IOException;
+
+  /**
+   * @param pCompressedPath a compressed jar.
+   * @param pArchivePath    the file the jar is written to.
+   */
+  void decompress(Path pCompressedPath, Path pArchivePath) throws IOException;
+
+  /**
+   * @return whether decompressing restores the jar byte by byte. Otherwise the signature of the decompressed jar has to
+   * be verified.
+   */
+  boolean isLossless();
+
+
+  /**
+   * Type enum
+   */
+  enum TYPE
+  {
+    /**
+     * Pack200 with gzip. Only available on JVMs up to Java 13, the jars have to be repacked before they are signed.
+     */
+    PACK200(".pack.gz"),
+    /**
+     * gzip that compresses blocks of the jar in parallel.
+     */
+    GZIP(".gz");
+
+    private final String postfix;
+
+    TYPE(String pPostfix)
+    {
+      postfix = pPostfix;
+    }
+
+    /**
+     * @param pArchivePath a jar.
+     * @return the path of the compressed jar.
+     */
+    Path getPath(Path pArchivePath)
+    {
+      return pArchivePath.resolveSibling(pArchivePath.getFileName() + postfix);
+    }
+  }
+
+}
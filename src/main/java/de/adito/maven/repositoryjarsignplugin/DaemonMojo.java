@@ -0,0 +1,132 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.plugin.*;
+import org.apache.maven.plugins.annotations.*;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mojo that runs a sign daemon for a keystore alias until it is stopped. Builds with <tt>daemon</tt> set to
+ * <i>true</i> sign through it, so the keystore is loaded and the signing code is warmed up only once.
+ *
+ * @author j.boesl, 17.10.26
+ */
+@Mojo(name = "daemon", requiresProject = false)
+public class DaemonMojo extends AbstractMojo
+{
+
+  /**
+   * Local repository.
+   */
+  @Parameter(readonly = true, required = true, defaultValue = "${localRepository}")
+  private ArtifactRepository localRepository;
+
+  /**
+   * See <a href="http://java.sun.com/javase/6/docs/technotes/tools/windows/jarsigner.html#Options">options</a>.
+   */
+  @Parameter(required = true, property = "jarsigner.alias")
+  private String alias;
+
+  /**
+   * See <a href="http://java.sun.com/javase/6/docs/technotes/tools/windows/jarsigner.html#Options">options</a>.
+   */
+  @Parameter(required = true, property = "jarsigner.keystore")
+  private String keystore;
+
+  /**
+   * See <a href="http://java.sun.com/javase/6/docs/technotes/tools/windows/jarsigner.html#Options">options</a>.
+   */
+  @Parameter(property = "jarsigner.storepass")
+  private String storepass;
+
+  /**
+   * See <a href="http://java.sun.com/javase/6/docs/technotes/tools/windows/jarsigner.html#Options">options</a>.
+   */
+  @Parameter(property = "jarsigner.keypass")
+  private String keypass;
+
+  /**
+   * See <a href="http://java.sun.com/javase/6/docs/technotes/tools/windows/jarsigner.html#Options">options</a>.
+   * Several TSA urls can be separated by commas.
+   */
+  @Parameter(property = "jarsigner.tsa")
+  private String tsa;
+
+  /**
+   * The maximum number of time stamp requests in flight. Values below one don't limit the requests.
+   */
+  @Parameter(defaultValue = "8", property = "repository.jarsign.tsaMaxRequests")
+  private int tsaMaxRequests;
+
+  /**
+   * The number of milliseconds after which a time stamp request is sent to the next TSA as well. Values below one
+   * derive the delay from the measured latency of the TSA.
+   */
+  @Parameter(defaultValue = "0", property = "repository.jarsign.tsaHedgeDelay")
+  private long tsaHedgeDelay;
+
+  /**
+   * The port the daemon listens on. <tt>0</tt> chooses a free port.
+   */
+  @Parameter(defaultValue = "0", property = "repository.jarsign.daemonPort")
+  private int daemonPort;
+
+  /**
+   * The number of minutes after which the daemon stops when it received no requests. <tt>0</tt> keeps it running.
+   */
+  @Parameter(defaultValue = "120", property = "repository.jarsign.daemonIdleTimeout")
+  private int daemonIdleTimeout;
+
+  /**
+   * If <i>true</i> the running daemon of the keystore alias is stopped instead of starting a new one.
+   */
+  @Parameter(defaultValue = "false", property = "repository.jarsign.daemonStop")
+  private boolean daemonStop;
+
+
+  public void execute() throws MojoExecutionException
+  {
+    keystore = keystore.replaceFirst("^~/", System.getProperty("user.home") + "/");
+    try
+    {
+      Path daemonFile = SignDaemon.getDaemonFile(SignUtility.getCacheRootPath(localRepository), keystore, alias);
+      DaemonSignEngine runningDaemon = DaemonSignEngine.connect(daemonFile);
+      if (daemonStop)
+      {
+        if (runningDaemon == null)
+          getLog().info("No sign daemon is running for alias '" + alias + "'.");
+        else
+          runningDaemon.stop();
+        return;
+      }
+      if (runningDaemon != null)
+        throw new MojoExecutionException("A sign daemon is already running for alias '" + alias + "'.");
+
+      // taken before the keystore is read, so a keystore that is replaced meanwhile doesn't match
+      List<String> tsas = SignUtility.getTsas(tsa);
+      String configuration = SignDaemon.getConfiguration(keystore, storepass, keypass, tsas);
+      SigningKey signingKey = SigningKey.load(keystore, alias, storepass, keypass);
+      TimestampClient timestampClient = tsas.isEmpty() ? null :
+          new TimestampClient(tsas, tsaMaxRequests, tsaHedgeDelay);
+      SignEngine signEngine = new InternalSignEngine(signingKey, timestampClient, null);
+      SignDaemon signDaemon = new SignDaemon(getLog(), signingKey, signEngine, configuration,
+                                             TimeUnit.MINUTES.toMillis(daemonIdleTimeout));
+      signDaemon.run(daemonFile, daemonPort);
+
+      if (timestampClient != null)
+        for (String statistic : timestampClient.getStatistics())
+          getLog().info(statistic);
+    }
+    catch (Exception e)
+    {
+      if (e instanceof MojoExecutionException)
+        throw (MojoExecutionException) e;
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+}
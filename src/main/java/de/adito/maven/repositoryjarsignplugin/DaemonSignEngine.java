@@ -0,0 +1,188 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.security.cert.*;
+import java.util.*;
+
+/**
+ * SignEngine that lets a running {@link SignDaemon} sign and verify. Every request uses its own loopback connection,
+ * so the daemon serves the sign threads concurrently.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class DaemonSignEngine implements SignEngine
+{
+
+  private static final int CONNECT_TIMEOUT = 1000;
+
+  private int port;
+  private String secret;
+
+
+  private DaemonSignEngine(int pPort, String pSecret)
+  {
+    port = pPort;
+    secret = pSecret;
+  }
+
+  /**
+   * @param pDaemonFile the file that announces the daemon.
+   * @return an engine for the daemon or <tt>null</tt> if no daemon is running.
+   */
+  static DaemonSignEngine connect(Path pDaemonFile)
+  {
+    if (!Files.isRegularFile(pDaemonFile))
+      return null;
+    Properties properties = new Properties();
+    try (InputStream inputStream = Files.newInputStream(pDaemonFile))
+    {
+      properties.load(inputStream);
+      DaemonSignEngine signEngine = new DaemonSignEngine(Integer.parseInt(properties.getProperty("port")),
+                                                         properties.getProperty("secret"));
+      // the file might be left behind by a daemon that was killed
+      try (Socket ignored = signEngine._connect())
+      {
+        return signEngine;
+      }
+    }
+    catch (IOException | RuntimeException e)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * @param pConfiguration the configuration of the build, see
+   *                       {@link SignDaemon#getConfiguration(String, String, String, List)}.
+   * @return whether the daemon was started with the same configuration.
+   */
+  boolean isConfiguredFor(String pConfiguration) throws IOException, MojoExecutionException
+  {
+    try (Socket socket = _connect())
+    {
+      DataOutputStream outputStream = _request(socket, SignDaemon.CONFIGURATION);
+      outputStream.writeUTF(pConfiguration);
+      outputStream.flush();
+      return _response(socket, "Reading the configuration of the sign daemon failed: ").readBoolean();
+    }
+  }
+
+  /**
+   * @param pAlgorithm the digest algorithm.
+   * @return the hex encoded digest of the daemon's private key.
+   */
+  String getKeyDigest(String pAlgorithm) throws IOException, MojoExecutionException
+  {
+    return _getKey(pAlgorithm).getKey();
+  }
+
+  /**
+   * @return the certificate of the daemon's key.
+   */
+  X509Certificate getCertificate() throws IOException, MojoExecutionException
+  {
+    return _getKey("SHA-1").getValue();
+  }
+
+  @Override
+  public void sign(Path pArchivePath, Map<String, String> pAdditionalManifestEntries, Path pPreviousSignedPath)
+      throws IOException, MojoExecutionException
+  {
+    try (Socket socket = _connect())
+    {
+      DataOutputStream outputStream = _request(socket, SignDaemon.SIGN);
+      outputStream.writeUTF(pArchivePath.toAbsolutePath().toString());
+      outputStream.writeInt(pAdditionalManifestEntries == null ? -1 : pAdditionalManifestEntries.size());
+      if (pAdditionalManifestEntries != null)
+        for (Map.Entry<String, String> entry : pAdditionalManifestEntries.entrySet())
+        {
+          outputStream.writeUTF(entry.getKey());
+          outputStream.writeUTF(entry.getValue());
+        }
+      outputStream.writeUTF(pPreviousSignedPath == null ? "" : pPreviousSignedPath.toAbsolutePath().toString());
+      outputStream.flush();
+      _response(socket, "Jar signing failed for " + pArchivePath + ": ");
+    }
+  }
+
+  @Override
+  public void verify(Path pArchivePath) throws IOException, MojoExecutionException
+  {
+    try (Socket socket = _connect())
+    {
+      DataOutputStream outputStream = _request(socket, SignDaemon.VERIFY);
+      outputStream.writeUTF(pArchivePath.toAbsolutePath().toString());
+      outputStream.flush();
+      _response(socket, "Jar verifying failed for " + pArchivePath + ": ");
+    }
+  }
+
+  /**
+   * Asks the daemon to stop.
+   */
+  void stop() throws IOException, MojoExecutionException
+  {
+    try (Socket socket = _connect())
+    {
+      _request(socket, SignDaemon.STOP).flush();
+      _response(socket, "Stopping the sign daemon failed: ");
+    }
+  }
+
+  private Map.Entry<String, X509Certificate> _getKey(String pAlgorithm) throws IOException, MojoExecutionException
+  {
+    try (Socket socket = _connect())
+    {
+      DataOutputStream outputStream = _request(socket, SignDaemon.KEY);
+      outputStream.writeUTF(pAlgorithm);
+      outputStream.flush();
+      DataInputStream inputStream = _response(socket, "Reading the key of the sign daemon failed: ");
+      String keyDigest = inputStream.readUTF();
+      byte[] certificate = new byte[inputStream.readInt()];
+      inputStream.readFully(certificate);
+      return new AbstractMap.SimpleImmutableEntry<>(
+          keyDigest, (X509Certificate) CertificateFactory.getInstance("X.509")
+              .generateCertificate(new ByteArrayInputStream(certificate)));
+    }
+    catch (CertificateException e)
+    {
+      throw new MojoExecutionException("Reading the key of the sign daemon failed.", e);
+    }
+  }
+
+  private Socket _connect() throws IOException
+  {
+    Socket socket = new Socket();
+    try
+    {
+      socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT);
+      return socket;
+    }
+    catch (IOException e)
+    {
+      socket.close();
+      throw e;
+    }
+  }
+
+  private DataOutputStream _request(Socket pSocket, String pCommand) throws IOException
+  {
+    DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(pSocket.getOutputStream()));
+    outputStream.writeUTF(secret);
+    outputStream.writeUTF(pCommand);
+    return outputStream;
+  }
+
+  private DataInputStream _response(Socket pSocket, String pErrorMessage) throws IOException, MojoExecutionException
+  {
+    DataInputStream inputStream = new DataInputStream(new BufferedInputStream(pSocket.getInputStream()));
+    if (!inputStream.readBoolean())
+      throw new MojoExecutionException(pErrorMessage + inputStream.readUTF());
+    return inputStream;
+  }
+
+}
@@ -0,0 +1,68 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * Remote cache in a directory, e.g. on a network share. Files are written to a temporary file first and moved into
+ * place, so concurrent readers on other machines never see partial content. Existing files are never replaced.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class DirectoryRemoteCache extends RemoteCache
+{
+
+  private final Path directory;
+
+
+  DirectoryRemoteCache(Path pDirectory)
+  {
+    directory = pDirectory;
+  }
+
+  @Override
+  InputStream open(String pName) throws IOException
+  {
+    try
+    {
+      return Files.newInputStream(getPath(pName));
+    }
+    catch (NoSuchFileException e)
+    {
+      return null;
+    }
+  }
+
+  @Override
+  void write(String pName, long pLength, InputStream pContent) throws IOException
+  {
+    Path target = getPath(pName);
+    Path tempPath = FileUtility.createTempFile(target);
+    try
+    {
+      long length = Files.copy(pContent, tempPath, StandardCopyOption.REPLACE_EXISTING);
+      if (pLength >= 0 && length != pLength)
+        throw new IOException("Expected " + pLength + " bytes for " + pName + ", but got " + length + ".");
+      FileUtility.moveNew(tempPath, target);
+    }
+    finally
+    {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+  /**
+   * @return the path of a file of the cache.
+   */
+  Path getPath(String pName)
+  {
+    return directory.resolve(pName);
+  }
+
+  @Override
+  public String toString()
+  {
+    return directory.toString();
+  }
+
+}
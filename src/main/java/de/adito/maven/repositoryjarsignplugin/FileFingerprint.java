@@ -0,0 +1,90 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * The digest of a file together with the file attributes it was calculated for. As long as size, modification time
+ * and file key are unchanged, the digest can be reused without reading the file.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class FileFingerprint
+{
+
+  /**
+   * Modification times are not trusted within this distance to the calculation of the digest, because file systems
+   * with a coarse time resolution can't tell apart changes that happened right after the calculation.
+   */
+  private static final long TIME_RESOLUTION = 2000;
+
+  private long size;
+  private long lastModified;
+  private String fileKey;
+  private long calculatedAt;
+  private String digest;
+
+
+  FileFingerprint(BasicFileAttributes pAttributes, long pCalculatedAt, String pDigest)
+  {
+    this(pAttributes.size(), pAttributes.lastModifiedTime().toMillis(), _toString(pAttributes.fileKey()), pCalculatedAt,
+         pDigest);
+  }
+
+  FileFingerprint(long pSize, long pLastModified, String pFileKey, long pCalculatedAt, String pDigest)
+  {
+    size = pSize;
+    lastModified = pLastModified;
+    fileKey = pFileKey;
+    calculatedAt = pCalculatedAt;
+    digest = pDigest;
+  }
+
+  /**
+   * @param pAttributes the current attributes of the file.
+   * @return whether the attributes are the ones the digest was calculated for.
+   */
+  boolean matches(BasicFileAttributes pAttributes)
+  {
+    return size == pAttributes.size() && lastModified == pAttributes.lastModifiedTime().toMillis() &&
+        fileKey.equals(_toString(pAttributes.fileKey()));
+  }
+
+  /**
+   * @return whether a later change of the file would have changed its modification time.
+   */
+  boolean isTrusted()
+  {
+    return lastModified < calculatedAt - TIME_RESOLUTION;
+  }
+
+  long getSize()
+  {
+    return size;
+  }
+
+  long getLastModified()
+  {
+    return lastModified;
+  }
+
+  String getFileKey()
+  {
+    return fileKey;
+  }
+
+  long getCalculatedAt()
+  {
+    return calculatedAt;
+  }
+
+  String getDigest()
+  {
+    return digest;
+  }
+
+  private static String _toString(Object pFileKey)
+  {
+    return pFileKey == null ? "" : pFileKey.toString();
+  }
+
+}
@@ -0,0 +1,260 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+/**
+ * Utility for writing files that are shared between processes. Files are written to a temporary file first and then
+ * moved into place, so that readers never see partially written content.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class FileUtility
+{
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+  /**
+   * Files from this size on are memory mapped for hashing.
+   */
+  private static final long MAP_THRESHOLD = 4 * 1024 * 1024;
+  private static final long MAP_REGION_SIZE = 256 * 1024 * 1024;
+  /**
+   * Mapped files can't be replaced on Windows until the mapping is garbage collected, so they are read there.
+   */
+  private static final boolean MAP = !System.getProperty("os.name", "").toLowerCase(Locale.ENGLISH).startsWith("windows");
+
+  private FileUtility()
+  {
+  }
+
+  static void write(Path pTarget, byte[] pContent) throws IOException
+  {
+    Path tempPath = createTempFile(pTarget);
+    try
+    {
+      Files.write(tempPath, pContent);
+      move(tempPath, pTarget);
+    }
+    finally
+    {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+  /**
+   * Copies a file and updates the digest with all bytes that are copied.
+   */
+  static void copy(Path pSource, Path pTarget, MessageDigest pMessageDigest) throws IOException
+  {
+    Path tempPath = createTempFile(pTarget);
+    try
+    {
+      try (InputStream inputStream = Files.newInputStream(pSource);
+           OutputStream outputStream = Files.newOutputStream(tempPath))
+      {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer))
+        {
+          pMessageDigest.update(buffer, 0, read);
+          outputStream.write(buffer, 0, read);
+        }
+      }
+      move(tempPath, pTarget);
+    }
+    finally
+    {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+  /**
+   * Updates the digest with the content of a file. Large files are memory mapped region by region, so they are hashed
+   * without a system call per buffer. Other files are read through a large buffer.
+   */
+  static void digest(Path pPath, MessageDigest pMessageDigest) throws IOException
+  {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try (FileChannel channel = FileChannel.open(pPath, StandardOpenOption.READ))
+    {
+      long size = channel.size();
+      if (MAP && size >= MAP_THRESHOLD)
+      {
+        for (long position = 0; position < size; position += MAP_REGION_SIZE)
+        {
+          MappedByteBuffer mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                                                      Math.min(MAP_REGION_SIZE, size - position));
+          while (mappedBuffer.hasRemaining())
+          {
+            int count = Math.min(buffer.length, mappedBuffer.remaining());
+            mappedBuffer.get(buffer, 0, count);
+            pMessageDigest.update(buffer, 0, count);
+          }
+        }
+      }
+      else
+      {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        while (channel.read(byteBuffer) != -1)
+        {
+          pMessageDigest.update(buffer, 0, byteBuffer.position());
+          byteBuffer.clear();
+        }
+      }
+    }
+  }
+
+  /**
+   * Places a file at the target without copying its bytes.
+   *
+   * @param pSource          the source file.
+   * @param pTarget          the target file. It is replaced atomically.
+   * @param pMaterialization how the target is created.
+   * @return <tt>false</tt> if the file system doesn't support the materialization, the target is unchanged then.
+   */
+  static boolean link(Path pSource, Path pTarget, MATERIALIZATION pMaterialization)
+      throws IOException, InterruptedException
+  {
+    if (pMaterialization == MATERIALIZATION.COPY)
+      return false;
+    Path tempPath = createTempFile(pTarget);
+    try
+    {
+      // links can only be created with names that don't exist
+      Files.delete(tempPath);
+      switch (pMaterialization)
+      {
+        case HARDLINK:
+          Files.createLink(tempPath, pSource);
+          break;
+        case SYMLINK:
+          Files.createSymbolicLink(tempPath, pSource.toAbsolutePath());
+          break;
+        case REFLINK:
+          if (!_clone(pSource, tempPath))
+            return false;
+          break;
+        default:
+          return false;
+      }
+      move(tempPath, pTarget);
+      return true;
+    }
+    catch (UnsupportedOperationException | FileSystemException e)
+    {
+      return false;
+    }
+    finally
+    {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+  /**
+   * @param pTarget the file that is going to be written.
+   * @return a new temporary file next to the target that can be moved into place by {@link #move(Path, Path)}.
+   */
+  static Path createTempFile(Path pTarget) throws IOException
+  {
+    Files.createDirectories(pTarget.getParent());
+    return Files.createTempFile(pTarget.getParent(), pTarget.getFileName().toString(), ".tmp");
+  }
+
+  /**
+   * Moves a file into place atomically where the file system supports it.
+   */
+  static void move(Path pSource, Path pTarget) throws IOException
+  {
+    try
+    {
+      Files.move(pSource, pTarget, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (AtomicMoveNotSupportedException e)
+    {
+      Files.move(pSource, pTarget, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Moves a file into place like {@link #move(Path, Path)}, but never replaces an existing target. A hard link is
+   * created first, because it fails atomically if the target exists. Without hard links the target is checked before
+   * the move.
+   *
+   * @throws FileAlreadyExistsException if the target exists.
+   */
+  static void moveNew(Path pSource, Path pTarget) throws IOException
+  {
+    try
+    {
+      Files.createLink(pTarget, pSource);
+    }
+    catch (FileAlreadyExistsException e)
+    {
+      throw e;
+    }
+    catch (UnsupportedOperationException | IOException e)
+    {
+      // a move without REPLACE_EXISTING fails if the target exists
+      Files.move(pSource, pTarget);
+      return;
+    }
+    Files.delete(pSource);
+  }
+
+  /**
+   * Java has no API for copy-on-write clones, so the platform's cp is used where it can clone.
+   */
+  private static boolean _clone(Path pSource, Path pTarget) throws IOException, InterruptedException
+  {
+    String os = System.getProperty("os.name").toLowerCase(Locale.ENGLISH);
+    String option;
+    if (os.contains("linux"))
+      option = "--reflink=always";
+    else if (os.contains("mac"))
+      option = "-c";
+    else
+      return false;
+
+    Process process = new ProcessBuilder("cp", option, pSource.toString(), pTarget.toString())
+        .redirectErrorStream(true)
+        .start();
+    try (InputStream inputStream = process.getInputStream())
+    {
+      byte[] buffer = new byte[1024];
+      //noinspection StatementWithEmptyBody
+      while (inputStream.read(buffer) != -1)
+      {
+      }
+    }
+    return process.waitFor() == 0;
+  }
+
+
+  /**
+   * How a file is placed at another location.
+   */
+  enum MATERIALIZATION
+  {
+    /**
+     * The bytes are copied.
+     */
+    COPY,
+    /**
+     * Both locations share the same file. The file must not be modified in place, a signed jar that was modified
+     * through the jar directory is detected by its checksum and signed again.
+     */
+    HARDLINK,
+    /**
+     * A symbolic link to the source is created. It breaks when the source is removed.
+     */
+    SYMLINK,
+    /**
+     * A copy-on-write clone is created where the file system supports it.
+     */
+    REFLINK
+  }
+
+}
@@ -0,0 +1,191 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.plugin.*;
+import org.apache.maven.plugins.annotations.*;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.codehaus.plexus.digest.Digester;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mojo for cleaning up the jarsign-cache. Signed jars that exceed the configured budget or aren't referenced by any id
+ * anymore are removed, the indexes are compacted and files left behind by former versions or aborted runs are deleted.
+ * It should not run while jars are signed with the same cache.
+ *
+ * @author j.boesl, 17.10.26
+ */
+@Mojo(name = "gc", requiresProject = false, threadSafe = true)
+public class GcMojo extends AbstractMojo
+{
+
+  /**
+   * Temporary files are only deleted when they are older, because they might still be written.
+   */
+  private static final long TEMP_FILE_AGE = TimeUnit.HOURS.toMillis(1);
+
+  @Component(hint = "sha1")
+  private Digester digester;
+
+  /**
+   * Local repository.
+   */
+  @Parameter(readonly = true, required = true, defaultValue = "${localRepository}")
+  private ArtifactRepository localRepository;
+
+  /**
+   * The maximum size of the store of signed jars in megabytes. <tt>0</tt> doesn't limit the size.
+   */
+  @Parameter(defaultValue = "0", property = "repository.jarsign.cacheMaxSize")
+  private long cacheMaxSize;
+
+  /**
+   * The number of days after which signed jars that weren't used are removed from the store. <tt>0</tt> keeps them
+   * forever.
+   */
+  @Parameter(defaultValue = "0", property = "repository.jarsign.cacheMaxAge")
+  private int cacheMaxAge;
+
+
+  public void execute() throws MojoExecutionException
+  {
+    try
+    {
+      Path cacheRootPath = SignUtility.getCacheRootPath(localRepository);
+      SignStore signStore = SignStore.load(cacheRootPath, digester.getAlgorithm(), null);
+
+      Set<String> evictedKeys = signStore.evict(cacheMaxSize * 1024 * 1024, TimeUnit.DAYS.toMillis(cacheMaxAge),
+                                                Collections.<String>emptySet());
+      getLog().info(evictedKeys.size() + " signed jars have been removed because of the cache budget.");
+
+      Set<String> storeKeys = signStore.getKeys();
+      Set<String> referencedKeys = new HashSet<>();
+      try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(cacheRootPath))
+      {
+        for (Path cachePath : directoryStream)
+        {
+          String directoryName = cachePath.getFileName().toString();
+          if (Files.isDirectory(cachePath) && !directoryName.equals(SignStore.DIRECTORY_NAME) &&
+              !directoryName.equals(SignDaemon.DIRECTORY_NAME))
+            referencedKeys.addAll(_collect(cachePath, storeKeys));
+        }
+      }
+
+      int removedCount = signStore.removeUnreferenced(referencedKeys);
+      getLog().info(removedCount + " signed jars have been removed because they aren't referenced anymore.");
+      _deleteFiles(signStore.getStorePath(), signStore.getFileNames());
+    }
+    catch (Exception e)
+    {
+      if (e instanceof MojoExecutionException)
+        throw (MojoExecutionException) e;
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Cleans up the cache of one id.
+   *
+   * @param pCachePath the path of the id's cache.
+   * @param pStoreKeys the keys of all entries of the store.
+   * @return the store keys that are referenced by the id.
+   */
+  private Set<String> _collect(Path pCachePath, Set<String> pStoreKeys) throws IOException, InterruptedException
+  {
+    // checksum files of former versions are not migrated anymore, the entries of the current key were migrated already
+    CacheIndex cacheIndex = CacheIndex.load(pCachePath, null, null);
+    Set<String> referencedKeys = new HashSet<>();
+    Set<String> fileNames = new HashSet<>();
+    fileNames.add(CacheIndex.FILE_NAME);
+    List<String> removedNames = new ArrayList<>();
+
+    for (Map.Entry<String, String> reference : cacheIndex.getReferences().entrySet())
+    {
+      if (pStoreKeys.contains(reference.getValue()))
+        referencedKeys.add(reference.getValue());
+      else
+        removedNames.add(reference.getKey());
+    }
+
+    // copies of former versions that weren't moved to the store yet
+    for (String name : cacheIndex.getEntries().keySet())
+    {
+      if (Files.exists(pCachePath.resolve(name)))
+        fileNames.add(name);
+      else
+        removedNames.add(name);
+    }
+
+    for (Map.Entry<String, FileFingerprint> fingerprint : cacheIndex.getFingerprints().entrySet())
+    {
+      Path path = Paths.get(fingerprint.getKey());
+      if (!Files.exists(path) || !fingerprint.getValue().matches(Files.readAttributes(path, BasicFileAttributes.class)))
+        removedNames.add(fingerprint.getKey());
+    }
+
+    cacheIndex.remove(removedNames);
+    _deleteFiles(pCachePath, fileNames);
+    return referencedKeys;
+  }
+
+  /**
+   * Deletes all files of a cache directory that don't belong to it anymore, like checksum files of former versions,
+   * lock files of removed entries and temporary files of aborted runs.
+   *
+   * @param pPath      the cache directory.
+   * @param pFileNames the names of the files that are kept.
+   */
+  private void _deleteFiles(Path pPath, Set<String> pFileNames) throws IOException, InterruptedException
+  {
+    List<Path> paths = new ArrayList<>();
+    try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(pPath))
+    {
+      for (Path path : directoryStream)
+        if (Files.isRegularFile(path))
+          paths.add(path);
+    }
+
+    long now = System.currentTimeMillis();
+    int deletedCount = 0;
+    for (Path path : paths)
+    {
+      String fileName = path.getFileName().toString();
+      if (pFileNames.contains(fileName))
+        continue;
+      if (fileName.endsWith(CacheLock.LOCK))
+      {
+        Path entryPath = path.resolveSibling(fileName.substring(0, fileName.length() - CacheLock.LOCK.length()));
+        if (_containsEntry(pFileNames, entryPath))
+          continue;
+        try (CacheLock ignored = CacheLock.lock(entryPath))
+        {
+          Files.deleteIfExists(path);
+        }
+      }
+      else if (now - Files.getLastModifiedTime(path).toMillis() > TEMP_FILE_AGE)
+        Files.deleteIfExists(path);
+      else
+        continue;
+      deletedCount++;
+    }
+    getLog().debug(deletedCount + " files have been deleted from " + pPath + ".");
+  }
+
+  /**
+   * @return whether the signed or a compressed jar of an entry is kept.
+   */
+  private boolean _containsEntry(Set<String> pFileNames, Path pEntryPath)
+  {
+    if (pFileNames.contains(pEntryPath.getFileName().toString()))
+      return true;
+    for (Compressor.TYPE compression : Compressor.TYPE.values())
+      if (pFileNames.contains(compression.getPath(pEntryPath).getFileName().toString()))
+        return true;
+    return false;
+  }
+
+}
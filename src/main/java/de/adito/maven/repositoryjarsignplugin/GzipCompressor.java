@@ -0,0 +1,230 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Creates gzip files whose blocks are compressed in parallel like <tt>pigz</tt> does. Each block is deflated on its own
+ * with the end of the former block as dictionary and ends on a byte boundary, so the blocks simply follow each other in
+ * a single deflate stream. The result is a standard gzip file that is only slightly larger than a sequential one.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class GzipCompressor implements Compressor
+{
+
+  static final int BLOCK_SIZE = 1024 * 1024;
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+  private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+  private static final ForkJoinPool POOL = new ForkJoinPool();
+  /**
+   * Limits the blocks in flight of all callers to two per thread, every submitted block holds a permit until it is
+   * written or cancelled.
+   */
+  private static final Semaphore BLOCKS = new Semaphore(2 * POOL.getParallelism());
+
+
+  @Override
+  public TYPE getType()
+  {
+    return TYPE.GZIP;
+  }
+
+  @Override
+  public void compress(Path pArchivePath, Path pTargetPath) throws IOException
+  {
+    Queue<Future<byte[]>> blocks = new ArrayDeque<>();
+    CRC32 crc = new CRC32();
+    long size = 0;
+    try (InputStream inputStream = Files.newInputStream(pArchivePath);
+         OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(pTargetPath)))
+    {
+      outputStream.write(HEADER);
+      byte[] dictionary = null;
+      boolean last = false;
+      while (!last)
+      {
+        byte[] block = _read(inputStream);
+        last = block.length < BLOCK_SIZE;
+        crc.update(block);
+        size += block.length;
+        _acquire(outputStream, blocks);
+        blocks.add(POOL.submit(new BlockTask(block, dictionary, last)));
+        dictionary = block;
+      }
+      while (!blocks.isEmpty())
+        _writeNext(outputStream, blocks);
+      _writeInt(outputStream, (int) crc.getValue());
+      _writeInt(outputStream, (int) size);
+    }
+    finally
+    {
+      for (Future<byte[]> block : blocks)
+      {
+        block.cancel(true);
+        BLOCKS.release();
+      }
+    }
+  }
+
+  @Override
+  public void decompress(Path pCompressedPath, Path pArchivePath) throws IOException
+  {
+    try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(pCompressedPath), 64 * 1024))
+    {
+      Files.copy(inputStream, pArchivePath, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  @Override
+  public boolean isLossless()
+  {
+    return true;
+  }
+
+  /**
+   * @return the next block. It is shorter than {@link #BLOCK_SIZE} only at the end of the stream.
+   */
+  private static byte[] _read(InputStream pInputStream) throws IOException
+  {
+    byte[] block = new byte[BLOCK_SIZE];
+    int length = 0;
+    for (int read = 0; read != -1 && length < BLOCK_SIZE; read = pInputStream.read(block, length, BLOCK_SIZE - length))
+      length += read;
+    return length == BLOCK_SIZE ? block : Arrays.copyOf(block, length);
+  }
+
+  /**
+   * Acquires the permit for the next block. As long as the caller holds blocks of its own it writes them instead of
+   * waiting, so callers never wait for permits that only a waiting caller could release.
+   */
+  private static void _acquire(OutputStream pOutputStream, Queue<Future<byte[]>> pBlocks) throws IOException
+  {
+    while (!BLOCKS.tryAcquire())
+    {
+      if (pBlocks.isEmpty())
+      {
+        try
+        {
+          BLOCKS.acquire();
+          return;
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      _writeNext(pOutputStream, pBlocks);
+    }
+  }
+
+  /**
+   * Writes the oldest block and releases its permit.
+   */
+  private static void _writeNext(OutputStream pOutputStream, Queue<Future<byte[]>> pBlocks) throws IOException
+  {
+    Future<byte[]> block = pBlocks.remove();
+    try
+    {
+      pOutputStream.write(_get(block));
+    }
+    finally
+    {
+      BLOCKS.release();
+    }
+  }
+
+  private static byte[] _get(Future<byte[]> pBlock) throws IOException
+  {
+    try
+    {
+      return pBlock.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    catch (ExecutionException e)
+    {
+      throw new IOException("Failed to compress block.", e.getCause());
+    }
+  }
+
+  private static void _writeInt(OutputStream pOutputStream, int pValue) throws IOException
+  {
+    // gzip is little endian
+    pOutputStream.write(pValue);
+    pOutputStream.write(pValue >>> 8);
+    pOutputStream.write(pValue >>> 16);
+    pOutputStream.write(pValue >>> 24);
+  }
+
+
+  /**
+   * Deflates one block.
+   */
+  private static class BlockTask implements Callable<byte[]>
+  {
+    private final byte[] block;
+    private final byte[] dictionary;
+    private final boolean last;
+
+    /**
+     * @param pBlock      the uncompressed block.
+     * @param pDictionary the former block or <tt>null</tt> for the first one.
+     * @param pLast       whether the block finishes the stream.
+     */
+    BlockTask(byte[] pBlock, byte[] pDictionary, boolean pLast)
+    {
+      block = pBlock;
+      dictionary = pDictionary;
+      last = pLast;
+    }
+
+    @Override
+    public byte[] call()
+    {
+      Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+      try
+      {
+        if (dictionary != null)
+        {
+          // some JDKs ignore the offset of setDictionary, so the end of the former block is copied
+          int length = Math.min(DICTIONARY_SIZE, dictionary.length);
+          deflater.setDictionary(Arrays.copyOfRange(dictionary, dictionary.length - length, dictionary.length));
+        }
+        deflater.setInput(block);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(block.length / 2 + 64);
+        byte[] buffer = new byte[64 * 1024];
+        if (last)
+        {
+          deflater.finish();
+          while (!deflater.finished())
+            outputStream.write(buffer, 0, deflater.deflate(buffer));
+        }
+        else
+        {
+          // a sync flush ends the block on a byte boundary without finishing the stream
+          int length;
+          do
+          {
+            length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            outputStream.write(buffer, 0, length);
+          }
+          while (length == buffer.length);
+        }
+        return outputStream.toByteArray();
+      }
+      finally
+      {
+        deflater.end();
+      }
+    }
+  }
+
+}
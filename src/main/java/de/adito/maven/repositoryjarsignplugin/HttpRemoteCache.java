@@ -0,0 +1,106 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.bouncycastle.util.encoders.Base64;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+
+/**
+ * Remote cache behind a http server. Files are read with <tt>GET</tt> and written with <tt>PUT</tt> relative to the
+ * base url, a missing file is answered with <tt>404</tt>. User and password in the url are sent as basic
+ * authentication. The server has to make written files visible atomically and answer <tt>409</tt> to writes of
+ * existing files, like the {@link RemoteCacheServer} does.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class HttpRemoteCache extends RemoteCache
+{
+
+  private static final int TIMEOUT = 30 * 1000;
+
+  private final String baseUrl;
+  private final String authorization;
+
+
+  HttpRemoteCache(String pUrl)
+  {
+    try
+    {
+      URL url = new URL(pUrl.endsWith("/") ? pUrl : pUrl + "/");
+      String userInfo = url.getUserInfo();
+      authorization = userInfo == null ? null :
+          "Basic " + Base64.toBase64String(URLDecoder.decode(userInfo, "UTF-8").getBytes(StandardCharsets.UTF_8));
+      baseUrl = userInfo == null ? url.toString() : url.toString().replace(userInfo + "@", "");
+    }
+    catch (MalformedURLException | UnsupportedEncodingException e)
+    {
+      throw new IllegalArgumentException("Invalid remote cache url '" + pUrl + "'.", e);
+    }
+  }
+
+  @Override
+  InputStream open(String pName) throws IOException
+  {
+    HttpURLConnection connection = _connect(pName, "GET");
+    int responseCode = connection.getResponseCode();
+    if (responseCode == HttpURLConnection.HTTP_OK)
+      return connection.getInputStream();
+    _finish(connection);
+    if (responseCode == HttpURLConnection.HTTP_NOT_FOUND)
+      return null;
+    throw new IOException("GET " + pName + " from " + this + " failed with " + responseCode + ".");
+  }
+
+  @Override
+  void write(String pName, long pLength, InputStream pContent) throws IOException
+  {
+    HttpURLConnection connection = _connect(pName, "PUT");
+    connection.setDoOutput(true);
+    connection.setFixedLengthStreamingMode(pLength);
+    try (OutputStream outputStream = connection.getOutputStream())
+    {
+      byte[] buffer = new byte[64 * 1024];
+      for (int read = pContent.read(buffer); read != -1; read = pContent.read(buffer))
+        outputStream.write(buffer, 0, read);
+    }
+    int responseCode = connection.getResponseCode();
+    _finish(connection);
+    if (responseCode == HttpURLConnection.HTTP_CONFLICT)
+      throw new FileAlreadyExistsException(pName);
+    if (responseCode / 100 != 2)
+      throw new IOException("PUT " + pName + " to " + this + " failed with " + responseCode + ".");
+  }
+
+  private HttpURLConnection _connect(String pName, String pMethod) throws IOException
+  {
+    HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + pName).openConnection();
+    connection.setRequestMethod(pMethod);
+    connection.setConnectTimeout(TIMEOUT);
+    connection.setReadTimeout(TIMEOUT);
+    connection.setUseCaches(false);
+    if (authorization != null)
+      connection.setRequestProperty("Authorization", authorization);
+    return connection;
+  }
+
+  /**
+   * Closes a response whose body isn't needed. The connection isn't disconnected, because responses without a body
+   * return their connection to the keep-alive pool right away and disconnecting would close the pooled connection.
+   */
+  private static void _finish(HttpURLConnection pConnection) throws IOException
+  {
+    InputStream inputStream = pConnection.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST ?
+        pConnection.getErrorStream() : pConnection.getInputStream();
+    if (inputStream != null)
+      inputStream.close();
+  }
+
+  @Override
+  public String toString()
+  {
+    return baseUrl;
+  }
+
+}
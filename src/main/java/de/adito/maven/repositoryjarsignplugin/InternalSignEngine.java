@@ -0,0 +1,283 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.asn1.*;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cms.*;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.*;
+import org.bouncycastle.util.encoders.Base64;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.security.cert.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.zip.*;
+
+/**
+ * SignEngine that signs and verifies inside the running JVM. The key is loaded only once and shared by all threads.
+ * The created archives are signed the same way jarsigner does it: a manifest with a digest for each entry, a signature
+ * file and a PKCS#7 signature block. Unsigning, updating the manifest and signing are done while the archive is
+ * rewritten once. Entries whose CRC and size equal those of an entry in a signed former version of the archive take
+ * the digest from its manifest instead of being read. Archives are verified by a {@link JarVerifier}.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class InternalSignEngine implements SignEngine
+{
+
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+  private static final String DIGEST_ATTRIBUTE = DIGEST_ALGORITHM + "-Digest";
+
+  private SigningKey signingKey;
+  private TimestampClient timestampClient;
+  private SignMetrics metrics;
+  private String signatureName;
+  private JarVerifier verifier;
+
+
+  /**
+   * @param pSigningKey      the key to sign with.
+   * @param pTimestampClient the client for time stamping or <tt>null</tt> if signatures aren't time stamped.
+   * @param pMetrics         the metrics rewriting and time stamping are recorded in or <tt>null</tt>.
+   */
+  InternalSignEngine(SigningKey pSigningKey, TimestampClient pTimestampClient, SignMetrics pMetrics)
+  {
+    signingKey = pSigningKey;
+    timestampClient = pTimestampClient;
+    metrics = pMetrics;
+    signatureName = _getSignatureName(pSigningKey.getAlias());
+    verifier = new JarVerifier(pSigningKey.getCertificate(), pSigningKey.getTrustedCertificates());
+  }
+
+  @Override
+  public void sign(Path pArchivePath, Map<String, String> pAdditionalManifestEntries, Path pPreviousSignedPath)
+      throws IOException, MojoExecutionException
+  {
+    Map<String, String> previousDigests = pPreviousSignedPath == null ? Collections.<String, String>emptyMap() :
+        _readDigests(pPreviousSignedPath);
+    Path tempPath = ArchiveRewriter.getTempPath(pArchivePath);
+    try
+    {
+      try (ArchiveRewriter rewriter = new ArchiveRewriter(pArchivePath, pAdditionalManifestEntries))
+      {
+        Manifest manifest = rewriter.getManifest();
+        MessageDigest messageDigest = _getMessageDigest();
+        byte[] buffer = new byte[8192];
+
+        for (ZipEntry entry : rewriter.getContentEntries())
+        {
+          String digest = previousDigests.get(_getDigestKey(entry));
+          if (digest == null)
+          {
+            try (InputStream inputStream = rewriter.getInputStream(entry))
+            {
+              for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer))
+                messageDigest.update(buffer, 0, read);
+            }
+            digest = Base64.toBase64String(messageDigest.digest());
+          }
+          else if (metrics != null)
+            metrics.count(SignMetrics.COUNTER.DIGEST_REUSED);
+          Attributes attributes = manifest.getAttributes(entry.getName());
+          if (attributes == null)
+          {
+            attributes = new Attributes();
+            manifest.getEntries().put(entry.getName(), attributes);
+          }
+          attributes.putValue(DIGEST_ATTRIBUTE, digest);
+        }
+
+        byte[] manifestBytes = rewriter.getManifestBytes();
+        byte[] signatureFile = _createSignatureFile(manifestBytes, messageDigest);
+        Map<String, byte[]> signatureEntries = new LinkedHashMap<>();
+        signatureEntries.put("META-INF/" + signatureName + ".SF", signatureFile);
+        signatureEntries.put("META-INF/" + signatureName + "." + _getBlockExtension(), _createSignatureBlock(signatureFile));
+
+        long start = metrics == null ? 0 : metrics.start();
+        rewriter.write(tempPath, manifestBytes, signatureEntries);
+        if (metrics != null)
+          metrics.record(SignMetrics.PHASE.REWRITE, start, Files.size(tempPath));
+      }
+      Files.move(tempPath, pArchivePath, StandardCopyOption.REPLACE_EXISTING);
+    }
+    finally
+    {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+  @Override
+  public void verify(Path pArchivePath) throws IOException, MojoExecutionException
+  {
+    verifier.verify(pArchivePath);
+  }
+
+  /**
+   * Reads the entry digests of a signed archive. The archive is only an optimization, so an archive that can't be read
+   * yields no digests.
+   *
+   * @param pSignedPath the signed archive.
+   * @return the digests from the manifest by the key of their entry, see {@link #_getDigestKey(ZipEntry)}.
+   */
+  private static Map<String, String> _readDigests(Path pSignedPath)
+  {
+    Map<String, String> digests = new HashMap<>();
+    try (ZipFile zipFile = new ZipFile(pSignedPath.toFile()))
+    {
+      ZipEntry manifestEntry = zipFile.getEntry(JarFile.MANIFEST_NAME);
+      if (manifestEntry == null)
+        return digests;
+      Manifest manifest;
+      try (InputStream inputStream = zipFile.getInputStream(manifestEntry))
+      {
+        manifest = new Manifest(inputStream);
+      }
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements())
+      {
+        ZipEntry entry = entries.nextElement();
+        Attributes attributes = manifest.getAttributes(entry.getName());
+        String digest = attributes == null ? null : attributes.getValue(DIGEST_ATTRIBUTE);
+        if (digest != null && ArchiveRewriter.isContentEntry(entry) && entry.getCrc() != -1 && entry.getSize() != -1)
+          digests.put(_getDigestKey(entry), digest);
+      }
+    }
+    catch (IOException | RuntimeException e)
+    {
+      digests.clear();
+    }
+    return digests;
+  }
+
+  /**
+   * Entries with equal name, CRC and size are expected to have equal content. A new archive with different content is
+   * still caught when it is verified after signing.
+   */
+  private static String _getDigestKey(ZipEntry pEntry)
+  {
+    return pEntry.getName() + "\n" + pEntry.getCrc() + "\n" + pEntry.getSize();
+  }
+
+  private byte[] _createSignatureFile(byte[] pManifestBytes, MessageDigest pMessageDigest) throws IOException
+  {
+    Manifest signatureFile = new Manifest();
+    Attributes mainAttributes = signatureFile.getMainAttributes();
+    mainAttributes.put(Attributes.Name.SIGNATURE_VERSION, "1.0");
+    mainAttributes.putValue("Created-By", System.getProperty("java.version") + " (repository-jarsign-maven-plugin)");
+    mainAttributes.putValue(DIGEST_ALGORITHM + "-Digest-Manifest", Base64.toBase64String(pMessageDigest.digest(pManifestBytes)));
+
+    Map<String, byte[]> sections = SignUtility.getManifestSections(pManifestBytes);
+    for (Map.Entry<String, byte[]> section : sections.entrySet())
+    {
+      String digest = Base64.toBase64String(pMessageDigest.digest(section.getValue()));
+      if (section.getKey() == null)
+        mainAttributes.putValue(DIGEST_ALGORITHM + "-Digest-Manifest-Main-Attributes", digest);
+      else
+      {
+        Attributes attributes = new Attributes();
+        attributes.putValue(DIGEST_ATTRIBUTE, digest);
+        signatureFile.getEntries().put(section.getKey(), attributes);
+      }
+    }
+    try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream())
+    {
+      signatureFile.write(outputStream);
+      return outputStream.toByteArray();
+    }
+  }
+
+  private byte[] _createSignatureBlock(byte[] pSignatureFile) throws IOException, MojoExecutionException
+  {
+    try
+    {
+      CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+      generator.addSignerInfoGenerator(
+          new JcaSignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().build())
+              .setDirectSignature(true)
+              .build(new JcaContentSignerBuilder(_getSignatureAlgorithm()).build(signingKey.getPrivateKey()),
+                     signingKey.getCertificate()));
+      generator.addCertificates(new JcaCertStore(signingKey.getCertificateChain()));
+      CMSSignedData signedData = generator.generate(new CMSProcessableByteArray(pSignatureFile), false);
+
+      if (timestampClient != null)
+        signedData = _addTimestamp(signedData);
+
+      return signedData.toASN1Structure().getEncoded(ASN1Encoding.DER);
+    }
+    catch (OperatorCreationException | CertificateEncodingException | CMSException e)
+    {
+      throw new MojoExecutionException("Could not create signature block.", e);
+    }
+  }
+
+  private CMSSignedData _addTimestamp(CMSSignedData pSignedData) throws IOException, MojoExecutionException
+  {
+    List<SignerInformation> signers = new ArrayList<>();
+    for (SignerInformation signer : pSignedData.getSignerInfos().getSigners())
+    {
+      long start = metrics == null ? 0 : metrics.start();
+      byte[] token = timestampClient.timestamp(signer.getSignature());
+      if (metrics != null)
+        metrics.record(SignMetrics.PHASE.TIMESTAMP, start, token.length);
+      Attribute attribute = new Attribute(PKCSObjectIdentifiers.id_aa_signatureTimeStampToken,
+                                          new DERSet(ASN1Primitive.fromByteArray(token)));
+      AttributeTable unsignedAttributes = signer.getUnsignedAttributes();
+      ASN1EncodableVector vector = unsignedAttributes == null ? new ASN1EncodableVector() : unsignedAttributes.toASN1EncodableVector();
+      vector.add(attribute);
+      signers.add(SignerInformation.replaceUnsignedAttributes(signer, new AttributeTable(vector)));
+    }
+    return CMSSignedData.replaceSigners(pSignedData, new SignerInformationStore(signers));
+  }
+
+  private String _getSignatureAlgorithm() throws MojoExecutionException
+  {
+    switch (signingKey.getPrivateKey().getAlgorithm())
+    {
+      case "RSA":
+        return "SHA256withRSA";
+      case "DSA":
+        return "SHA256withDSA";
+      case "EC":
+        return "SHA256withECDSA";
+      default:
+        throw new MojoExecutionException("Unsupported key algorithm '" + signingKey.getPrivateKey().getAlgorithm() + "'.");
+    }
+  }
+
+  private String _getBlockExtension()
+  {
+    return signingKey.getPrivateKey().getAlgorithm();
+  }
+
+  private static MessageDigest _getMessageDigest() throws MojoExecutionException
+  {
+    try
+    {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new MojoExecutionException("Digest algorithm " + DIGEST_ALGORITHM + " is not available.", e);
+    }
+  }
+
+  /**
+   * The signature name is derived from the alias like jarsigner does it.
+   */
+  private static String _getSignatureName(String pAlias)
+  {
+    String name = pAlias.length() > 8 ? pAlias.substring(0, 8) : pAlias;
+    StringBuilder builder = new StringBuilder();
+    for (char c : name.toUpperCase(Locale.ENGLISH).toCharArray())
+      builder.append((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_' ? c : '_');
+    return builder.toString();
+  }
+
+}
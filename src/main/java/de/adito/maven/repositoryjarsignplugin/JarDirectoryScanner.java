@@ -0,0 +1,164 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Finds the jars to be signed in a directory tree. Directories are listed in parallel and directories that are excluded
+ * as a whole are not entered at all. The jars are ordered largest first, so the jars that take longest to sign start
+ * first and don't finish last.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class JarDirectoryScanner
+{
+
+  private static final ForkJoinPool POOL = new ForkJoinPool();
+
+  private Path root;
+  private List<PathMatcher> includes;
+  private List<PathMatcher> excludes;
+  private List<PathMatcher> directoryExcludes;
+
+
+  /**
+   * @param pRoot     the directory to scan.
+   * @param pTypes    a comma separated string with all extensions that shall be signed. Only used without includes.
+   * @param pIncludes glob patterns relative to the directory for the files that shall be signed. May be empty.
+   * @param pExcludes glob patterns relative to the directory for files and directories that shall not be signed.
+   */
+  JarDirectoryScanner(Path pRoot, String pTypes, List<String> pIncludes, List<String> pExcludes)
+  {
+    root = pRoot;
+    FileSystem fileSystem = pRoot.getFileSystem();
+    includes = new ArrayList<>();
+    if (pIncludes.isEmpty())
+      includes.add(fileSystem.getPathMatcher("glob:**.{" + pTypes + "}"));
+    for (String include : pIncludes)
+      includes.add(fileSystem.getPathMatcher("glob:" + include));
+    excludes = new ArrayList<>();
+    directoryExcludes = new ArrayList<>();
+    for (String exclude : pExcludes)
+    {
+      excludes.add(fileSystem.getPathMatcher("glob:" + exclude));
+      directoryExcludes.add(fileSystem.getPathMatcher("glob:" + exclude));
+      // 'dir/**' excludes the directory itself, too
+      if (exclude.endsWith("/**"))
+        directoryExcludes.add(fileSystem.getPathMatcher("glob:" + exclude.substring(0, exclude.length() - 3)));
+    }
+  }
+
+  /**
+   * @return the matching files ordered by size, largest first.
+   */
+  List<Path> scan() throws IOException
+  {
+    if (!Files.isDirectory(root))
+      return Collections.emptyList();
+    final Map<Path, Long> sizes;
+    try
+    {
+      sizes = POOL.invoke(new DirectoryTask(root));
+    }
+    catch (UncheckedIOException e)
+    {
+      throw e.getCause();
+    }
+    List<Path> paths = new ArrayList<>(sizes.keySet());
+    Collections.sort(paths, new Comparator<Path>()
+    {
+      @Override
+      public int compare(Path pPath1, Path pPath2)
+      {
+        return Long.compare(sizes.get(pPath2), sizes.get(pPath1));
+      }
+    });
+    return paths;
+  }
+
+  private boolean _matches(List<PathMatcher> pMatchers, Path pRelativePath)
+  {
+    for (PathMatcher matcher : pMatchers)
+      if (matcher.matches(pRelativePath))
+        return true;
+    return false;
+  }
+
+
+  /**
+   * Lists one directory and forks a task for each subdirectory. Symbolic links to files are found, symbolic links to
+   * directories are not followed.
+   */
+  private class DirectoryTask extends RecursiveTask<Map<Path, Long>>
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final Path directory;
+
+    DirectoryTask(Path pDirectory)
+    {
+      directory = pDirectory;
+    }
+
+    @Override
+    protected Map<Path, Long> compute()
+    {
+      Map<Path, Long> sizes = new HashMap<>();
+      List<DirectoryTask> tasks = new ArrayList<>();
+      try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory))
+      {
+        for (Path path : directoryStream)
+        {
+          Path relativePath = root.relativize(path);
+          BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+          if (attributes.isDirectory())
+          {
+            if (!_matches(directoryExcludes, relativePath))
+              tasks.add(new DirectoryTask(path));
+            continue;
+          }
+          if (attributes.isSymbolicLink())
+          {
+            if (!Files.exists(path))
+              continue;
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attributes.isDirectory())
+              continue;
+          }
+          if (_matches(includes, relativePath) && !_matches(excludes, relativePath))
+            sizes.put(path, attributes.size());
+        }
+      }
+      catch (IOException e)
+      {
+        throw new UncheckedIOException(e);
+      }
+      for (DirectoryTask task : invokeAll(tasks))
+        sizes.putAll(task.join());
+      return sizes;
+    }
+  }
+
+  /**
+   * Carries an IOException out of a fork join task.
+   */
+  private static class UncheckedIOException extends RuntimeException
+  {
+    private static final long serialVersionUID = 1L;
+
+    UncheckedIOException(IOException pCause)
+    {
+      super(pCause);
+    }
+
+    @Override
+    public synchronized IOException getCause()
+    {
+      return (IOException) super.getCause();
+    }
+  }
+
+}
@@ -0,0 +1,93 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.shared.jarsigner.DefaultJarSigner;
+import org.apache.maven.shared.utils.cli.CommandLineException;
+import org.apache.maven.shared.utils.cli.javatool.JavaToolException;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * SignEngine that starts a jarsigner process for every archive. jarsigner can only use one TSA, so the next one is only
+ * tried when signing failed.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class JarSignerSignEngine implements SignEngine
+{
+
+  private DefaultJarSigner jarSigner;
+  private String alias;
+  private String keystore;
+  private String storepass;
+  private String keypass;
+  private List<String> tsas;
+  private SignMetrics metrics;
+
+
+  /**
+   * @param pMetrics the metrics rewriting is recorded in or <tt>null</tt>.
+   */
+  JarSignerSignEngine(Log pLog, String pAlias, String pKeystore, String pStorepass, String pKeypass,
+                      List<String> pTsas, SignMetrics pMetrics)
+  {
+    jarSigner = new DefaultJarSigner();
+    jarSigner.enableLogging(new MavenLogger(pLog));
+    alias = pAlias;
+    keystore = pKeystore;
+    storepass = pStorepass;
+    keypass = pKeypass;
+    tsas = pTsas.isEmpty() ? Collections.<String>singletonList(null) : pTsas;
+    metrics = pMetrics;
+  }
+
+  @Override
+  public void sign(Path pArchivePath, Map<String, String> pAdditionalManifestEntries, Path pPreviousSignedPath)
+      throws IOException, MojoExecutionException
+  {
+    // repacked archives are rewritten before they are repacked, a second pass would change nothing
+    if ((pAdditionalManifestEntries != null && !pAdditionalManifestEntries.isEmpty()) ||
+        ArchiveRewriter.isSigned(pArchivePath))
+    {
+      long start = metrics == null ? 0 : metrics.start();
+      ArchiveRewriter.rewrite(pArchivePath, pAdditionalManifestEntries);
+      if (metrics != null)
+        metrics.record(SignMetrics.PHASE.REWRITE, start, Files.size(pArchivePath));
+    }
+    for (Iterator<String> iterator = tsas.iterator(); iterator.hasNext(); )
+    {
+      try
+      {
+        SignUtility.sign(jarSigner, alias, keystore, storepass, keypass, iterator.next(), pArchivePath);
+        return;
+      }
+      catch (CommandLineException | JavaToolException e)
+      {
+        throw new MojoExecutionException("Jar signing failed for " + pArchivePath + ".", e);
+      }
+      catch (MojoExecutionException e)
+      {
+        // a failed jarsigner run leaves the archive unchanged
+        if (!iterator.hasNext())
+          throw e;
+      }
+    }
+  }
+
+  @Override
+  public void verify(Path pArchivePath) throws MojoExecutionException
+  {
+    try
+    {
+      SignUtility.verify(jarSigner, alias, keystore, storepass, pArchivePath);
+    }
+    catch (CommandLineException | JavaToolException e)
+    {
+      throw new MojoExecutionException("Jar verifying failed for " + pArchivePath + ".", e);
+    }
+  }
+
+}
@@ -0,0 +1,545 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cms.*;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.tsp.*;
+import org.bouncycastle.util.Store;
+import org.bouncycastle.util.encoders.Base64;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.security.cert.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.jar.*;
+import java.util.zip.*;
+
+/**
+ * Verifies signed jars inside the running JVM like <tt>jarsigner -verify -strict</tt>: the signature block has to sign
+ * the signature file, the signature file has to match the manifest, every entry has to match its digest in the manifest
+ * and the certificate chain has to lead to the expected or a trusted certificate and be valid at the time of the
+ * timestamp or now. A timestamp only counts if the chain of its authority leads to a trusted certificate, is valid at
+ * the time of the timestamp and is meant for time stamping, otherwise the signature is treated as not timestamped. The
+ * entry digests of one jar are checked in parallel, so a single huge jar is not verified by one thread only.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class JarVerifier
+{
+
+  /**
+   * Entries are verified by one task until their uncompressed size exceeds this threshold.
+   */
+  private static final long SPLIT_SIZE = 4 * 1024 * 1024;
+  private static final ForkJoinPool POOL = new ForkJoinPool();
+
+  private X509Certificate certificate;
+  private Set<X509Certificate> trustedCertificates;
+
+
+  /**
+   * @param pCertificate         the certificate the jars have to be signed with.
+   * @param pTrustedCertificates the trust anchors for the certificate chains of signers and timestamp authorities.
+   */
+  JarVerifier(X509Certificate pCertificate, Collection<X509Certificate> pTrustedCertificates)
+  {
+    certificate = pCertificate;
+    trustedCertificates = new HashSet<>(pTrustedCertificates);
+  }
+
+  void verify(Path pArchivePath) throws IOException, MojoExecutionException
+  {
+    try (ZipFile zipFile = new ZipFile(pArchivePath.toFile()))
+    {
+      ZipEntry manifestEntry = zipFile.getEntry(JarFile.MANIFEST_NAME);
+      if (manifestEntry == null)
+        throw _fail(pArchivePath, "no manifest found.");
+      byte[] manifestBytes = _read(zipFile, manifestEntry);
+      Manifest manifest = new Manifest(new ByteArrayInputStream(manifestBytes));
+
+      Set<String> signedSections = null;
+      List<ZipEntry> contentEntries = new ArrayList<>();
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements())
+      {
+        ZipEntry entry = entries.nextElement();
+        if (ArchiveRewriter.isContentEntry(entry))
+          contentEntries.add(entry);
+        else if (entry.getName().toUpperCase(Locale.ENGLISH).endsWith(".SF") &&
+            SignUtility.isSignatureFile(entry.getName()))
+        {
+          Set<String> sections = _verifySignatureFile(pArchivePath, zipFile, entry, manifestBytes);
+          if (sections != null)
+            signedSections = sections;
+        }
+      }
+      if (signedSections == null)
+        throw _fail(pArchivePath, "jar is not signed by the expected certificate.");
+
+      for (ZipEntry entry : contentEntries)
+        if (!signedSections.contains(entry.getName()))
+          throw _fail(pArchivePath, entry.getName() + " is not signed.");
+
+      POOL.invoke(new EntryTask(pArchivePath, zipFile, manifest, contentEntries, 0, contentEntries.size()));
+    }
+    catch (VerificationException e)
+    {
+      throw e.getCause();
+    }
+    catch (ZipException e)
+    {
+      throw _fail(pArchivePath, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Checks that a signed jar holds exactly the content of another jar: both have the same content entries with equal
+   * size, CRC and bytes, and the digests in the manifest of the signed jar are the ones of the content. Together with
+   * {@link #verify(Path)} this ensures that a signed jar of an untrusted source signs the expected content.
+   *
+   * @param pSignedPath the signed jar.
+   * @param pSourcePath the jar it is supposed to be signed from.
+   * @throws IOException if the content differs or a jar can't be read.
+   */
+  static void verifyContent(Path pSignedPath, Path pSourcePath) throws IOException
+  {
+    try (ZipFile signedFile = new ZipFile(pSignedPath.toFile());
+         ZipFile sourceFile = new ZipFile(pSourcePath.toFile()))
+    {
+      ZipEntry manifestEntry = signedFile.getEntry(JarFile.MANIFEST_NAME);
+      if (manifestEntry == null)
+        throw new IOException("The signed jar has no manifest.");
+      Manifest manifest = new Manifest(new ByteArrayInputStream(_read(signedFile, manifestEntry)));
+      Map<String, ZipEntry> signedEntries = _getContentEntries(signedFile);
+      Map<String, ZipEntry> sourceEntries = _getContentEntries(sourceFile);
+      if (!signedEntries.keySet().equals(sourceEntries.keySet()))
+        throw new IOException("The entries of the signed jar differ from " + pSourcePath.getFileName() + ".");
+
+      byte[] sourceBuffer = new byte[8192];
+      byte[] signedBuffer = new byte[8192];
+      for (ZipEntry sourceEntry : sourceEntries.values())
+      {
+        ZipEntry signedEntry = signedEntries.get(sourceEntry.getName());
+        Map<MessageDigest, String> digests = _getDigests(manifest.getAttributes(sourceEntry.getName()));
+        if (signedEntry.getSize() != sourceEntry.getSize() || signedEntry.getCrc() != sourceEntry.getCrc() ||
+            digests.isEmpty())
+          throw _differs(sourceEntry);
+        try (InputStream sourceStream = sourceFile.getInputStream(sourceEntry);
+             DataInputStream signedStream = new DataInputStream(signedFile.getInputStream(signedEntry)))
+        {
+          for (int read = sourceStream.read(sourceBuffer); read != -1; read = sourceStream.read(sourceBuffer))
+          {
+            signedStream.readFully(signedBuffer, 0, read);
+            for (int i = 0; i < read; i++)
+              if (sourceBuffer[i] != signedBuffer[i])
+                throw _differs(sourceEntry);
+            for (MessageDigest messageDigest : digests.keySet())
+              messageDigest.update(sourceBuffer, 0, read);
+          }
+          if (signedStream.read() != -1)
+            throw _differs(sourceEntry);
+        }
+        for (Map.Entry<MessageDigest, String> digest : digests.entrySet())
+          if (!MessageDigest.isEqual(digest.getKey().digest(), Base64.decode(digest.getValue())))
+            throw _differs(sourceEntry);
+      }
+    }
+  }
+
+  /**
+   * Verifies a signature file and its signature block.
+   *
+   * @return the names of all manifest sections the signature file signs or <tt>null</tt> if it isn't signed with the
+   * expected certificate.
+   */
+  private Set<String> _verifySignatureFile(Path pArchivePath, ZipFile pZipFile, ZipEntry pSignatureFileEntry,
+                                           byte[] pManifestBytes) throws IOException, MojoExecutionException
+  {
+    String baseName = pSignatureFileEntry.getName().substring(0, pSignatureFileEntry.getName().length() - 3);
+    ZipEntry blockEntry = null;
+    for (String extension : new String[]{".RSA", ".DSA", ".EC"})
+      if (blockEntry == null)
+        blockEntry = pZipFile.getEntry(baseName + extension);
+    if (blockEntry == null)
+      throw _fail(pArchivePath, "no signature block found for " + pSignatureFileEntry.getName() + ".");
+
+    byte[] signatureFileBytes = _read(pZipFile, pSignatureFileEntry);
+    if (!_verifySignatureBlock(pArchivePath, signatureFileBytes, _read(pZipFile, blockEntry)))
+      return null;
+
+    Manifest signatureFile = new Manifest(new ByteArrayInputStream(signatureFileBytes));
+    Map<String, byte[]> sections = SignUtility.getManifestSections(pManifestBytes);
+    Set<String> names = new HashSet<>(sections.keySet());
+    names.remove(null);
+
+    // a matching digest of the whole manifest signs all sections
+    if (_matches(signatureFile.getMainAttributes(), "-Digest-Manifest", pManifestBytes))
+      return names;
+
+    if (!_matches(signatureFile.getMainAttributes(), "-Digest-Manifest-Main-Attributes", sections.get(null)))
+      throw _fail(pArchivePath, "the main attributes of the manifest don't match " + pSignatureFileEntry.getName() +
+          ".");
+    Set<String> signedNames = new HashSet<>();
+    for (Map.Entry<String, Attributes> entry : signatureFile.getEntries().entrySet())
+    {
+      byte[] section = sections.get(entry.getKey());
+      if (section == null || !_matches(entry.getValue(), "-Digest", section))
+        throw _fail(pArchivePath, "the manifest section of " + entry.getKey() + " doesn't match " +
+            pSignatureFileEntry.getName() + ".");
+      signedNames.add(entry.getKey());
+    }
+    return signedNames;
+  }
+
+  /**
+   * Verifies that the signature block signs the signature file and that its certificate chain is valid.
+   *
+   * @return whether the signature file is signed with the expected certificate.
+   */
+  private boolean _verifySignatureBlock(Path pArchivePath, byte[] pSignatureFile, byte[] pSignatureBlock)
+      throws MojoExecutionException
+  {
+    try
+    {
+      CMSSignedData signedData = new CMSSignedData(new CMSProcessableByteArray(pSignatureFile), pSignatureBlock);
+      // the certificate store of BouncyCastle 1.56 isn't generic
+      @SuppressWarnings("unchecked")
+      Store<X509CertificateHolder> store = signedData.getCertificates();
+      List<X509Certificate> certificates = new ArrayList<>();
+      JcaX509CertificateConverter converter = new JcaX509CertificateConverter();
+      for (X509CertificateHolder holder : store.getMatches(null))
+        certificates.add(converter.getCertificate(holder));
+
+      boolean signedByCertificate = false;
+      for (SignerInformation signer : signedData.getSignerInfos().getSigners())
+      {
+        @SuppressWarnings("unchecked")
+        Collection<X509CertificateHolder> signerCertificates = store.getMatches(signer.getSID());
+        if (signerCertificates.isEmpty())
+          throw _fail(pArchivePath, "the certificate of a signer is missing.");
+        X509Certificate signerCertificate = converter.getCertificate(signerCertificates.iterator().next());
+        if (!signer.verify(new JcaSimpleSignerInfoVerifierBuilder().build(signerCertificate)))
+          throw _fail(pArchivePath, "the signature file doesn't match its signature.");
+
+        Date time = _getTimestamp(signer);
+        try
+        {
+          _verifyCertificateChain(signerCertificate, certificates, time == null ? new Date() : time, certificate);
+        }
+        catch (GeneralSecurityException e)
+        {
+          throw _fail(pArchivePath, "invalid certificate chain: " + e.getMessage(), e);
+        }
+        if (signerCertificate.equals(certificate))
+          signedByCertificate = true;
+      }
+      return signedByCertificate;
+    }
+    catch (CMSException | OperatorCreationException | CertificateException e)
+    {
+      throw _fail(pArchivePath, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * @return the validated time of the signer's timestamp or <tt>null</tt> if it isn't timestamped or the timestamp isn't
+   * valid, belongs to another signature or is issued by an untrusted authority.
+   */
+  private Date _getTimestamp(SignerInformation pSigner)
+  {
+    AttributeTable unsignedAttributes = pSigner.getUnsignedAttributes();
+    Attribute attribute = unsignedAttributes == null ? null :
+        unsignedAttributes.get(PKCSObjectIdentifiers.id_aa_signatureTimeStampToken);
+    if (attribute == null)
+      return null;
+    try
+    {
+      TimeStampToken token = new TimeStampToken(
+          new CMSSignedData(attribute.getAttrValues().getObjectAt(0).toASN1Primitive().getEncoded()));
+      @SuppressWarnings("unchecked")
+      Store<X509CertificateHolder> store = token.getCertificates();
+      List<X509Certificate> certificates = new ArrayList<>();
+      JcaX509CertificateConverter converter = new JcaX509CertificateConverter();
+      for (X509CertificateHolder holder : store.getMatches(null))
+        certificates.add(converter.getCertificate(holder));
+      @SuppressWarnings("unchecked")
+      Collection<X509CertificateHolder> tsaCertificates = store.getMatches(token.getSID());
+      if (tsaCertificates.isEmpty())
+        return null;
+      X509Certificate tsaCertificate = converter.getCertificate(tsaCertificates.iterator().next());
+      token.validate(new JcaSimpleSignerInfoVerifierBuilder().build(tsaCertificate));
+
+      TimeStampTokenInfo info = token.getTimeStampInfo();
+      byte[] imprint = MessageDigest.getInstance(info.getMessageImprintAlgOID().getId()).digest(pSigner.getSignature());
+      if (!MessageDigest.isEqual(imprint, info.getMessageImprintDigest()))
+        return null;
+      List<String> extendedKeyUsage = tsaCertificate.getExtendedKeyUsage();
+      if (extendedKeyUsage == null || !extendedKeyUsage.contains(KeyPurposeId.id_kp_timeStamping.getId()))
+        return null;
+      _verifyCertificateChain(tsaCertificate, certificates, info.getGenTime(), null);
+      return info.getGenTime();
+    }
+    catch (IOException | CMSException | TSPException | OperatorCreationException | GeneralSecurityException e)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Verifies that a certificate chain leads from a certificate to the expected or a trusted certificate and that all of
+   * its certificates are valid at the given time.
+   *
+   * @param pCertificate  the certificate of the signer.
+   * @param pCertificates the certificates that may complete the chain.
+   * @param pTime         the time the chain has to be valid at.
+   * @param pExpected     a certificate that is trusted in addition to the trusted certificates. May be <tt>null</tt>.
+   * @throws GeneralSecurityException if the chain is invalid or can't be completed.
+   */
+  private void _verifyCertificateChain(X509Certificate pCertificate, List<X509Certificate> pCertificates, Date pTime,
+                                       X509Certificate pExpected) throws GeneralSecurityException
+  {
+    X509Certificate current = pCertificate;
+    for (int depth = 0; depth <= pCertificates.size(); depth++)
+    {
+      current.checkValidity(pTime);
+      if (current.equals(pExpected) || trustedCertificates.contains(current))
+        return;
+      if (_getIssuer(current, trustedCertificates) != null)
+        return;
+      X509Certificate issuer = _getIssuer(current, pCertificates);
+      if (issuer == null)
+        break;
+      current = issuer;
+    }
+    throw new CertificateException("the chain of " + pCertificate.getSubjectX500Principal() +
+                                       " doesn't lead to a trusted certificate.");
+  }
+
+  /**
+   * @return the certificate that issued and signed the certificate or <tt>null</tt> if there is none. A self issued
+   * certificate is never its own issuer.
+   */
+  private static X509Certificate _getIssuer(X509Certificate pCertificate, Collection<X509Certificate> pCandidates)
+  {
+    for (X509Certificate candidate : pCandidates)
+      if (!candidate.equals(pCertificate) &&
+          candidate.getSubjectX500Principal().equals(pCertificate.getIssuerX500Principal()))
+        try
+        {
+          pCertificate.verify(candidate.getPublicKey());
+          return candidate;
+        }
+        catch (GeneralSecurityException e)
+        {
+          // another certificate with the same subject may be the issuer
+        }
+    return null;
+  }
+
+  /**
+   * @return whether the attributes contain a digest of the data for a supported algorithm and all such digests match.
+   */
+  private static boolean _matches(Attributes pAttributes, String pSuffix, byte[] pData)
+  {
+    if (pData == null)
+      return false;
+    boolean matched = false;
+    for (Map.Entry<Object, Object> attribute : pAttributes.entrySet())
+    {
+      String name = attribute.getKey().toString();
+      if (!name.toUpperCase(Locale.ENGLISH).endsWith(pSuffix.toUpperCase(Locale.ENGLISH)) ||
+          name.length() == pSuffix.length())
+        continue;
+      MessageDigest messageDigest = _getMessageDigest(name.substring(0, name.length() - pSuffix.length()));
+      if (messageDigest == null)
+        continue;
+      if (!MessageDigest.isEqual(messageDigest.digest(pData), Base64.decode(attribute.getValue().toString())))
+        return false;
+      matched = true;
+    }
+    return matched;
+  }
+
+  /**
+   * @param pAttributes the manifest section of an entry. May be <tt>null</tt>.
+   * @return new digests for all supported algorithms of the section with the expected base64 encoded values.
+   */
+  private static Map<MessageDigest, String> _getDigests(Attributes pAttributes)
+  {
+    Map<MessageDigest, String> digests = new HashMap<>();
+    if (pAttributes != null)
+      for (Map.Entry<Object, Object> attribute : pAttributes.entrySet())
+      {
+        String name = attribute.getKey().toString();
+        if (name.toUpperCase(Locale.ENGLISH).endsWith("-DIGEST"))
+        {
+          MessageDigest messageDigest = _getMessageDigest(name.substring(0, name.length() - "-Digest".length()));
+          if (messageDigest != null)
+            digests.put(messageDigest, attribute.getValue().toString());
+        }
+      }
+    return digests;
+  }
+
+  /**
+   * @return the content entries of an archive by name.
+   */
+  private static Map<String, ZipEntry> _getContentEntries(ZipFile pZipFile)
+  {
+    Map<String, ZipEntry> entries = new LinkedHashMap<>();
+    Enumeration<? extends ZipEntry> enumeration = pZipFile.entries();
+    while (enumeration.hasMoreElements())
+    {
+      ZipEntry entry = enumeration.nextElement();
+      if (ArchiveRewriter.isContentEntry(entry))
+        entries.put(entry.getName(), entry);
+    }
+    return entries;
+  }
+
+  private static IOException _differs(ZipEntry pEntry)
+  {
+    return new IOException("The signed jar doesn't contain the original " + pEntry.getName() + ".");
+  }
+
+  /**
+   * @return the digest for the algorithm or <tt>null</tt> if it isn't supported.
+   */
+  private static MessageDigest _getMessageDigest(String pAlgorithm)
+  {
+    try
+    {
+      return MessageDigest.getInstance(pAlgorithm);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      return null;
+    }
+  }
+
+  private static byte[] _read(ZipFile pZipFile, ZipEntry pEntry) throws IOException
+  {
+    try (InputStream inputStream = pZipFile.getInputStream(pEntry))
+    {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer))
+        outputStream.write(buffer, 0, read);
+      return outputStream.toByteArray();
+    }
+  }
+
+  private static MojoExecutionException _fail(Path pArchivePath, String pMessage)
+  {
+    return new MojoExecutionException("Jar verifying failed for " + pArchivePath + ": " + pMessage);
+  }
+
+  private static MojoExecutionException _fail(Path pArchivePath, String pMessage, Throwable pCause)
+  {
+    return new MojoExecutionException("Jar verifying failed for " + pArchivePath + ": " + pMessage, pCause);
+  }
+
+
+  /**
+   * Verifies the digests of a range of entries. Ranges with more data than {@link #SPLIT_SIZE} are split in halves.
+   */
+  private static class EntryTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private Path archivePath;
+    private ZipFile zipFile;
+    private Manifest manifest;
+    private List<ZipEntry> entries;
+    private int start;
+    private int end;
+
+    EntryTask(Path pArchivePath, ZipFile pZipFile, Manifest pManifest, List<ZipEntry> pEntries, int pStart, int pEnd)
+    {
+      archivePath = pArchivePath;
+      zipFile = pZipFile;
+      manifest = pManifest;
+      entries = pEntries;
+      start = pStart;
+      end = pEnd;
+    }
+
+    @Override
+    protected void compute()
+    {
+      long size = 0;
+      for (int i = start; i < end && size <= SPLIT_SIZE; i++)
+        size += Math.max(0, entries.get(i).getSize());
+      if (end - start > 1 && size > SPLIT_SIZE)
+      {
+        int middle = (start + end) >>> 1;
+        invokeAll(new EntryTask(archivePath, zipFile, manifest, entries, start, middle),
+                  new EntryTask(archivePath, zipFile, manifest, entries, middle, end));
+        return;
+      }
+      try
+      {
+        for (int i = start; i < end; i++)
+          _verifyEntry(entries.get(i));
+      }
+      catch (IOException e)
+      {
+        throw new VerificationException(_fail(archivePath, e.getMessage(), e));
+      }
+      catch (MojoExecutionException e)
+      {
+        throw new VerificationException(e);
+      }
+    }
+
+    /**
+     * The entry is streamed through the digests of all supported algorithms in its manifest section.
+     */
+    private void _verifyEntry(ZipEntry pEntry) throws IOException, MojoExecutionException
+    {
+      Map<MessageDigest, String> digests = _getDigests(manifest.getAttributes(pEntry.getName()));
+      if (digests.isEmpty())
+        throw _fail(archivePath, pEntry.getName() + " has no digest in the manifest.");
+
+      try (InputStream inputStream = zipFile.getInputStream(pEntry))
+      {
+        byte[] buffer = new byte[8192];
+        for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer))
+          for (MessageDigest messageDigest : digests.keySet())
+            messageDigest.update(buffer, 0, read);
+      }
+      for (Map.Entry<MessageDigest, String> digest : digests.entrySet())
+        if (!MessageDigest.isEqual(digest.getKey().digest(), Base64.decode(digest.getValue())))
+          throw _fail(archivePath, pEntry.getName() + " doesn't match its digest in the manifest.");
+    }
+  }
+
+  /**
+   * Carries a failed verification out of a fork-join task.
+   */
+  private static class VerificationException extends RuntimeException
+  {
+    private static final long serialVersionUID = 1L;
+
+    VerificationException(MojoExecutionException pCause)
+    {
+      super(pCause);
+    }
+
+    @Override
+    public synchronized MojoExecutionException getCause()
+    {
+      return (MojoExecutionException) super.getCause();
+    }
+  }
+
+}
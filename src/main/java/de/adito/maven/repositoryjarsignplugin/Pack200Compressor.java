@@ -0,0 +1,41 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Creates <tt>.pack.gz</tt> files with {@link PackUtility}. Check {@link PackUtility#isAvailable()} first.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class Pack200Compressor implements Compressor
+{
+
+  @Override
+  public TYPE getType()
+  {
+    return TYPE.PACK200;
+  }
+
+  @Override
+  public void compress(Path pArchivePath, Path pTargetPath) throws IOException
+  {
+    PackUtility.pack(pArchivePath, pTargetPath, true);
+  }
+
+  @Override
+  public void decompress(Path pCompressedPath, Path pArchivePath) throws IOException
+  {
+    PackUtility.unpack(pCompressedPath, pArchivePath, true);
+  }
+
+  /**
+   * Unpacked jars differ from the packed ones unless they were repacked before signing.
+   */
+  @Override
+  public boolean isLossless()
+  {
+    return false;
+  }
+
+}
@@ -1,6 +1,7 @@
 package de.adito.maven.repositoryjarsignplugin;
 
 import java.io.*;
+import java.lang.reflect.*;
 import java.nio.file.*;
 import java.util.Map;
 import java.util.jar.*;
@@ -16,6 +17,10 @@ public class PackUtility
 
   private static final String PACK = ".pack";
   private static final String GZ = ".gz";
+  // Pack200 is called by reflection, so the plugin compiles on JDKs without it
+  private static final String PACK200 = "java.util.jar.Pack200";
+  private static final String PACKER = PACK200 + "$Packer";
+  private static final String UNPACKER = PACK200 + "$Unpacker";
 
 
   private PackUtility()
@@ -23,6 +28,24 @@ public class PackUtility
   }
 
 
+  /**
+   * Pack200 was removed in Java 14, so it has to be checked before any other method is called.
+   *
+   * @return whether the JVM provides Pack200.
+   */
+  static boolean isAvailable()
+  {
+    try
+    {
+      Class.forName(PACK200);
+      return true;
+    }
+    catch (ClassNotFoundException e)
+    {
+      return false;
+    }
+  }
+
   static Path getPackPath(Path pArchivePath)
   {
     return pArchivePath.resolveSibling(pArchivePath.getFileName() + PACK + GZ);
@@ -37,37 +60,49 @@ public class PackUtility
 
   static void pack(Path pSource, Path pTarget) throws IOException
   {
-    Pack200.Packer packer = _getPacker();
+    pack(pSource, pTarget, pTarget.toString().endsWith(GZ));
+  }
+
+  static void pack(Path pSource, Path pTarget, boolean pGzip) throws IOException
+  {
+    Object packer = _getPacker();
+    Method packMethod = _getMethod(PACKER, "pack", JarInputStream.class, OutputStream.class);
     try (JarInputStream jis = new JarInputStream(Files.newInputStream(pSource));
          OutputStream fos = Files.newOutputStream(pTarget))
     {
-      if (pTarget.toString().endsWith(GZ))
+      if (pGzip)
       {
         try (OutputStream gzos = new GZIPOutputStream(fos))
         {
-          packer.pack(jis, gzos);
+          _invoke(packMethod, packer, jis, gzos);
         }
       }
       else
-        packer.pack(jis, fos);
+        _invoke(packMethod, packer, jis, fos);
     }
   }
 
   static void unpack(Path pPackPath, Path pArchivePath) throws IOException
   {
-    Pack200.Unpacker unpacker = Pack200.newUnpacker();
+    unpack(pPackPath, pArchivePath, pPackPath.toString().endsWith(GZ));
+  }
+
+  static void unpack(Path pPackPath, Path pArchivePath, boolean pGzip) throws IOException
+  {
+    Object unpacker = _invoke(_getMethod(PACK200, "newUnpacker"), null);
+    Method unpackMethod = _getMethod(UNPACKER, "unpack", InputStream.class, JarOutputStream.class);
     try (InputStream fis = Files.newInputStream(pPackPath);
          JarOutputStream jos = new JarOutputStream(Files.newOutputStream(pArchivePath)))
     {
-      if (pPackPath.toString().endsWith(GZ))
+      if (pGzip)
       {
         try (InputStream gzis = new GZIPInputStream(fis))
         {
-          unpacker.unpack(gzis, jos);
+          _invoke(unpackMethod, unpacker, gzis, jos);
         }
       }
       else
-        unpacker.unpack(fis, jos);
+        _invoke(unpackMethod, unpacker, fis, jos);
     }
   }
 
@@ -79,27 +114,63 @@ public class PackUtility
     Files.delete(packPath);
   }
 
-  static private Pack200.Packer _getPacker()
+  static private Object _getPacker() throws IOException
   {
-    Pack200.Packer packer = Pack200.newPacker();
+    Object packer = _invoke(_getMethod(PACK200, "newPacker"), null);
 
     // Initialize the state by setting the desired properties
-    Map<String, String> p = packer.properties();
+    @SuppressWarnings("unchecked")
+    Map<String, String> p = (Map<String, String>) _invoke(_getMethod(PACKER, "properties"), packer);
     // take more time choosing codings for better compression
-    p.put(Pack200.Packer.EFFORT, "7");  // default is "5"
+    p.put("pack.effort", "7");  // default is "5"
     // use largest-possible archive segments (>10% better compression).
-    p.put(Pack200.Packer.SEGMENT_LIMIT, "-1");
+    p.put("pack.segment.limit", "-1");
     // reorder files for better compression.
-    p.put(Pack200.Packer.KEEP_FILE_ORDER, Pack200.Packer.FALSE);
+    p.put("pack.keep.file.order", "false");
     // smear modification times to a single value.
-    p.put(Pack200.Packer.MODIFICATION_TIME, Pack200.Packer.LATEST);
+    p.put("pack.modification.time", "latest");
     // ignore all JAR deflation requests,
     // transmitting a single request to use "store" mode.
-    p.put(Pack200.Packer.DEFLATE_HINT, Pack200.Packer.FALSE);
+    p.put("pack.deflate.hint", "false");
     // throw an error if an attribute is unrecognized
-    p.put(Pack200.Packer.UNKNOWN_ATTRIBUTE, Pack200.Packer.ERROR);
+    p.put("pack.unknown.attribute", "error");
 
     return packer;
   }
 
+  static private Method _getMethod(String pClassName, String pName, Class<?>... pParameterTypes) throws IOException
+  {
+    try
+    {
+      return Class.forName(pClassName).getMethod(pName, pParameterTypes);
+    }
+    catch (ClassNotFoundException | NoSuchMethodException e)
+    {
+      throw new IOException("Pack200 is not available in this JVM.", e);
+    }
+  }
+
+  static private Object _invoke(Method pMethod, Object pTarget, Object... pArguments) throws IOException
+  {
+    try
+    {
+      return pMethod.invoke(pTarget, pArguments);
+    }
+    catch (IllegalAccessException e)
+    {
+      throw new IOException(e);
+    }
+    catch (InvocationTargetException e)
+    {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new IOException(cause);
+    }
+  }
+
 }
@@ -0,0 +1,194 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a zip file so that entries can be copied as raw compressed bytes. Zip64 archives,
+ * multi-disk archives and encrypted entries are not supported and result in a {@link ZipException}.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class RawZipFile implements Closeable
+{
+
+  static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  static final int END_SIGNATURE = 0x06054b50;
+  static final int LOCAL_HEADER_SIZE = 30;
+  static final int CENTRAL_HEADER_SIZE = 46;
+  static final int END_SIZE = 22;
+
+  private FileChannel channel;
+  private List<Entry> entries;
+
+
+  RawZipFile(Path pPath) throws IOException
+  {
+    channel = FileChannel.open(pPath, StandardOpenOption.READ);
+    try
+    {
+      entries = _readCentralDirectory();
+    }
+    catch (IOException | RuntimeException e)
+    {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the entries in the order of the central directory.
+   */
+  List<Entry> getEntries()
+  {
+    return entries;
+  }
+
+  /**
+   * Copies the compressed data of an entry.
+   *
+   * @param pEntry  the entry.
+   * @param pTarget the channel the data is written to.
+   */
+  void transferData(Entry pEntry, WritableByteChannel pTarget) throws IOException
+  {
+    ByteBuffer localHeader = _read(pEntry.localHeaderOffset, LOCAL_HEADER_SIZE);
+    if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE)
+      throw new ZipException("invalid local header for " + pEntry.getName());
+    long position = pEntry.localHeaderOffset + LOCAL_HEADER_SIZE + _getShort(localHeader, 26) + _getShort(localHeader, 28);
+    long remaining = pEntry.compressedSize;
+    while (remaining > 0)
+    {
+      long transferred = channel.transferTo(position, remaining, pTarget);
+      if (transferred <= 0)
+        throw new EOFException("unexpected end of data for " + pEntry.getName());
+      position += transferred;
+      remaining -= transferred;
+    }
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    channel.close();
+  }
+
+  private List<Entry> _readCentralDirectory() throws IOException
+  {
+    long size = channel.size();
+    int tailSize = (int) Math.min(size, END_SIZE + 0xFFFF);
+    ByteBuffer tail = _read(size - tailSize, tailSize);
+    int endPosition = -1;
+    for (int i = tailSize - END_SIZE; i >= 0; i--)
+      if (tail.getInt(i) == END_SIGNATURE)
+      {
+        endPosition = i;
+        break;
+      }
+    if (endPosition == -1)
+      throw new ZipException("end of central directory not found");
+
+    int entryCount = _getShort(tail, endPosition + 10);
+    long directorySize = _getInt(tail, endPosition + 12);
+    long directoryOffset = _getInt(tail, endPosition + 16);
+    if (_getShort(tail, endPosition + 4) != 0 || entryCount == 0xFFFF || directoryOffset == 0xFFFFFFFFL)
+      throw new ZipException("zip64 and multi-disk archives are not supported");
+
+    ByteBuffer directory = _read(directoryOffset, (int) directorySize);
+    List<Entry> result = new ArrayList<>(entryCount);
+    int pos = 0;
+    for (int i = 0; i < entryCount; i++)
+    {
+      if (directory.getInt(pos) != CENTRAL_HEADER_SIGNATURE)
+        throw new ZipException("invalid central directory");
+      Entry entry = new Entry();
+      entry.versionMadeBy = _getShort(directory, pos + 4);
+      entry.versionNeeded = _getShort(directory, pos + 6);
+      entry.flags = _getShort(directory, pos + 8);
+      entry.method = _getShort(directory, pos + 10);
+      entry.dosTime = (int) _getInt(directory, pos + 12);
+      entry.crc = _getInt(directory, pos + 16);
+      entry.compressedSize = _getInt(directory, pos + 20);
+      entry.size = _getInt(directory, pos + 24);
+      int nameLength = _getShort(directory, pos + 28);
+      int extraLength = _getShort(directory, pos + 30);
+      int commentLength = _getShort(directory, pos + 32);
+      entry.internalAttributes = _getShort(directory, pos + 36);
+      entry.externalAttributes = _getInt(directory, pos + 38);
+      entry.localHeaderOffset = _getInt(directory, pos + 42);
+      entry.name = _getBytes(directory, pos + CENTRAL_HEADER_SIZE, nameLength);
+      entry.extra = _getBytes(directory, pos + CENTRAL_HEADER_SIZE + nameLength, extraLength);
+      entry.comment = _getBytes(directory, pos + CENTRAL_HEADER_SIZE + nameLength + extraLength, commentLength);
+      if ((entry.flags & 1) != 0)
+        throw new ZipException("encrypted entries are not supported");
+      if (entry.compressedSize == 0xFFFFFFFFL || entry.size == 0xFFFFFFFFL || entry.localHeaderOffset == 0xFFFFFFFFL)
+        throw new ZipException("zip64 entries are not supported");
+      result.add(entry);
+      pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+    return result;
+  }
+
+  private ByteBuffer _read(long pPosition, int pLength) throws IOException
+  {
+    ByteBuffer buffer = ByteBuffer.allocate(pLength).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining())
+      if (channel.read(buffer, pPosition + buffer.position()) < 0)
+        throw new EOFException();
+    buffer.flip();
+    return buffer;
+  }
+
+  private static int _getShort(ByteBuffer pBuffer, int pPosition)
+  {
+    return pBuffer.getShort(pPosition) & 0xFFFF;
+  }
+
+  private static long _getInt(ByteBuffer pBuffer, int pPosition)
+  {
+    return pBuffer.getInt(pPosition) & 0xFFFFFFFFL;
+  }
+
+  private static byte[] _getBytes(ByteBuffer pBuffer, int pPosition, int pLength)
+  {
+    byte[] bytes = new byte[pLength];
+    for (int i = 0; i < pLength; i++)
+      bytes[i] = pBuffer.get(pPosition + i);
+    return bytes;
+  }
+
+
+  /**
+   * An entry of the central directory.
+   */
+  static class Entry
+  {
+    int versionMadeBy;
+    int versionNeeded;
+    int flags;
+    int method;
+    int dosTime;
+    long crc;
+    long compressedSize;
+    long size;
+    int internalAttributes;
+    long externalAttributes;
+    long localHeaderOffset;
+    byte[] name;
+    byte[] extra;
+    byte[] comment;
+
+    String getName()
+    {
+      // bit 11 marks UTF-8 names, jars are written with UTF-8 names anyway
+      return new String(name, StandardCharsets.UTF_8);
+    }
+  }
+
+}
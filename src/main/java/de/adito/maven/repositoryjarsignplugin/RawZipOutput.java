@@ -0,0 +1,190 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Writes a zip file from new entries and entries that are copied as raw compressed bytes from a {@link RawZipFile}.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class RawZipOutput implements Closeable
+{
+
+  private static final int UTF8_FLAG = 1 << 11;
+  private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+
+  private FileChannel channel;
+  private List<RawZipFile.Entry> writtenEntries = new ArrayList<>();
+
+
+  RawZipOutput(Path pTarget) throws IOException
+  {
+    channel = FileChannel.open(pTarget, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                               StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  /**
+   * Adds a new deflated entry.
+   */
+  void putEntry(String pName, byte[] pContent) throws IOException
+  {
+    CRC32 crc = new CRC32();
+    crc.update(pContent);
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try
+    {
+      deflater.setInput(pContent);
+      deflater.finish();
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished())
+        compressed.write(buffer, 0, deflater.deflate(buffer));
+    }
+    finally
+    {
+      deflater.end();
+    }
+
+    RawZipFile.Entry entry = new RawZipFile.Entry();
+    entry.versionMadeBy = 20;
+    entry.versionNeeded = 20;
+    entry.flags = UTF8_FLAG;
+    entry.method = ZipEntry.DEFLATED;
+    entry.dosTime = _toDosTime(System.currentTimeMillis());
+    entry.crc = crc.getValue();
+    entry.compressedSize = compressed.size();
+    entry.size = pContent.length;
+    entry.name = pName.getBytes(StandardCharsets.UTF_8);
+    entry.extra = new byte[0];
+    entry.comment = new byte[0];
+    _writeLocalHeader(entry);
+    _write(ByteBuffer.wrap(compressed.toByteArray()));
+  }
+
+  /**
+   * Copies an entry without decompressing it.
+   */
+  void putRawEntry(RawZipFile pSource, RawZipFile.Entry pEntry) throws IOException
+  {
+    RawZipFile.Entry entry = new RawZipFile.Entry();
+    entry.versionMadeBy = pEntry.versionMadeBy;
+    entry.versionNeeded = pEntry.versionNeeded;
+    // sizes and crc are written to the local header, so no data descriptor follows the data
+    entry.flags = pEntry.flags & ~DATA_DESCRIPTOR_FLAG;
+    entry.method = pEntry.method;
+    entry.dosTime = pEntry.dosTime;
+    entry.crc = pEntry.crc;
+    entry.compressedSize = pEntry.compressedSize;
+    entry.size = pEntry.size;
+    entry.internalAttributes = pEntry.internalAttributes;
+    entry.externalAttributes = pEntry.externalAttributes;
+    entry.name = pEntry.name;
+    entry.extra = pEntry.extra;
+    entry.comment = pEntry.comment;
+    _writeLocalHeader(entry);
+    pSource.transferData(pEntry, channel);
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    try
+    {
+      long directoryOffset = channel.position();
+      for (RawZipFile.Entry entry : writtenEntries)
+      {
+        ByteBuffer header = _allocate(RawZipFile.CENTRAL_HEADER_SIZE + entry.name.length + entry.extra.length +
+                                          entry.comment.length);
+        header.putInt(RawZipFile.CENTRAL_HEADER_SIGNATURE);
+        header.putShort((short) entry.versionMadeBy);
+        header.putShort((short) entry.versionNeeded);
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt(entry.dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) entry.extra.length);
+        header.putShort((short) entry.comment.length);
+        header.putShort((short) 0);
+        header.putShort((short) entry.internalAttributes);
+        header.putInt((int) entry.externalAttributes);
+        header.putInt((int) entry.localHeaderOffset);
+        header.put(entry.name).put(entry.extra).put(entry.comment);
+        header.flip();
+        _write(header);
+      }
+      long directorySize = channel.position() - directoryOffset;
+      if (writtenEntries.size() >= 0xFFFF || channel.position() >= 0xFFFFFFFFL)
+        throw new ZipException("zip64 archives are not supported");
+
+      ByteBuffer end = _allocate(RawZipFile.END_SIZE);
+      end.putInt(RawZipFile.END_SIGNATURE);
+      end.putShort((short) 0);
+      end.putShort((short) 0);
+      end.putShort((short) writtenEntries.size());
+      end.putShort((short) writtenEntries.size());
+      end.putInt((int) directorySize);
+      end.putInt((int) directoryOffset);
+      end.putShort((short) 0);
+      end.flip();
+      _write(end);
+    }
+    finally
+    {
+      channel.close();
+    }
+  }
+
+  private void _writeLocalHeader(RawZipFile.Entry pEntry) throws IOException
+  {
+    pEntry.localHeaderOffset = channel.position();
+    if (pEntry.localHeaderOffset >= 0xFFFFFFFFL)
+      throw new ZipException("zip64 archives are not supported");
+    ByteBuffer header = _allocate(RawZipFile.LOCAL_HEADER_SIZE + pEntry.name.length + pEntry.extra.length);
+    header.putInt(RawZipFile.LOCAL_HEADER_SIGNATURE);
+    header.putShort((short) pEntry.versionNeeded);
+    header.putShort((short) pEntry.flags);
+    header.putShort((short) pEntry.method);
+    header.putInt(pEntry.dosTime);
+    header.putInt((int) pEntry.crc);
+    header.putInt((int) pEntry.compressedSize);
+    header.putInt((int) pEntry.size);
+    header.putShort((short) pEntry.name.length);
+    header.putShort((short) pEntry.extra.length);
+    header.put(pEntry.name).put(pEntry.extra);
+    header.flip();
+    _write(header);
+    writtenEntries.add(pEntry);
+  }
+
+  private void _write(ByteBuffer pBuffer) throws IOException
+  {
+    while (pBuffer.hasRemaining())
+      channel.write(pBuffer);
+  }
+
+  private static ByteBuffer _allocate(int pSize)
+  {
+    return ByteBuffer.allocate(pSize).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static int _toDosTime(long pTime)
+  {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(pTime);
+    int year = calendar.get(Calendar.YEAR);
+    if (year < 1980)
+      return (1 << 21) | (1 << 16);
+    return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 | calendar.get(Calendar.DAY_OF_MONTH) << 16 |
+        calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+  }
+
+}
@@ -0,0 +1,210 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.codehaus.plexus.digest.Hex;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Second level cache of signed jars that is shared between machines. Entries have the keys of the {@link SignStore},
+ * so a jar that was signed on one machine is found by all others that sign it with the same key and options.
+ * <p>
+ * An entry consists of the signed jar <tt>&lt;key&gt;.jar</tt> and its description <tt>&lt;key&gt;.entry</tt>, which
+ * holds the checksums of the entry and the size and SHA-256 digest of the jar. The description is written last, so
+ * incomplete uploads are never found. Files are never replaced, so an entry can't be swapped once it was written.
+ * Downloaded jars are checked against size and digest.
+ *
+ * @author j.boesl, 17.10.26
+ */
+abstract class RemoteCache
+{
+
+  static final String JAR_POSTFIX = ".jar";
+  static final String ENTRY_POSTFIX = ".entry";
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+  /**
+   * A remote cache that failed this often in a row isn't used anymore, so an unreachable cache doesn't slow down every
+   * jar.
+   */
+  private static final int MAX_FAILURES = 5;
+  private static final int WRITE_ATTEMPTS = 2;
+
+  private final AtomicInteger failureCount = new AtomicInteger();
+
+
+  /**
+   * @param pLocation a directory or an http(s) url.
+   * @return the remote cache at the location.
+   */
+  static RemoteCache create(String pLocation)
+  {
+    String location = pLocation.toLowerCase(Locale.ENGLISH);
+    if (location.startsWith("http://") || location.startsWith("https://"))
+      return new HttpRemoteCache(pLocation);
+    return new DirectoryRemoteCache(Paths.get(pLocation));
+  }
+
+  /**
+   * @return whether the cache didn't fail too often.
+   */
+  boolean isAvailable()
+  {
+    return failureCount.get() < MAX_FAILURES;
+  }
+
+  /**
+   * Downloads an entry.
+   *
+   * @param pKey        the store key.
+   * @param pTargetPath the file the signed jar is written to.
+   * @return the entry or <tt>null</tt> if the cache doesn't contain the key.
+   */
+  CacheIndex.Entry get(String pKey, Path pTargetPath) throws IOException
+  {
+    try
+    {
+      CacheIndex.Entry entry = _get(pKey, pTargetPath);
+      failureCount.set(0);
+      return entry;
+    }
+    catch (IOException e)
+    {
+      failureCount.incrementAndGet();
+      throw e;
+    }
+  }
+
+  /**
+   * Uploads an entry. An entry that exists already, even in part, is left to the upload that created it.
+   *
+   * @param pKey        the store key.
+   * @param pEntry      the checksums of input and result.
+   * @param pSignedPath the signed jar.
+   */
+  void put(String pKey, CacheIndex.Entry pEntry, Path pSignedPath) throws IOException
+  {
+    try
+    {
+      MessageDigest messageDigest = _createMessageDigest();
+      FileUtility.digest(pSignedPath, messageDigest);
+      long size = Files.size(pSignedPath);
+      if (_write(pKey + JAR_POSTFIX, pSignedPath, null))
+      {
+        byte[] description = (pEntry.getChecksum() + "\t" + pEntry.getSignedChecksum() + "\t" + pEntry.getKeyDigest() +
+            "\t" + size + "\t" + Hex.encode(messageDigest.digest()) + "\n").getBytes(StandardCharsets.UTF_8);
+        _write(pKey + ENTRY_POSTFIX, null, description);
+      }
+      failureCount.set(0);
+    }
+    catch (IOException e)
+    {
+      failureCount.incrementAndGet();
+      throw e;
+    }
+  }
+
+  /**
+   * @param pName the name of a file of the cache.
+   * @return the content of the file or <tt>null</tt> if it doesn't exist.
+   */
+  abstract InputStream open(String pName) throws IOException;
+
+  /**
+   * Writes a file of the cache. Readers must never see a partially written file and existing files must not be
+   * replaced.
+   *
+   * @param pName    the name of the file.
+   * @param pLength  the length of the content.
+   * @param pContent the content.
+   * @throws FileAlreadyExistsException if the file exists.
+   */
+  abstract void write(String pName, long pLength, InputStream pContent) throws IOException;
+
+  /**
+   * Writes a file from a path or from bytes. A failed write is repeated once, e.g. because the server closed the
+   * kept-alive connection the upload was started on.
+   *
+   * @return whether the file was written, <tt>false</tt> if it exists already.
+   */
+  private boolean _write(String pName, Path pPath, byte[] pContent) throws IOException
+  {
+    long length = pPath == null ? pContent.length : Files.size(pPath);
+    for (int attempt = 1; ; attempt++)
+    {
+      try (InputStream inputStream = pPath == null ? new ByteArrayInputStream(pContent) : Files.newInputStream(pPath))
+      {
+        write(pName, length, inputStream);
+        return true;
+      }
+      catch (FileAlreadyExistsException e)
+      {
+        return false;
+      }
+      catch (IOException e)
+      {
+        if (attempt >= WRITE_ATTEMPTS)
+          throw e;
+      }
+    }
+  }
+
+  private CacheIndex.Entry _get(String pKey, Path pTargetPath) throws IOException
+  {
+    String[] description;
+    try (InputStream inputStream = open(pKey + ENTRY_POSTFIX))
+    {
+      if (inputStream == null)
+        return null;
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      _copy(inputStream, outputStream, null);
+      description = new String(outputStream.toByteArray(), StandardCharsets.UTF_8).trim().split("\t");
+    }
+    if (description.length != 5 || !description[3].matches("[0-9]+"))
+      throw new IOException("The description of " + pKey + " in " + this + " is invalid.");
+
+    MessageDigest messageDigest = _createMessageDigest();
+    try (InputStream inputStream = open(pKey + JAR_POSTFIX))
+    {
+      // the jar may have been removed from the cache meanwhile
+      if (inputStream == null)
+        return null;
+      try (OutputStream outputStream = Files.newOutputStream(pTargetPath))
+      {
+        _copy(inputStream, outputStream, messageDigest);
+      }
+    }
+    if (Files.size(pTargetPath) != Long.parseLong(description[3]) ||
+        !Hex.encode(messageDigest.digest()).equals(description[4]))
+      throw new IOException("The jar of " + pKey + " in " + this + " doesn't match its description.");
+    return new CacheIndex.Entry(description[0], description[1], description[2]);
+  }
+
+  private static void _copy(InputStream pInputStream, OutputStream pOutputStream, MessageDigest pMessageDigest)
+      throws IOException
+  {
+    byte[] buffer = new byte[64 * 1024];
+    for (int read = pInputStream.read(buffer); read != -1; read = pInputStream.read(buffer))
+    {
+      if (pMessageDigest != null)
+        pMessageDigest.update(buffer, 0, read);
+      pOutputStream.write(buffer, 0, read);
+    }
+  }
+
+  private static MessageDigest _createMessageDigest() throws IOException
+  {
+    try
+    {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new IOException("Failed to create " + DIGEST_ALGORITHM + " digest.", e);
+    }
+  }
+
+}
@@ -0,0 +1,177 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import com.sun.net.httpserver.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+/**
+ * Small http server for a remote cache in a directory. It speaks the protocol of the {@link HttpRemoteCache} and is
+ * meant for local setups and integration tests, it neither authenticates nor limits the size of the cache.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class RemoteCacheServer implements Closeable
+{
+
+  private static final Pattern NAME_PATTERN = Pattern.compile("[0-9a-f]+(" + Pattern.quote(RemoteCache.JAR_POSTFIX) +
+                                                                  "|" + Pattern.quote(RemoteCache.ENTRY_POSTFIX) + ")");
+
+  private final DirectoryRemoteCache cache;
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final CountDownLatch closed = new CountDownLatch(1);
+
+
+  /**
+   * Starts the server.
+   *
+   * @param pDirectory the directory of the cache.
+   * @param pHost      the address the server is bound to.
+   * @param pPort      the port or <tt>0</tt> for any free port.
+   */
+  RemoteCacheServer(Path pDirectory, String pHost, int pPort) throws IOException
+  {
+    Files.createDirectories(pDirectory);
+    cache = new DirectoryRemoteCache(pDirectory);
+    server = HttpServer.create(new InetSocketAddress(pHost, pPort), 0);
+    server.createContext("/", new FileHandler());
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  /**
+   * @return the url for {@link RemoteCache#create(String)}.
+   */
+  String getUrl()
+  {
+    InetSocketAddress address = server.getAddress();
+    return "http://" + address.getHostString() + ":" + address.getPort() + "/";
+  }
+
+  /**
+   * Blocks until the server is closed.
+   */
+  void await() throws InterruptedException
+  {
+    closed.await();
+  }
+
+  @Override
+  public void close()
+  {
+    server.stop(0);
+    executor.shutdownNow();
+    closed.countDown();
+  }
+
+
+  /**
+   * Sends a response without content. It has a short body anyway, because the http server closes the connection after
+   * an empty response to <tt>GET</tt> and clients can't repeat an upload on a closed kept-alive connection.
+   */
+  private static void _sendStatus(HttpExchange pExchange, int pResponseCode) throws IOException
+  {
+    if (pExchange.getRequestMethod().equals("HEAD"))
+    {
+      pExchange.sendResponseHeaders(pResponseCode, -1);
+      return;
+    }
+    byte[] body = (pResponseCode + "\n").getBytes(StandardCharsets.US_ASCII);
+    pExchange.getResponseHeaders().set("Content-Type", "text/plain");
+    pExchange.sendResponseHeaders(pResponseCode, body.length);
+    try (OutputStream outputStream = pExchange.getResponseBody())
+    {
+      outputStream.write(body);
+    }
+  }
+
+
+  /**
+   * Answers requests for a single file of the cache.
+   */
+  private class FileHandler implements HttpHandler
+  {
+    @Override
+    public void handle(HttpExchange pExchange) throws IOException
+    {
+      try
+      {
+        String name = pExchange.getRequestURI().getPath().substring(1);
+        String method = pExchange.getRequestMethod();
+        if (!NAME_PATTERN.matcher(name).matches())
+          _sendStatus(pExchange, HttpURLConnection.HTTP_NOT_FOUND);
+        else if (method.equals("GET") || method.equals("HEAD"))
+          _get(pExchange, name, method.equals("HEAD"));
+        else if (method.equals("PUT"))
+        {
+          String contentLength = pExchange.getRequestHeaders().getFirst("Content-Length");
+          try (InputStream inputStream = pExchange.getRequestBody())
+          {
+            cache.write(name, contentLength == null ? -1 : Long.parseLong(contentLength), inputStream);
+            _sendStatus(pExchange, HttpURLConnection.HTTP_CREATED);
+          }
+          catch (FileAlreadyExistsException e)
+          {
+            // written files are final, so a cached jar can't be replaced by another client
+            _sendStatus(pExchange, HttpURLConnection.HTTP_CONFLICT);
+          }
+        }
+        else
+        {
+          pExchange.getResponseHeaders().set("Allow", "GET, HEAD, PUT");
+          _sendStatus(pExchange, HttpURLConnection.HTTP_BAD_METHOD);
+        }
+      }
+      catch (IOException | RuntimeException e)
+      {
+        // a response that was started already is cut off by closing the exchange
+        if (pExchange.getResponseCode() == -1)
+          _sendStatus(pExchange, HttpURLConnection.HTTP_INTERNAL_ERROR);
+      }
+      finally
+      {
+        pExchange.close();
+      }
+    }
+
+    private void _get(HttpExchange pExchange, String pName, boolean pHead) throws IOException
+    {
+      FileChannel channel;
+      try
+      {
+        channel = FileChannel.open(cache.getPath(pName), StandardOpenOption.READ);
+      }
+      catch (NoSuchFileException e)
+      {
+        _sendStatus(pExchange, HttpURLConnection.HTTP_NOT_FOUND);
+        return;
+      }
+      // files are replaced atomically, so the open channel keeps the content its size belongs to
+      try (FileChannel in = channel)
+      {
+        long size = in.size();
+        if (pHead)
+        {
+          pExchange.getResponseHeaders().set("Content-Length", String.valueOf(size));
+          pExchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, -1);
+          return;
+        }
+        pExchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, size == 0 ? -1 : size);
+        try (OutputStream outputStream = pExchange.getResponseBody())
+        {
+          WritableByteChannel out = Channels.newChannel(outputStream);
+          for (long position = 0; position < size; )
+            position += in.transferTo(position, size - position, out);
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,64 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.plugin.*;
+import org.apache.maven.plugins.annotations.*;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import java.nio.file.Paths;
+
+/**
+ * Mojo that serves a directory as remote cache over http until it is stopped. Builds use it by setting
+ * <tt>remoteCache</tt> to the logged url. It is meant for local setups and integration tests.
+ *
+ * @author j.boesl, 17.10.26
+ */
+@Mojo(name = "cache-server", requiresProject = false)
+public class RemoteCacheServerMojo extends AbstractMojo
+{
+
+  /**
+   * The directory of the remote cache.
+   */
+  @Parameter(required = true, property = "repository.jarsign.cacheServerDirectory")
+  private String cacheServerDirectory;
+
+  /**
+   * The address the server is bound to. Other machines can only reach it on a public address.
+   */
+  @Parameter(defaultValue = "127.0.0.1", property = "repository.jarsign.cacheServerHost")
+  private String cacheServerHost;
+
+  /**
+   * The port the server listens on. <tt>0</tt> chooses a free port.
+   */
+  @Parameter(defaultValue = "0", property = "repository.jarsign.cacheServerPort")
+  private int cacheServerPort;
+
+
+  public void execute() throws MojoExecutionException
+  {
+    try
+    {
+      final RemoteCacheServer server = new RemoteCacheServer(
+          Paths.get(cacheServerDirectory.replaceFirst("^~/", System.getProperty("user.home") + "/")),
+          cacheServerHost, cacheServerPort);
+      Runtime.getRuntime().addShutdownHook(new Thread()
+      {
+        @Override
+        public void run()
+        {
+          server.close();
+        }
+      });
+      getLog().info("Remote cache server is listening on " + server.getUrl() + ".");
+      server.await();
+    }
+    catch (Exception e)
+    {
+      if (e instanceof MojoExecutionException)
+        throw (MojoExecutionException) e;
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+}
@@ -1,7 +1,6 @@
 package de.adito.maven.repositoryjarsignplugin;
 
-import org.apache.maven.plugin.MojoExecutionException;
-
+import java.io.IOException;
 import java.nio.file.*;
 
 /**
@@ -13,36 +12,78 @@ public class SignCandidate
 {
 
   private Path archivePath;
+  private Path sourcePath;
+  private String checksum;
+  private String storeKey;
+  private Path entryPath;
   private Path copyPath;
-  private Path checkSumPath;
-  private Path signedCheckSumPath;
+  private String referenceName;
   private TYPE type;
 
-  public SignCandidate(Path pArchivePath, Path pCachePath, SignChecksumHelper pSignChecksumHelper, boolean pForceSign,
-                       boolean pRepack, boolean pPack200)
-      throws MojoExecutionException
+  /**
+   * Determines the type of the candidate. The caller has to hold the lock of the store entry for the archive's checksum.
+   *
+   * @param pArchivePath the archive.
+   * @param pSourcePath  the file the archive is taken from. It equals the archive unless the signed archive is written
+   *                     to another directory.
+   * @param pChecksum    the checksum of the source.
+   * @param pCachePath   the path of the id's cache. Signed jars of former versions found there are moved to the store.
+   * @param pCacheIndex  the index of the id's cache.
+   * @param pSignStore   the store of signed jars.
+   * @param pKeyDigest   the digest of the signing key.
+   * @param pForceSign   whether the archive is signed in any case.
+   */
+  public SignCandidate(Path pArchivePath, Path pSourcePath, String pChecksum, Path pCachePath, CacheIndex pCacheIndex,
+                       SignStore pSignStore, String pKeyDigest, boolean pForceSign)
+      throws IOException, InterruptedException
   {
     archivePath = pArchivePath;
-    copyPath = pCachePath.resolve(archivePath.getFileName());
-    if (pPack200)
-      copyPath = PackUtility.getPackPath(copyPath);
+    sourcePath = pSourcePath;
+    checksum = pChecksum;
+    storeKey = pSignStore.getKey(pChecksum, pKeyDigest);
+    referenceName = pArchivePath.toAbsolutePath().normalize().toString();
 
-    checkSumPath = pCachePath.resolve(copyPath.getFileName());
-    signedCheckSumPath = pCachePath.resolve(copyPath.getFileName() + ".signed");
-
-    if (pForceSign || !Files.exists(copyPath))
-      type = TYPE.NEW;
-    else
+    type = TYPE.NEW;
+    if (!pForceSign)
     {
-      boolean signedExists = pSignChecksumHelper.existingChecksumMatches(checkSumPath, archivePath, pRepack);
-      if (signedExists)
-        type = TYPE.CACHED;
-      else
+      CacheIndex.Entry storeEntry = pSignStore.get(storeKey);
+      if (storeEntry == null || !pKeyDigest.equals(storeEntry.getKeyDigest()))
+        storeEntry = _adoptFormerCopy(pCachePath, pCacheIndex, pSignStore, pKeyDigest);
+      if (storeEntry != null && pChecksum.equals(storeEntry.getSignedChecksum()))
       {
-        boolean alreadySigned = pSignChecksumHelper.existingChecksumMatches(signedCheckSumPath, archivePath, pRepack);
-        type = alreadySigned ? TYPE.SIGNED : TYPE.NEW;
+        // the archive is a signed result itself, it references the jar it was signed from.
+        storeKey = pSignStore.getKey(storeEntry.getChecksum(), pKeyDigest);
+        type = TYPE.SIGNED;
       }
+      else if (storeEntry != null && Files.exists(pSignStore.getObjectPath(storeKey)))
+        type = TYPE.CACHED;
     }
+    entryPath = pSignStore.getEntryPath(storeKey);
+    copyPath = pSignStore.getObjectPath(storeKey);
+  }
+
+  /**
+   * Former versions stored the signed jars by file name in the cache of each id. If such a copy belongs to the archive
+   * it is moved to the store instead of signing the archive again. Packed copies can't be adopted, because the store
+   * keeps the signed jars.
+   */
+  private CacheIndex.Entry _adoptFormerCopy(Path pCachePath, CacheIndex pCacheIndex, SignStore pSignStore,
+                                            String pKeyDigest) throws IOException, InterruptedException
+  {
+    Path formerEntryPath = pCachePath.resolve(archivePath.getFileName());
+    CacheIndex.Entry formerEntry = pCacheIndex.get(formerEntryPath.getFileName().toString());
+    if (formerEntry == null || !pKeyDigest.equals(formerEntry.getKeyDigest()) ||
+        !(checksum.equals(formerEntry.getChecksum()) || checksum.equals(formerEntry.getSignedChecksum())))
+      return null;
+    try (CacheLock ignored = CacheLock.lock(formerEntryPath))
+    {
+      if (!Files.exists(formerEntryPath))
+        return null;
+      String key = pSignStore.getKey(formerEntry.getChecksum(), pKeyDigest);
+      Files.move(formerEntryPath, pSignStore.getObjectPath(key), StandardCopyOption.REPLACE_EXISTING);
+      pSignStore.put(key, formerEntry);
+    }
+    return formerEntry;
   }
 
   public Path getArchivePath()
@@ -50,19 +91,57 @@ public class SignCandidate
     return archivePath;
   }
 
-  public Path getCopyPath()
+  /**
+   * @return the file the archive is taken from.
+   */
+  public Path getSourcePath()
   {
-    return copyPath;
+    return sourcePath;
   }
 
-  public Path getCheckSumPath()
+  /**
+   * @return whether the archive has to be created from its source first.
+   */
+  public boolean isCopied()
   {
-    return checkSumPath;
+    return !sourcePath.equals(archivePath);
   }
 
-  public Path getSignedCheckSumPath()
+  /**
+   * @return the checksum of the archive before it was signed.
+   */
+  public String getChecksum()
+  {
+    return checksum;
+  }
+
+  /**
+   * @return the key of the store entry the archive is signed with.
+   */
+  public String getStoreKey()
+  {
+    return storeKey;
+  }
+
+  /**
+   * @return the path that identifies the store entry for locking.
+   */
+  public Path getEntryPath()
+  {
+    return entryPath;
+  }
+
+  public Path getCopyPath()
+  {
+    return copyPath;
+  }
+
+  /**
+   * @return the name of the reference to the store entry in the id's cache index.
+   */
+  public String getReferenceName()
   {
-    return signedCheckSumPath;
+    return referenceName;
   }
 
   public TYPE getType()
@@ -3,10 +3,14 @@ package de.adito.maven.repositoryjarsignplugin;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.codehaus.plexus.digest.*;
-import org.codehaus.plexus.util.FileUtils;
 
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.*;
+import java.util.Locale;
+import java.util.concurrent.*;
 
 /**
  * Helper for checksum.
@@ -17,68 +21,251 @@ class SignChecksumHelper
 {
 
   private Log log;
-  private Digester digester;
+  private ALGORITHM algorithm;
+  private CacheIndex fingerprintIndex;
+  private SignMetrics metrics;
+  private ConcurrentMap<Path, FileFingerprint> digests = new ConcurrentHashMap<>();
 
 
-  public SignChecksumHelper(Log pLog, Digester pDigester)
+  /**
+   * @param pLog              the log.
+   * @param pAlgorithm        the algorithm of the checksums.
+   * @param pFingerprintIndex the index that fingerprints are kept in across runs. If it is <tt>null</tt> files are
+   *                          hashed at least once per run.
+   * @param pMetrics          the metrics that hashing and copying are recorded in.
+   */
+  public SignChecksumHelper(Log pLog, ALGORITHM pAlgorithm, CacheIndex pFingerprintIndex, SignMetrics pMetrics)
   {
     log = pLog;
-    digester = pDigester;
+    algorithm = pAlgorithm;
+    fingerprintIndex = pFingerprintIndex;
+    metrics = pMetrics;
   }
 
-  boolean existingChecksumMatches(Path pChecksumPath, Path pArchivePath, boolean pRepack) throws MojoExecutionException
+  /**
+   * @param pArchivePath the archive.
+   * @param pRepack      whether the archive is repacked.
+   * @return the checksum of the archive.
+   */
+  String getChecksum(Path pArchivePath, boolean pRepack) throws MojoExecutionException
   {
-    String existingChecksum = readChecksum(pChecksumPath);
-    return existingChecksum != null && _calculateChecksum(pArchivePath, pRepack).equals(existingChecksum);
+    return (pRepack ? "REPACK" : "NO_REPACK") + ":" + _getDigest(pArchivePath);
   }
 
-  String readChecksum(Path pChecksumPath)
+  /**
+   * Takes the checksum of an artifact from the checksum file of the repository it was resolved from, so the artifact
+   * doesn't have to be read. The checksum file is only used if it isn't older than the artifact and if repositories
+   * provide checksum files for the algorithm.
+   *
+   * @param pArtifactPath the artifact in the local repository.
+   * @param pRepack       whether the archive is repacked.
+   * @return the checksum of the artifact.
+   */
+  String getArtifactChecksum(Path pArtifactPath, boolean pRepack) throws MojoExecutionException
   {
+    if (algorithm.checksumPostfix == null)
+      return getChecksum(pArtifactPath, pRepack);
+    Path key = pArtifactPath.toAbsolutePath().normalize();
+    Path checksumPath = key.resolveSibling(key.getFileName() + algorithm.checksumPostfix);
     try
     {
-      Path path = pChecksumPath.resolveSibling(pChecksumPath.getFileName() + _getPostfix());
-      return FileUtils.fileRead(path.toFile());
+      BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+      if (Files.isRegularFile(checksumPath) &&
+          Files.getLastModifiedTime(checksumPath).compareTo(attributes.lastModifiedTime()) >= 0)
+      {
+        // checksum files may contain the file name after the checksum
+        String digest = new String(Files.readAllBytes(checksumPath), StandardCharsets.US_ASCII).trim().split("\\s+")[0]
+            .toLowerCase(Locale.ENGLISH);
+        if (digest.length() == 2 * _createMessageDigest(key).getDigestLength() && digest.matches("[0-9a-f]+"))
+        {
+          digest = algorithm.toDigest(digest);
+          digests.put(key, new FileFingerprint(attributes, System.currentTimeMillis(), digest));
+          metrics.count(SignMetrics.COUNTER.CHECKSUM_REPOSITORY);
+          return (pRepack ? "REPACK" : "NO_REPACK") + ":" + digest;
+        }
+      }
     }
     catch (IOException e)
     {
-      return null;
+      log.debug("Failed to read checksum file " + checksumPath + ".", e);
     }
+    return getChecksum(pArtifactPath, pRepack);
   }
 
-  void installSignChecksum(Path pChecksumPath, Path pArchivePath, boolean pRepack) throws MojoExecutionException
+  /**
+   * @param pDigester the digester of former versions.
+   * @return the postfix of the checksum files written by former versions.
+   */
+  static String getChecksumPostfix(Digester pDigester)
   {
-    String checksum = _calculateChecksum(pArchivePath, pRepack);
+    return "." + pDigester.getAlgorithm().toLowerCase();
+  }
+
+  /**
+   * Copies a file and calculates its digest on the way, so that neither source nor target have to be read again for
+   * checksums during this run.
+   *
+   * @param pSource the source file.
+   * @param pTarget the target file. It is replaced atomically.
+   */
+  void copy(Path pSource, Path pTarget) throws IOException, MojoExecutionException
+  {
+    long calculatedAt = System.currentTimeMillis();
+    long start = metrics.start();
+    MessageDigest messageDigest = _createMessageDigest(pSource);
+    FileUtility.copy(pSource, pTarget, messageDigest);
+    String digest = algorithm.toDigest(Hex.encode(messageDigest.digest()));
+    metrics.record(SignMetrics.PHASE.COPY, start, Files.size(pTarget));
+    _putDigest(pSource, calculatedAt, digest);
+    _putDigest(pTarget, calculatedAt, digest);
+  }
+
+  /**
+   * Places a file at the target like {@link #copy(Path, Path)}, but without copying its bytes where the materialization
+   * is supported. Otherwise the file is copied.
+   *
+   * @param pSource          the source file.
+   * @param pTarget          the target file. It is replaced atomically.
+   * @param pMaterialization how the target is created.
+   */
+  void materialize(Path pSource, Path pTarget, FileUtility.MATERIALIZATION pMaterialization)
+      throws IOException, MojoExecutionException, InterruptedException
+  {
+    if (pMaterialization != FileUtility.MATERIALIZATION.COPY)
+    {
+      String digest = _getDigest(pSource);
+      long start = metrics.start();
+      if (FileUtility.link(pSource, pTarget, pMaterialization))
+      {
+        metrics.record(SignMetrics.PHASE.LINK, start, 0);
+        _putDigest(pTarget, System.currentTimeMillis(), digest);
+        return;
+      }
+      log.debug(pMaterialization + " is not supported for " + pTarget + ", it is copied.");
+    }
+    copy(pSource, pTarget);
+  }
 
-    Path path = pChecksumPath.resolveSibling(pChecksumPath.getFileName() + _getPostfix());
-    log.debug("Installing checksum to " + path);
+  /**
+   * Each file is hashed at most once per run as long as its size, modification time and file key don't change. With a
+   * fingerprint index this holds across runs, too. Fingerprints of another algorithm are ignored.
+   */
+  private String _getDigest(Path pArchivePath) throws MojoExecutionException
+  {
+    Path key = pArchivePath.toAbsolutePath().normalize();
     try
     {
-      Files.createDirectories(path.getParent());
-      FileUtils.fileWrite(path.toFile(), "UTF-8", checksum);
+      BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+      FileFingerprint fingerprint = digests.get(key);
+      if (fingerprint != null && fingerprint.matches(attributes))
+      {
+        metrics.count(SignMetrics.COUNTER.CHECKSUM_REUSED);
+        return fingerprint.getDigest();
+      }
+      if (fingerprintIndex != null)
+      {
+        fingerprint = fingerprintIndex.getFingerprint(key.toString());
+        if (fingerprint != null && fingerprint.matches(attributes) && fingerprint.isTrusted() &&
+            algorithm.isDigest(fingerprint.getDigest()))
+        {
+          digests.put(key, fingerprint);
+          metrics.count(SignMetrics.COUNTER.CHECKSUM_REUSED);
+          return fingerprint.getDigest();
+        }
+      }
+
+      log.debug("Calculating " + algorithm.digestAlgorithm + " checksum for " + pArchivePath);
+      long calculatedAt = System.currentTimeMillis();
+      long start = metrics.start();
+      // MessageDigests are not thread safe, so every calculation gets its own.
+      MessageDigest messageDigest = _createMessageDigest(pArchivePath);
+      FileUtility.digest(key, messageDigest);
+      String digest = algorithm.toDigest(Hex.encode(messageDigest.digest()));
+      metrics.record(SignMetrics.PHASE.CHECKSUM, start, attributes.size());
+      _putFingerprint(key, new FileFingerprint(attributes, calculatedAt, digest));
+      return digest;
     }
     catch (IOException e)
     {
-      throw new MojoExecutionException("Failed to install checksum to " + path, e);
+      throw new MojoExecutionException("Failed to calculate " + algorithm.digestAlgorithm + " checksum for " + pArchivePath, e);
     }
   }
 
-  private String _calculateChecksum(Path pArchivePath, boolean pRepack) throws MojoExecutionException
+  private void _putDigest(Path pPath, long pCalculatedAt, String pDigest) throws IOException
+  {
+    Path key = pPath.toAbsolutePath().normalize();
+    _putFingerprint(key, new FileFingerprint(Files.readAttributes(key, BasicFileAttributes.class), pCalculatedAt,
+                                             pDigest));
+  }
+
+  private void _putFingerprint(Path pKey, FileFingerprint pFingerprint)
+  {
+    digests.put(pKey, pFingerprint);
+    if (fingerprintIndex != null)
+      fingerprintIndex.putFingerprint(pKey.toString(), pFingerprint);
+  }
+
+  private MessageDigest _createMessageDigest(Path pPath) throws MojoExecutionException
   {
-    log.debug("Calculating " + digester.getAlgorithm() + " checksum for " + pArchivePath);
     try
     {
-      String checksum = digester.calc(pArchivePath.toFile());
-      return (pRepack ? "REPACK" : "NO_REPACK") + ":" + checksum;
+      return algorithm.createMessageDigest();
     }
-    catch (DigesterException e)
+    catch (NoSuchAlgorithmException e)
     {
-      throw new MojoExecutionException("Failed to calculate " + digester.getAlgorithm() + " checksum for " + pArchivePath, e);
+      throw new MojoExecutionException("Failed to calculate " + algorithm.digestAlgorithm + " checksum for " + pPath, e);
     }
   }
 
-  private String _getPostfix()
+
+  /**
+   * The algorithms of the checksums that identify jars in the cache. They don't have to be the ones of the digester,
+   * which derives the keys of the store and the digests of signing keys.
+   */
+  enum ALGORITHM
   {
-    return "." + digester.getAlgorithm().toLowerCase();
+    /**
+     * SHA-1, the algorithm of former versions. Its digests are not tagged, so the caches of former versions stay valid.
+     */
+    SHA1("SHA-1", ".sha1"),
+    SHA256("SHA-256", ".sha256"),
+    /**
+     * XXH64, a fast non-cryptographic hash. Only for builds whose jars don't come from untrusted sources, because
+     * colliding jars can be crafted.
+     */
+    XXH64(Xxh64MessageDigest.ALGORITHM, null);
+
+    private final String digestAlgorithm;
+    private final String checksumPostfix;
+
+    ALGORITHM(String pDigestAlgorithm, String pChecksumPostfix)
+    {
+      digestAlgorithm = pDigestAlgorithm;
+      checksumPostfix = pChecksumPostfix;
+    }
+
+    MessageDigest createMessageDigest() throws NoSuchAlgorithmException
+    {
+      return this == XXH64 ? new Xxh64MessageDigest() : MessageDigest.getInstance(digestAlgorithm);
+    }
+
+    /**
+     * @param pHexDigest a hex encoded digest of this algorithm.
+     * @return the digest tagged with the algorithm, so digests of different algorithms never equal.
+     */
+    String toDigest(String pHexDigest)
+    {
+      return this == SHA1 ? pHexDigest : name() + ":" + pHexDigest;
+    }
+
+    /**
+     * @param pDigest a digest created by {@link #toDigest(String)} of any algorithm.
+     * @return whether the digest was created by this algorithm.
+     */
+    boolean isDigest(String pDigest)
+    {
+      return this == SHA1 ? pDigest.indexOf(':') < 0 : pDigest.startsWith(name() + ":");
+    }
   }
 
 }
@@ -0,0 +1,299 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.digest.Hex;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
+import java.security.cert.CertificateEncodingException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Long running local process that holds an unlocked key, a warmed up {@link InternalSignEngine} and the connections to
+ * the TSA. Builds sign through a {@link DaemonSignEngine} instead of loading the keystore themselves.
+ * <p>
+ * The daemon listens on the loopback interface only. Its port and a random secret are written to a file in the
+ * jarsign-cache that only the owner can read. Every request has to present the secret. Requests are served by a bounded
+ * number of threads and have to be sent within {@link #READ_TIMEOUT}, so idle or slow connections can't exhaust the
+ * daemon.
+ * <p>
+ * Builds only sign through a daemon whose configuration, see {@link #getConfiguration(String, String, String, List)},
+ * matches their own, so a daemon never signs with a stale key, other passwords or other TSAs.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class SignDaemon
+{
+
+  static final String DIRECTORY_NAME = "_daemon";
+  private static final String FILE_POSTFIX = ".properties";
+  private static final int READ_TIMEOUT = 30 * 1000;
+  private static final int MAX_THREADS = 2 * Runtime.getRuntime().availableProcessors();
+  private static final int MAX_QUEUED = 50;
+
+  static final String CONFIGURATION = "CONFIGURATION";
+  static final String KEY = "KEY";
+  static final String SIGN = "SIGN";
+  static final String VERIFY = "VERIFY";
+  static final String STOP = "STOP";
+
+  private Log log;
+  private SigningKey signingKey;
+  private SignEngine signEngine;
+  private String configuration;
+  private long idleTimeout;
+  private String secret;
+  private volatile long lastRequest = System.currentTimeMillis();
+
+
+  /**
+   * @param pLog           the log.
+   * @param pSigningKey    the key to sign with.
+   * @param pSignEngine    the engine that signs and verifies.
+   * @param pConfiguration the configuration the key was loaded and the engine was created with.
+   * @param pIdleTimeout   the time in milliseconds after which the daemon stops without requests. Values below one
+   *                       keep it running.
+   */
+  SignDaemon(Log pLog, SigningKey pSigningKey, SignEngine pSignEngine, String pConfiguration, long pIdleTimeout)
+  {
+    log = pLog;
+    signingKey = pSigningKey;
+    signEngine = pSignEngine;
+    configuration = pConfiguration;
+    idleTimeout = pIdleTimeout;
+    byte[] secretBytes = new byte[32];
+    new SecureRandom().nextBytes(secretBytes);
+    secret = Hex.encode(secretBytes);
+  }
+
+  /**
+   * @param pCacheRootPath the directory that contains the caches of all ids.
+   * @param pKeystore      the keystore of the daemon.
+   * @param pAlias         the alias of the key.
+   * @return the file that announces the daemon of a keystore alias.
+   */
+  static Path getDaemonFile(Path pCacheRootPath, String pKeystore, String pAlias) throws IOException
+  {
+    try
+    {
+      String keystore = Paths.get(pKeystore).toAbsolutePath().normalize().toString();
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest((keystore + "\n" + pAlias).getBytes(StandardCharsets.UTF_8));
+      return pCacheRootPath.resolve(DIRECTORY_NAME).resolve(Hex.encode(digest) + FILE_POSTFIX);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new IOException("Failed to create daemon file name.", e);
+    }
+  }
+
+  /**
+   * The configuration contains the modification time and size of the keystore, so a daemon that was started before the
+   * keystore was replaced doesn't match anymore. The passwords are only contained as digest.
+   *
+   * @param pKeystore  the keystore.
+   * @param pStorepass the password of the keystore.
+   * @param pKeypass   the password of the key.
+   * @param pTsas      the urls of the TSAs.
+   * @return a digest of everything besides keystore path and alias that signatures of a daemon depend on.
+   */
+  static String getConfiguration(String pKeystore, String pStorepass, String pKeypass, List<String> pTsas)
+      throws IOException
+  {
+    Path keystorePath = Paths.get(pKeystore);
+    String configuration = Files.getLastModifiedTime(keystorePath).toMillis() + "\n" + Files.size(keystorePath) + "\n" +
+        pStorepass + "\n" + (pKeypass == null ? pStorepass : pKeypass) + "\n" + pTsas;
+    try
+    {
+      return Hex.encode(MessageDigest.getInstance("SHA-256").digest(configuration.getBytes(StandardCharsets.UTF_8)));
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new IOException("Failed to create daemon configuration.", e);
+    }
+  }
+
+  /**
+   * Serves requests until a stop request is received or the idle timeout elapsed.
+   *
+   * @param pDaemonFile the file that announces the daemon.
+   * @param pPort       the port to listen on. <tt>0</tt> chooses a free port.
+   */
+  void run(Path pDaemonFile, int pPort) throws IOException
+  {
+    // when all threads are busy and the queue is full, the accepting thread serves the request itself and doesn't
+    // accept further connections meanwhile
+    ThreadPoolExecutor executorService = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+                                                                new ArrayBlockingQueue<Runnable>(MAX_QUEUED),
+                                                                new ThreadPoolExecutor.CallerRunsPolicy());
+    executorService.allowCoreThreadTimeOut(true);
+    try (ServerSocket serverSocket = new ServerSocket(pPort, MAX_QUEUED, InetAddress.getLoopbackAddress()))
+    {
+      _writeDaemonFile(pDaemonFile, serverSocket.getLocalPort());
+      log.info("Sign daemon for alias '" + signingKey.getAlias() + "' listens on port " + serverSocket.getLocalPort() + ".");
+      serverSocket.setSoTimeout(1000);
+      while (!serverSocket.isClosed())
+      {
+        final Socket socket;
+        try
+        {
+          socket = serverSocket.accept();
+        }
+        catch (SocketTimeoutException e)
+        {
+          if (idleTimeout > 0 && System.currentTimeMillis() - lastRequest > idleTimeout)
+          {
+            log.info("Sign daemon stops because it was idle.");
+            break;
+          }
+          continue;
+        }
+        catch (SocketException e)
+        {
+          // closed by a stop request
+          if (serverSocket.isClosed())
+            break;
+          throw e;
+        }
+        lastRequest = System.currentTimeMillis();
+        final ServerSocket server = serverSocket;
+        executorService.submit(new Callable<Void>()
+        {
+          @Override
+          public Void call() throws IOException
+          {
+            try (Socket ignored = socket)
+            {
+              if (_serve(socket))
+                server.close();
+            }
+            return null;
+          }
+        });
+      }
+    }
+    finally
+    {
+      executorService.shutdown();
+      Files.deleteIfExists(pDaemonFile);
+    }
+  }
+
+  /**
+   * Handles one request.
+   *
+   * @return whether the daemon shall stop.
+   */
+  private boolean _serve(Socket pSocket) throws IOException
+  {
+    pSocket.setSoTimeout(READ_TIMEOUT);
+    DataInputStream inputStream = new DataInputStream(new BufferedInputStream(pSocket.getInputStream()));
+    DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(pSocket.getOutputStream()));
+    if (!MessageDigest.isEqual(secret.getBytes(StandardCharsets.US_ASCII),
+                               inputStream.readUTF().getBytes(StandardCharsets.US_ASCII)))
+    {
+      log.warn("Sign daemon rejected a request with a wrong secret.");
+      return false;
+    }
+
+    String command = inputStream.readUTF();
+    try
+    {
+      switch (command)
+      {
+        case CONFIGURATION:
+          outputStream.writeBoolean(true);
+          outputStream.writeBoolean(MessageDigest.isEqual(configuration.getBytes(StandardCharsets.US_ASCII),
+                                                          inputStream.readUTF().getBytes(StandardCharsets.US_ASCII)));
+          break;
+        case KEY:
+          String keyDigest = new String(signingKey.getDigest(inputStream.readUTF()), StandardCharsets.US_ASCII);
+          byte[] certificate = signingKey.getCertificate().getEncoded();
+          outputStream.writeBoolean(true);
+          outputStream.writeUTF(keyDigest);
+          outputStream.writeInt(certificate.length);
+          outputStream.write(certificate);
+          break;
+        case SIGN:
+          Path archivePath = Paths.get(inputStream.readUTF());
+          Map<String, String> manifestEntries = null;
+          int entryCount = inputStream.readInt();
+          if (entryCount >= 0)
+          {
+            manifestEntries = new LinkedHashMap<>();
+            for (int i = 0; i < entryCount; i++)
+              manifestEntries.put(inputStream.readUTF(), inputStream.readUTF());
+          }
+          String previousSignedPath = inputStream.readUTF();
+          signEngine.sign(archivePath, manifestEntries,
+                          previousSignedPath.isEmpty() ? null : Paths.get(previousSignedPath));
+          outputStream.writeBoolean(true);
+          break;
+        case VERIFY:
+          signEngine.verify(Paths.get(inputStream.readUTF()));
+          outputStream.writeBoolean(true);
+          break;
+        case STOP:
+          log.info("Sign daemon stops on request.");
+          outputStream.writeBoolean(true);
+          outputStream.flush();
+          return true;
+        default:
+          throw new MojoExecutionException("Unknown daemon command '" + command + "'.");
+      }
+    }
+    catch (MojoExecutionException | CertificateEncodingException | IOException | RuntimeException e)
+    {
+      log.debug(e);
+      outputStream.writeBoolean(false);
+      outputStream.writeUTF(String.valueOf(e.getMessage()));
+    }
+    outputStream.flush();
+    return false;
+  }
+
+  private void _writeDaemonFile(Path pDaemonFile, int pPort) throws IOException
+  {
+    Files.createDirectories(pDaemonFile.getParent());
+    Properties properties = new Properties();
+    properties.setProperty("port", String.valueOf(pPort));
+    properties.setProperty("secret", secret);
+    Path tempPath = pDaemonFile.resolveSibling(pDaemonFile.getFileName() + ".tmp");
+    try
+    {
+      Files.deleteIfExists(tempPath);
+      Set<String> views = pDaemonFile.getFileSystem().supportedFileAttributeViews();
+      if (views.contains("posix"))
+        Files.createFile(tempPath, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+      else if (views.contains("acl"))
+      {
+        // the acl replaces the inherited entries, so only the owner can access the secret
+        Files.createFile(tempPath);
+        AclFileAttributeView view = Files.getFileAttributeView(tempPath, AclFileAttributeView.class);
+        view.setAcl(Collections.singletonList(AclEntry.newBuilder()
+                                                  .setType(AclEntryType.ALLOW)
+                                                  .setPrincipal(view.getOwner())
+                                                  .setPermissions(EnumSet.allOf(AclEntryPermission.class))
+                                                  .build()));
+      }
+      else
+        throw new IOException("The daemon file " + pDaemonFile + " can't be restricted to its owner, the daemon " +
+                                  "doesn't start.");
+      try (OutputStream outputStream = Files.newOutputStream(tempPath))
+      {
+        properties.store(outputStream, null);
+      }
+      Files.move(tempPath, pDaemonFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally
+    {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+}
@@ -0,0 +1,52 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Signs and verifies archives.
+ *
+ * @author j.boesl, 17.10.26
+ */
+interface SignEngine
+{
+
+  /**
+   * Signs the archive in place. Former signatures are removed and the additional manifest entries are added.
+   *
+   * @param pArchivePath               the archive to be signed.
+   * @param pAdditionalManifestEntries entries that are added to the main section of the manifest. May be <tt>null</tt>.
+   * @param pPreviousSignedPath        a signed former version of the archive whose entry digests may be reused for
+   *                                   unchanged entries. May be <tt>null</tt>. Engines that can't reuse digests ignore
+   *                                   it.
+   */
+  void sign(Path pArchivePath, Map<String, String> pAdditionalManifestEntries, Path pPreviousSignedPath)
+      throws IOException, MojoExecutionException;
+
+  /**
+   * Verifies the signature of an archive. Fails if the archive is not completely signed by the configured key.
+   *
+   * @param pArchivePath the archive to be verified.
+   */
+  void verify(Path pArchivePath) throws IOException, MojoExecutionException;
+
+
+  /**
+   * Type enum
+   */
+  enum TYPE
+  {
+    /**
+     * A jarsigner process is started for every archive.
+     */
+    JARSIGNER,
+    /**
+     * Archives are signed and verified inside the running JVM.
+     */
+    INTERNAL
+  }
+
+}
@@ -0,0 +1,279 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time, bytes and number of calls of each phase of a sign execution together with the cache counters. The metrics are
+ * written to a JSON report, so the costs of signing can be compared across builds.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class SignMetrics
+{
+
+  private final long startTime = System.nanoTime();
+  private final Map<PHASE, AtomicLong[]> phases = new EnumMap<>(PHASE.class);
+  private final Map<COUNTER, AtomicLong> counters = new EnumMap<>(COUNTER.class);
+
+
+  SignMetrics()
+  {
+    // all keys exist from the beginning, so the maps are only read concurrently
+    for (PHASE phase : PHASE.values())
+      phases.put(phase, new AtomicLong[]{new AtomicLong(), new AtomicLong(), new AtomicLong()});
+    for (COUNTER counter : COUNTER.values())
+      counters.put(counter, new AtomicLong());
+  }
+
+  /**
+   * @return the start time for {@link #record(PHASE, long, long)}.
+   */
+  long start()
+  {
+    return System.nanoTime();
+  }
+
+  /**
+   * Records a finished call of a phase.
+   *
+   * @param pPhase the phase.
+   * @param pStart the time returned by {@link #start()}.
+   * @param pBytes the number of bytes that were processed.
+   */
+  void record(PHASE pPhase, long pStart, long pBytes)
+  {
+    AtomicLong[] values = phases.get(pPhase);
+    values[0].incrementAndGet();
+    values[1].addAndGet(System.nanoTime() - pStart);
+    values[2].addAndGet(pBytes);
+  }
+
+  void count(COUNTER pCounter)
+  {
+    counters.get(pCounter).incrementAndGet();
+  }
+
+  /**
+   * @return a line for each phase that was called.
+   */
+  List<String> getSummary()
+  {
+    List<String> summary = new ArrayList<>();
+    for (Map.Entry<PHASE, AtomicLong[]> phase : phases.entrySet())
+    {
+      AtomicLong[] values = phase.getValue();
+      if (values[0].get() > 0)
+        summary.add(phase.getKey().name().toLowerCase(Locale.ENGLISH) + ": " + values[0].get() + " calls, " +
+                        TimeUnit.NANOSECONDS.toMillis(values[1].get()) + " ms, " + values[2].get() + " bytes");
+    }
+    return summary;
+  }
+
+  /**
+   * Writes the JSON report.
+   *
+   * @param pReportPath the report file.
+   * @param pProperties additional top level values. Values may be strings, numbers, booleans, lists and maps.
+   */
+  void writeReport(Path pReportPath, Map<String, Object> pProperties) throws IOException
+  {
+    Map<String, Object> report = new LinkedHashMap<>(pProperties);
+    report.put("durationMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+
+    Map<String, Object> counterValues = new LinkedHashMap<>();
+    for (Map.Entry<COUNTER, AtomicLong> counter : counters.entrySet())
+      counterValues.put(_getName(counter.getKey()), counter.getValue().get());
+    report.put("counters", counterValues);
+
+    Map<String, Object> phaseValues = new LinkedHashMap<>();
+    for (Map.Entry<PHASE, AtomicLong[]> phase : phases.entrySet())
+    {
+      AtomicLong[] values = phase.getValue();
+      Map<String, Object> phaseValue = new LinkedHashMap<>();
+      phaseValue.put("calls", values[0].get());
+      phaseValue.put("millis", TimeUnit.NANOSECONDS.toMillis(values[1].get()));
+      phaseValue.put("bytes", values[2].get());
+      phaseValues.put(_getName(phase.getKey()), phaseValue);
+    }
+    report.put("phases", phaseValues);
+
+    StringBuilder builder = new StringBuilder();
+    _writeJson(builder, report, "");
+    builder.append('\n');
+    Files.createDirectories(pReportPath.toAbsolutePath().getParent());
+    Files.write(pReportPath, builder.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @return the name in camel case, e.g. <tt>checksumReused</tt> for <tt>CHECKSUM_REUSED</tt>.
+   */
+  private static String _getName(Enum<?> pEnum)
+  {
+    StringBuilder builder = new StringBuilder();
+    for (String part : pEnum.name().toLowerCase(Locale.ENGLISH).split("_"))
+      builder.append(builder.length() == 0 ? part : Character.toUpperCase(part.charAt(0)) + part.substring(1));
+    return builder.toString();
+  }
+
+  private static void _writeJson(StringBuilder pBuilder, Object pValue, String pIndent)
+  {
+    if (pValue instanceof Map)
+    {
+      pBuilder.append('{');
+      String separator = "\n";
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) pValue).entrySet())
+      {
+        pBuilder.append(separator).append(pIndent).append("  ");
+        _writeString(pBuilder, String.valueOf(entry.getKey()));
+        pBuilder.append(": ");
+        _writeJson(pBuilder, entry.getValue(), pIndent + "  ");
+        separator = ",\n";
+      }
+      pBuilder.append('\n').append(pIndent).append('}');
+    }
+    else if (pValue instanceof Collection)
+    {
+      pBuilder.append('[');
+      String separator = "\n";
+      for (Object element : (Collection<?>) pValue)
+      {
+        pBuilder.append(separator).append(pIndent).append("  ");
+        _writeJson(pBuilder, element, pIndent + "  ");
+        separator = ",\n";
+      }
+      pBuilder.append('\n').append(pIndent).append(']');
+    }
+    else if (pValue instanceof Number || pValue instanceof Boolean)
+      pBuilder.append(pValue);
+    else if (pValue == null)
+      pBuilder.append("null");
+    else
+      _writeString(pBuilder, pValue.toString());
+  }
+
+  private static void _writeString(StringBuilder pBuilder, String pString)
+  {
+    pBuilder.append('"');
+    for (char c : pString.toCharArray())
+    {
+      if (c == '"' || c == '\\')
+        pBuilder.append('\\').append(c);
+      else if (c < 0x20)
+        pBuilder.append(String.format("\\u%04x", (int) c));
+      else
+        pBuilder.append(c);
+    }
+    pBuilder.append('"');
+  }
+
+
+  /**
+   * The phases of signing.
+   */
+  enum PHASE
+  {
+    /**
+     * Calculating checksums of jars.
+     */
+    CHECKSUM,
+    /**
+     * Copying jars while their checksum is calculated.
+     */
+    COPY,
+    /**
+     * Linking or cloning jars instead of copying them.
+     */
+    LINK,
+    /**
+     * Removing signatures and updating the manifest. Part of signing unless the jars are repacked.
+     */
+    REWRITE,
+    REPACK,
+    /**
+     * Signing with the sign engine. Includes rewriting when not repacking and time stamping.
+     */
+    SIGN,
+    /**
+     * Requesting time stamps from the TSA.
+     */
+    TIMESTAMP,
+    /**
+     * Creating the compressed form of signed jars. Compressed jars that were cached are only linked.
+     */
+    COMPRESS,
+    /**
+     * Decompressing jars whose compression isn't lossless to verify them.
+     */
+    DECOMPRESS,
+    VERIFY,
+    /**
+     * Downloading signed jars from the remote cache, including the integrity check.
+     */
+    DOWNLOAD,
+    /**
+     * Uploading signed jars to the remote cache.
+     */
+    UPLOAD
+  }
+
+  /**
+   * Counters of the cache.
+   */
+  enum COUNTER
+  {
+    /**
+     * Jars that were not found in the cache.
+     */
+    NEW,
+    /**
+     * Jars whose signed result was found in the cache.
+     */
+    CACHED,
+    /**
+     * Jars that were signed results already.
+     */
+    SIGNED,
+    /**
+     * Jars that were not verified because a verification was recorded.
+     */
+    TRUSTED,
+    /**
+     * Jars whose cache entry was taken over from SHA-1 checksums.
+     */
+    MIGRATED,
+    /**
+     * Checksums that were known from a former calculation.
+     */
+    CHECKSUM_REUSED,
+    /**
+     * Checksums that were taken from the checksum files of the local repository.
+     */
+    CHECKSUM_REPOSITORY,
+    /**
+     * Entry digests that were taken from the signed former version of a jar.
+     */
+    DIGEST_REUSED,
+    /**
+     * Signed jars that were downloaded from the remote cache.
+     */
+    REMOTE_HIT,
+    /**
+     * Jars that were not found in the remote cache.
+     */
+    REMOTE_MISS,
+    /**
+     * Signed jars that were uploaded to the remote cache.
+     */
+    REMOTE_UPLOADED,
+    /**
+     * Downloads and uploads that failed. They don't fail the build.
+     */
+    REMOTE_FAILED
+  }
+
+}
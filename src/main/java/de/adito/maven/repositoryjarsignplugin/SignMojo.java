@@ -1,17 +1,17 @@
 package de.adito.maven.repositoryjarsignplugin;
 
 import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.*;
 import org.apache.maven.plugins.annotations.*;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.project.MavenProject;
-import org.apache.maven.shared.jarsigner.*;
-import org.apache.maven.shared.utils.cli.CommandLineException;
-import org.apache.maven.shared.utils.cli.javatool.JavaToolException;
 import org.codehaus.plexus.digest.Digester;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.cert.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -23,13 +23,16 @@ import java.util.concurrent.atomic.AtomicInteger;
  *         Date: 01.02.15
  *         Time. 21:15
  */
-@Mojo(name = "sign", requiresDependencyResolution = ResolutionScope.COMPILE, threadSafe = true)
+@Mojo(name = "sign", requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME, threadSafe = true)
 public class SignMojo extends AbstractMojo
 {
 
   @Component
   private MavenProject project;
 
+  @Parameter(readonly = true, required = true, defaultValue = "${session}")
+  private MavenSession session;
+
   @Component(hint = "sha1")
   private Digester digester;
 
@@ -46,17 +49,46 @@ public class SignMojo extends AbstractMojo
   private String id;
 
   /**
-   * The directory where the jars to be signed are in.
+   * The directory where the jars to be signed are in. With <tt>dependencies</tt> the signed dependencies are written to
+   * it.
    */
   @Parameter(required = true, property = "repository.jarsign.directory")
   private String jarDirectory;
 
+  /**
+   * If <i>true</i> the resolved dependencies of the project are signed instead of the jars in the jar directory. They
+   * are read from the local repository and written signed to the jar directory, so they don't have to be copied there
+   * first.
+   */
+  @Parameter(defaultValue = "false", property = "repository.jarsign.dependencies")
+  private boolean dependencies;
+
+  /**
+   * A comma separated string with the scopes of the dependencies that are signed with <tt>dependencies</tt>.
+   */
+  @Parameter(defaultValue = "compile,runtime", property = "repository.jarsign.scopes")
+  private String scopes;
+
   /**
    * A comma separated string with all extensions that shall be signed. Default is <tt>jar</tt> only.
    */
   @Parameter(defaultValue = "jar", property = "repository.jarsign.types")
   private String types;
 
+  /**
+   * Glob patterns relative to the jar directory for the files that shall be signed, e.g. <tt>lib/**&#47;*.jar</tt>. By
+   * default all files with one of the <tt>types</tt> are signed.
+   */
+  @Parameter
+  private List<String> includes;
+
+  /**
+   * Glob patterns relative to the jar directory for files that shall not be signed, e.g. already signed third party
+   * jars. Directories that are excluded as a whole, like <tt>thirdparty/**</tt>, are not searched.
+   */
+  @Parameter
+  private List<String> excludes;
+
   /**
    * If <i>true</i> all jars are signed no matter whether already signed or not.
    */
@@ -95,67 +127,308 @@ public class SignMojo extends AbstractMojo
 
   /**
    * See <a href="http://java.sun.com/javase/6/docs/technotes/tools/windows/jarsigner.html#Options">options</a>.
+   * Several TSA urls can be separated by commas. The <tt>INTERNAL</tt> engine prefers the fastest TSA, the
+   * <tt>JARSIGNER</tt> engine uses the next one only when signing failed.
    */
   @Parameter(property = "jarsigner.tsa")
   private String tsa;
 
+  /**
+   * The maximum number of time stamp requests in flight with the <tt>INTERNAL</tt> engine. Values below one don't limit
+   * the requests.
+   */
+  @Parameter(defaultValue = "8", property = "repository.jarsign.tsaMaxRequests")
+  private int tsaMaxRequests;
+
+  /**
+   * The number of milliseconds after which a time stamp request of the <tt>INTERNAL</tt> engine is sent to the next TSA
+   * as well. Values below one derive the delay from the measured latency of the TSA.
+   */
+  @Parameter(defaultValue = "0", property = "repository.jarsign.tsaHedgeDelay")
+  private long tsaHedgeDelay;
+
+  /**
+   * If <i>true</i> jars are signed by the sign daemon of the keystore alias, see the <tt>daemon</tt> goal. The keystore
+   * is only loaded when no daemon is running or when the daemon was started with another keystore version, other
+   * passwords or other TSAs. Requires the <tt>INTERNAL</tt> engine, which the daemon signs with.
+   */
+  @Parameter(defaultValue = "false", property = "repository.jarsign.daemon")
+  private boolean daemon;
+
   /**
    * Defines whether the jars shall be repacked by the pack200 utility. This might be necessary when using pack200.
+   * It is ignored on JVMs without Pack200.
    */
   @Parameter(defaultValue = "false")
   private boolean repack;
 
   /**
-   * If <i>true</i> the jars are packed with pack200 after the jars were signed.
+   * If <i>true</i> the jars are packed with pack200 after the jars were signed. Same as <tt>compression</tt>
+   * <tt>PACK200</tt>.
    */
   @Parameter(defaultValue = "false")
   private boolean pack200;
 
+  /**
+   * Compresses the signed jars for distribution. <tt>PACK200</tt> creates <tt>.pack.gz</tt> files, <tt>GZIP</tt>
+   * creates <tt>.gz</tt> files whose blocks are compressed by all processors. Only the compressed jars remain in the
+   * jar directory. Compressed jars are cached like signed ones. On JVMs without Pack200 (Java 14 and later)
+   * <tt>GZIP</tt> is used instead of <tt>PACK200</tt>.
+   */
+  @Parameter(property = "repository.jarsign.compression")
+  private Compressor.TYPE compression;
+
+  /**
+   * Defines how jars are signed and verified. <tt>JARSIGNER</tt> starts a jarsigner process for each jar.
+   * <tt>INTERNAL</tt> signs and verifies inside the maven process and loads the keystore only once.
+   */
+  @Parameter(defaultValue = "JARSIGNER", property = "repository.jarsign.engine")
+  private SignEngine.TYPE engine;
+
+  /**
+   * Defines how jars are verified. By default the sign engine is used. <tt>INTERNAL</tt> verifies inside the maven
+   * process and checks the entries of large jars in parallel.
+   */
+  @Parameter(property = "repository.jarsign.verifyEngine")
+  private SignEngine.TYPE verifyEngine;
+
+  /**
+   * The number of jars that are signed concurrently. Values below one use the number of available processors. Higher
+   * values can be useful when time stamping with a slow TSA.
+   */
+  @Parameter(defaultValue = "0", property = "repository.jarsign.signThreads")
+  private int signThreads;
+
+  /**
+   * The number of jars that are verified concurrently. Values below one use the number of available processors.
+   * <p>
+   * All modules of a build share the sign and verify threads of the module that signs first.
+   */
+  @Parameter(defaultValue = "0", property = "repository.jarsign.verifyThreads")
+  private int verifyThreads;
+
+  /**
+   * If <i>true</i> a successful verification is recorded for each signed jar in the cache. Cached jars that equal the
+   * verified jar and were verified with the same certificate are not verified again.
+   */
+  @Parameter(defaultValue = "false", property = "repository.jarsign.trustVerified")
+  private boolean trustVerified;
+
+  /**
+   * The percentage of trusted jars that are verified anyway, for auditing the cache.
+   */
+  @Parameter(defaultValue = "0", property = "repository.jarsign.auditRate")
+  private int auditRate;
+
+  /**
+   * The number of days after which a recorded verification is not trusted anymore and the jar is verified again.
+   * <tt>0</tt> trusts recorded verifications forever.
+   */
+  @Parameter(defaultValue = "0", property = "repository.jarsign.auditAge")
+  private int auditAge;
+
+  /**
+   * If <i>true</i> the size, modification time and file key of each jar are kept in the cache index together with its
+   * checksum. Jars whose metadata didn't change since then are not read again to calculate their checksum.
+   */
+  @Parameter(defaultValue = "false", property = "repository.jarsign.incremental")
+  private boolean incremental;
+
+  /**
+   * The algorithm of the checksums that identify jars in the cache: <tt>SHA1</tt>, <tt>SHA256</tt> or <tt>XXH64</tt>.
+   * <tt>XXH64</tt> is much faster, but not collision resistant, so it must only be used if no jar comes from an
+   * untrusted source. The digests of signing keys are not affected.
+   */
+  @Parameter(defaultValue = "SHA1", property = "repository.jarsign.checksumAlgorithm")
+  private SignChecksumHelper.ALGORITHM checksumAlgorithm;
+
+  /**
+   * If <i>true</i> jars that were signed with SHA-1 checksums are taken over by another <tt>checksumAlgorithm</tt>
+   * instead of being signed again. New jars are hashed with SHA-1, too, until they are signed.
+   */
+  @Parameter(defaultValue = "true", property = "repository.jarsign.checksumMigration")
+  private boolean checksumMigration;
+
+  /**
+   * If <i>true</i> a changed jar is signed with the help of the signed copy of its former version in the cache. Entries
+   * with unchanged CRC and size take their digest from the former manifest, so only changed entries are read. Only the
+   * <tt>INTERNAL</tt> engine and the sign daemon use the former version.
+   */
+  @Parameter(defaultValue = "false", property = "repository.jarsign.incrementalSign")
+  private boolean incrementalSign;
+
+  /**
+   * Defines how cached jars are placed in the jar directory and signed jars in the cache. <tt>COPY</tt> copies the
+   * bytes, <tt>HARDLINK</tt> shares the file, <tt>SYMLINK</tt> links jars to the cache and <tt>REFLINK</tt> creates
+   * copy-on-write clones. Jars are copied when the file system doesn't support the setting. Signed jars are never
+   * symlinked into the cache. With <tt>HARDLINK</tt> a cached jar is checksummed before it is placed again, so a jar
+   * that was modified in place through the jar directory is signed again instead of being spread to other builds.
+   */
+  @Parameter(defaultValue = "COPY", property = "repository.jarsign.materialization")
+  private FileUtility.MATERIALIZATION materialization;
+
+  /**
+   * The maximum size of the store of signed jars in megabytes. When it is exceeded after signing, the jars that were
+   * used least recently are removed. <tt>0</tt> doesn't limit the size.
+   */
+  @Parameter(defaultValue = "0", property = "repository.jarsign.cacheMaxSize")
+  private long cacheMaxSize;
+
+  /**
+   * The number of days after which signed jars that weren't used are removed from the store. <tt>0</tt> keeps them
+   * forever.
+   */
+  @Parameter(defaultValue = "0", property = "repository.jarsign.cacheMaxAge")
+  private int cacheMaxAge;
+
+  /**
+   * A second level cache of signed jars that is shared between machines: a directory, e.g. on a network share, or the
+   * url of a http server that supports <tt>GET</tt> and <tt>PUT</tt>, like the one of the <tt>cache-server</tt> goal.
+   * Jars that are not in the local cache are downloaded from there instead of being signed.
+   */
+  @Parameter(property = "repository.jarsign.remoteCache")
+  private String remoteCache;
+
+  /**
+   * If <i>true</i> jars that were signed and verified are uploaded to the <tt>remoteCache</tt>.
+   */
+  @Parameter(defaultValue = "true", property = "repository.jarsign.remoteCacheUpload")
+  private boolean remoteCacheUpload;
+
+  /**
+   * The number of concurrent downloads from the <tt>remoteCache</tt>, the same number of uploads can run besides.
+   */
+  @Parameter(defaultValue = "8", property = "repository.jarsign.remoteCacheThreads")
+  private int remoteCacheThreads;
+
+  /**
+   * If <i>true</i> the time, bytes and calls of each phase of signing and the cache counters are written to
+   * <tt>reportFile</tt> as JSON.
+   */
+  @Parameter(defaultValue = "true", property = "repository.jarsign.report")
+  private boolean report;
+
+  /**
+   * The file the report is written to.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/repository-jarsign-report.json",
+      property = "repository.jarsign.reportFile")
+  private String reportFile;
+
 
   public void execute() throws MojoExecutionException
   {
     jarDirectory = _normalizeFilePath(jarDirectory);
     keystore = _normalizeFilePath(keystore);
+    if (repack && !PackUtility.isAvailable())
+    {
+      getLog().warn("Pack200 is not available in this JVM, jars are not repacked.");
+      repack = false;
+    }
+    if (repack && remoteCache != null && !remoteCache.trim().isEmpty())
+    {
+      // repacked jars can't be compared with their input, so downloads couldn't be checked
+      getLog().warn("The remoteCache is not used for repacked jars.");
+      remoteCache = null;
+    }
+    Compressor compressor = _createCompressor();
 
     int availableProcessors = Runtime.getRuntime().availableProcessors();
-    ExecutorService executorService = Executors.newFixedThreadPool(availableProcessors);
-
+    SignService signService = SignService.get(session, signThreads > 0 ? signThreads : availableProcessors,
+                                              verifyThreads > 0 ? verifyThreads : availableProcessors,
+                                              Math.max(1, remoteCacheThreads));
+    SignMetrics metrics = new SignMetrics();
+    Pipeline pipeline = null;
     try
     {
-      Path cachePath = _getCachePath();
-      if (_isNewKeyStoreKey(cachePath))
-        forceSign = true;
-
-      final DefaultJarSigner jarSigner = new DefaultJarSigner();
-      jarSigner.enableLogging(new MavenLogger(getLog()));
-
-      Set<Path> workFiles = SignUtility.getWorkPaths(project, jarDirectory, types);
-
-      List<SignCandidate> candidates = _sign(jarSigner, cachePath, workFiles);
+      Path cacheRootPath = SignUtility.getCacheRootPath(localRepository);
+      Path cachePath = Files.createDirectories(cacheRootPath.resolve(id));
+      DaemonSignEngine daemonSignEngine = _connectDaemon(cacheRootPath);
+      SigningKey signingKey = null;
+      String keyDigest;
+      X509Certificate certificate;
+      if (daemonSignEngine != null)
+      {
+        keyDigest = daemonSignEngine.getKeyDigest(digester.getAlgorithm());
+        certificate = daemonSignEngine.getCertificate();
+      }
+      else
+      {
+        signingKey = signService.getSigningKey(keystore, alias, storepass, keypass);
+        keyDigest = new String(signingKey.getDigest(digester.getAlgorithm()), StandardCharsets.US_ASCII);
+        certificate = signingKey.getCertificate();
+      }
 
-      final AtomicInteger signedCount = new AtomicInteger();
-      final AtomicInteger verifiedCount = new AtomicInteger();
+      CacheIndex cacheIndex = signService.getCacheIndex(cachePath, SignChecksumHelper.getChecksumPostfix(digester),
+                                                        keyDigest);
+      SignStore signStore = signService.getSignStore(cacheRootPath, digester.getAlgorithm(), _getSignOptions());
+      SignChecksumHelper signChecksumHelper = new SignChecksumHelper(getLog(), checksumAlgorithm,
+                                                                     incremental ? cacheIndex : null, metrics);
+      // the fingerprints in the index are of the configured algorithm, so former checksums aren't indexed
+      SignChecksumHelper formerChecksumHelper = null;
+      if (checksumMigration && checksumAlgorithm != SignChecksumHelper.ALGORITHM.SHA1)
+        formerChecksumHelper = new SignChecksumHelper(getLog(), SignChecksumHelper.ALGORITHM.SHA1, null, metrics);
+      List<String> tsas = SignUtility.getTsas(tsa);
+      TimestampClient timestampClient = null;
+      SignEngine signEngine;
+      SignEngine verifySignEngine;
+      if (daemonSignEngine != null)
+      {
+        // the daemon signs and verifies internally, only jarsigner verification stays in this process
+        signEngine = daemonSignEngine;
+        verifySignEngine = verifyEngine == SignEngine.TYPE.JARSIGNER ?
+            _createSignEngine(SignEngine.TYPE.JARSIGNER, null, null, metrics) : daemonSignEngine;
+      }
+      else
+      {
+        if (engine == SignEngine.TYPE.INTERNAL && !tsas.isEmpty())
+          timestampClient = signService.getTimestampClient(tsas, tsaMaxRequests, tsaHedgeDelay);
+        signEngine = _createSignEngine(engine, signingKey, timestampClient, metrics);
+        verifySignEngine = verifyEngine == null || verifyEngine == engine ?
+            signEngine : _createSignEngine(verifyEngine, signingKey, timestampClient, metrics);
+      }
+      RemoteCache remote = remoteCache == null || remoteCache.trim().isEmpty() ? null :
+          signService.getRemoteCache(remoteCache.trim());
+      pipeline = new Pipeline(signService, signEngine, verifySignEngine, compressor, signChecksumHelper,
+                              formerChecksumHelper, cachePath, cacheIndex, signStore, remote, keyDigest,
+                              _getTrustedCertificateFingerprint(certificate), metrics);
 
-      List<Future> futureList = new LinkedList<>();
-      // update signing directory and verify
-      for (final SignCandidate candidate : candidates)
+      if (dependencies)
       {
-        futureList.add(executorService.submit(new Callable<Void>()
-        {
-          @Override
-          public Void call() throws Exception
-          {
-            _verify(jarSigner, candidate, signedCount, verifiedCount);
-            return null;
-          }
-        }));
+        Files.createDirectories(SignUtility.getJarDirectoryPath(project, jarDirectory));
+        for (Map.Entry<Path, Path> dependencyPath :
+            SignUtility.getDependencyPaths(project, jarDirectory, scopes, types).entrySet())
+          pipeline.submit(dependencyPath.getKey(), dependencyPath.getValue());
+      }
+      else
+      {
+        JarDirectoryScanner scanner = new JarDirectoryScanner(
+            SignUtility.getJarDirectoryPath(project, jarDirectory), types,
+            includes == null ? Collections.<String>emptyList() : includes,
+            excludes == null ? Collections.<String>emptyList() : excludes);
+        for (Path archivePath : scanner.scan())
+          pipeline.submit(archivePath, archivePath);
       }
-      // wait till verification finshed.
-      for (Future future : futureList)
-        future.get();
+      // wait till all jars passed the pipeline.
+      pipeline.await();
 
-      getLog().info(signedCount + " jars have been signed.");
-      getLog().info(verifiedCount + " jars have been verified.");
+      cacheIndex.flush();
+      signStore.flush();
+      _evict(signStore, pipeline.candidates);
+
+      getLog().info(pipeline.signedCount + " jars have been signed.");
+      getLog().info(pipeline.verifiedCount + " jars have been verified.");
+      if (trustVerified)
+        getLog().info(pipeline.trustedCount + " jars have been trusted because they were verified before.");
+      if (remote != null)
+        getLog().info(pipeline.downloadedCount + " jars have been downloaded from the remote cache.");
+      if (timestampClient != null)
+        for (String statistic : timestampClient.getStatistics())
+          getLog().info(statistic);
+      for (String line : metrics.getSummary())
+        getLog().debug(line);
+      if (report)
+        _writeReport(metrics, timestampClient, compressor, remote, daemonSignEngine != null);
     }
     catch (Exception e)
     {
@@ -163,124 +436,573 @@ public class SignMojo extends AbstractMojo
         throw (MojoExecutionException) e;
       throw new MojoExecutionException(e.getMessage(), e);
     }
+    finally
+    {
+      // the executors are shared, so the tasks of a failed execution are cancelled separately
+      if (pipeline != null)
+        pipeline.cancel();
+    }
   }
 
 
-  private List<SignCandidate> _sign(DefaultJarSigner pJarSigner, Path pCachePath, Set<Path> pWorkFiles)
-      throws IOException, MojoExecutionException, CommandLineException, JavaToolException, InterruptedException
+  /**
+   * @return the checksum of the jar that is taken from the source.
+   */
+  private String _getChecksum(Path pArchivePath, Path pSourcePath, Pipeline pPipeline) throws MojoExecutionException
   {
-    SignChecksumHelper signChecksumHelper = new SignChecksumHelper(getLog(), digester);
+    return pSourcePath.equals(pArchivePath) ?
+        pPipeline.signChecksumHelper.getChecksum(pArchivePath, repack) :
+        pPipeline.signChecksumHelper.getArtifactChecksum(pSourcePath, repack);
+  }
 
-    List<SignCandidate> candidates = new ArrayList<>();
+  /**
+   * Classifies a jar by its cache entry. The store entry of this archive is locked only, so other archives can be
+   * processed concurrently.
+   */
+  private SignCandidate _classify(Path pArchivePath, Path pSourcePath, String pChecksum, Pipeline pPipeline)
+      throws IOException, MojoExecutionException, InterruptedException
+  {
+    SignStore signStore = pPipeline.signStore;
+    try (CacheLock ignored = CacheLock.lock(signStore.getEntryPath(signStore.getKey(pChecksum, pPipeline.keyDigest))))
+    {
+      SignCandidate candidate = new SignCandidate(pArchivePath, pSourcePath, pChecksum, pPipeline.cachePath,
+                                                  pPipeline.cacheIndex, signStore, pPipeline.keyDigest, forceSign);
+      if (candidate.getType() == SignCandidate.TYPE.NEW && !forceSign && pPipeline.formerChecksumHelper != null &&
+          _migrate(candidate, pPipeline))
+        candidate = new SignCandidate(pArchivePath, pSourcePath, pChecksum, pPipeline.cachePath, pPipeline.cacheIndex,
+                                      signStore, pPipeline.keyDigest, forceSign);
+      return candidate;
+    }
+  }
 
-    // update shared directory
-    synchronized (id.intern())
+  /**
+   * @return whether the signed result of a jar may be found in the remote cache. Signed results and jars whose signed
+   * copy is in the local store don't need it. The entry isn't locked, the download checks again.
+   */
+  private boolean _isFetchNeeded(String pChecksum, Pipeline pPipeline) throws IOException
+  {
+    if (pPipeline.remoteCache == null || !pPipeline.remoteCache.isAvailable() || forceSign)
+      return false;
+    SignStore signStore = pPipeline.signStore;
+    String storeKey = signStore.getKey(pChecksum, pPipeline.keyDigest);
+    CacheIndex.Entry entry = signStore.get(storeKey);
+    return entry == null ||
+        !(pChecksum.equals(entry.getSignedChecksum()) || Files.exists(signStore.getObjectPath(storeKey)));
+  }
+
+  /**
+   * Downloads the signed result of a jar from the remote cache into the local store. The download is checked against
+   * the remote entry, the entry against the jar and the content of the download against the source of the jar, so a
+   * broken or foreign entry is never stored. Failures only cause a warning, the jar is signed locally then.
+   */
+  private void _fetch(Path pArchivePath, Path pSourcePath, String pChecksum, Pipeline pPipeline)
+      throws IOException, MojoExecutionException, InterruptedException
+  {
+    RemoteCache remote = pPipeline.remoteCache;
+    SignStore signStore = pPipeline.signStore;
+    SignMetrics metrics = pPipeline.metrics;
+    String storeKey = signStore.getKey(pChecksum, pPipeline.keyDigest);
+    Path objectPath = signStore.getObjectPath(storeKey);
+    // the cache may have failed while the download was waiting
+    if (!remote.isAvailable())
+      return;
+    Path tempPath = FileUtility.createTempFile(objectPath);
+    try
     {
-      for (Path archivePath : pWorkFiles)
+      long start = metrics.start();
+      CacheIndex.Entry entry = remote.get(storeKey, tempPath);
+      if (entry == null)
+      {
+        metrics.count(SignMetrics.COUNTER.REMOTE_MISS);
+        return;
+      }
+      // the download is moved into the store, so its size is taken now
+      long size = Files.size(tempPath);
+      if (!pChecksum.equals(entry.getChecksum()) || !pPipeline.keyDigest.equals(entry.getKeyDigest()))
+        throw new IOException("The entry doesn't belong to the jar.");
+      // the remote cache isn't trusted to hold what the entry claims
+      JarVerifier.verifyContent(tempPath, pSourcePath);
+      try (CacheLock ignored = CacheLock.lock(signStore.getEntryPath(storeKey)))
       {
-        SignCandidate candidate = new SignCandidate(archivePath, pCachePath, signChecksumHelper, forceSign, repack, pack200);
-        candidates.add(candidate);
-        switch (candidate.getType())
+        // another thread or process may have signed or downloaded the jar in the meantime
+        if (!Files.exists(objectPath))
         {
-          case NEW:
-            getLog().info("Signing " + candidate.getArchivePath() + ".");
-
-            // install default checksum
-            signChecksumHelper.installSignChecksum(candidate.getCheckSumPath(), archivePath, repack);
-
-            JarSignerUtil.unsignArchive(archivePath.toFile());
-
-            SignUtility.updateManifest(getLog(), additionalManifestEntries, archivePath);
+          FileUtility.move(tempPath, objectPath);
+          if (!pPipeline.signChecksumHelper.getChecksum(objectPath, repack).equals(entry.getSignedChecksum()))
+          {
+            Files.delete(objectPath);
+            throw new IOException("The signed jar doesn't match the entry.");
+          }
+          signStore.put(storeKey, entry);
+          pPipeline.downloadedCount.incrementAndGet();
+        }
+      }
+      metrics.record(SignMetrics.PHASE.DOWNLOAD, start, size);
+      metrics.count(SignMetrics.COUNTER.REMOTE_HIT);
+    }
+    catch (IOException e)
+    {
+      metrics.count(SignMetrics.COUNTER.REMOTE_FAILED);
+      getLog().warn("Failed to download " + pArchivePath.getFileName() + " from the remote cache " + remote + ": " +
+                        e.getMessage());
+    }
+    finally
+    {
+      Files.deleteIfExists(tempPath);
+    }
+  }
 
-            if (repack)
-              PackUtility.repack(archivePath);
+  /**
+   * Uploads a signed and verified jar to the remote cache. Its store entry is locked, so the jar and its entry can't
+   * be replaced during the upload. Failures only cause a warning.
+   */
+  private void _upload(SignCandidate pCandidate, Pipeline pPipeline) throws IOException, InterruptedException
+  {
+    RemoteCache remote = pPipeline.remoteCache;
+    SignMetrics metrics = pPipeline.metrics;
+    if (!remote.isAvailable())
+      return;
+    try (CacheLock ignored = CacheLock.lock(pCandidate.getEntryPath()))
+    {
+      CacheIndex.Entry entry = pPipeline.signStore.get(pCandidate.getStoreKey());
+      if (entry == null || !Files.exists(pCandidate.getCopyPath()))
+        return;
+      long start = metrics.start();
+      remote.put(pCandidate.getStoreKey(), entry, pCandidate.getCopyPath());
+      metrics.record(SignMetrics.PHASE.UPLOAD, start, Files.size(pCandidate.getCopyPath()));
+      metrics.count(SignMetrics.COUNTER.REMOTE_UPLOADED);
+    }
+    catch (IOException e)
+    {
+      metrics.count(SignMetrics.COUNTER.REMOTE_FAILED);
+      getLog().warn("Failed to upload " + pCandidate.getArchivePath().getFileName() + " to the remote cache " + remote +
+                        ": " + e.getMessage());
+    }
+  }
 
+  /**
+   * Takes over the store entry of a jar that was cached with a SHA-1 checksum. The signed copy is placed under the key
+   * of the new checksum, a signed jar is indexed by its new checksum. The caller has to hold the lock of the candidate's
+   * store entry.
+   *
+   * @return whether an entry was taken over.
+   */
+  private boolean _migrate(SignCandidate pCandidate, Pipeline pPipeline)
+      throws IOException, MojoExecutionException, InterruptedException
+  {
+    SignStore signStore = pPipeline.signStore;
+    String formerChecksum = pCandidate.isCopied() ?
+        pPipeline.formerChecksumHelper.getArtifactChecksum(pCandidate.getSourcePath(), repack) :
+        pPipeline.formerChecksumHelper.getChecksum(pCandidate.getArchivePath(), repack);
+    try (CacheLock ignored = CacheLock.lock(signStore.getEntryPath(signStore.getKey(formerChecksum,
+                                                                                    pPipeline.keyDigest))))
+    {
+      SignCandidate formerCandidate = new SignCandidate(pCandidate.getArchivePath(), pCandidate.getSourcePath(),
+                                                        formerChecksum, pPipeline.cachePath, pPipeline.cacheIndex,
+                                                        signStore, pPipeline.keyDigest, false);
+      switch (formerCandidate.getType())
+      {
+        case CACHED:
+          if (!_isCopyIntact(formerCandidate, pPipeline.formerChecksumHelper, signStore))
+            return false;
+          // the former copy stays for builds that still use SHA-1
+          pPipeline.signChecksumHelper.materialize(formerCandidate.getCopyPath(), pCandidate.getCopyPath(),
+                                                   materialization == FileUtility.MATERIALIZATION.SYMLINK ?
+                                                       FileUtility.MATERIALIZATION.COPY : materialization);
+          String signedChecksum = pPipeline.signChecksumHelper.getChecksum(pCandidate.getCopyPath(), repack);
+          signStore.put(pCandidate.getStoreKey(),
+                        new CacheIndex.Entry(pCandidate.getChecksum(), signedChecksum, pPipeline.keyDigest));
+          break;
+        case SIGNED:
+          CacheIndex.Entry formerEntry = signStore.get(formerCandidate.getStoreKey());
+          if (formerEntry == null)
+            return false;
+          signStore.putSigned(new CacheIndex.Entry(formerEntry.getChecksum(), pCandidate.getChecksum(),
+                                                   pPipeline.keyDigest));
+          break;
+        default:
+          return false;
+      }
+    }
+    getLog().debug("Took over the cache entry of " + pCandidate.getArchivePath() + " for " + checksumAlgorithm + ".");
+    pPipeline.metrics.count(SignMetrics.COUNTER.MIGRATED);
+    return true;
+  }
 
-            SignUtility.sign(pJarSigner, alias, keystore, storepass, keypass, tsa, archivePath);
+  /**
+   * Signs a jar that was classified as new. It is classified again while its store entry is locked, because another
+   * thread or process might have signed the same jar in the meantime.
+   */
+  private SignCandidate _sign(SignCandidate pCandidate, Pipeline pPipeline)
+      throws IOException, MojoExecutionException, InterruptedException
+  {
+    SignStore signStore = pPipeline.signStore;
+    try (CacheLock ignored = CacheLock.lock(signStore.getEntryPath(signStore.getKey(pCandidate.getChecksum(),
+                                                                                    pPipeline.keyDigest))))
+    {
+      SignCandidate candidate = new SignCandidate(pCandidate.getArchivePath(), pCandidate.getSourcePath(),
+                                                  pCandidate.getChecksum(), pPipeline.cachePath, pPipeline.cacheIndex,
+                                                  signStore, pPipeline.keyDigest, forceSign);
+      _sign(pPipeline.signEngine, pPipeline.signChecksumHelper, signStore, pPipeline.keyDigest, pPipeline.metrics,
+            candidate, _getPreviousSignedPath(candidate, pPipeline));
+      return candidate;
+    }
+  }
 
-            if (pack200)
-              archivePath = PackUtility.pack(archivePath);
+  private void _sign(SignEngine pSignEngine, SignChecksumHelper pSignChecksumHelper, SignStore pSignStore,
+                     String pKeyDigest, SignMetrics pMetrics, SignCandidate pCandidate, Path pPreviousSignedPath)
+      throws IOException, MojoExecutionException, InterruptedException
+  {
+    Path archivePath = pCandidate.getArchivePath();
+    switch (pCandidate.getType())
+    {
+      case NEW:
+        getLog().info("Signing " + archivePath + ".");
+        if (pCandidate.isCopied())
+        {
+          pSignChecksumHelper.copy(pCandidate.getSourcePath(), archivePath);
+          // the checksum may come from a checksum file of the repository, copying calculates the real one
+          if (!pSignChecksumHelper.getChecksum(archivePath, repack).equals(pCandidate.getChecksum()))
+            throw new MojoExecutionException("The checksum file of " + pCandidate.getSourcePath() + " doesn't match " +
+                                                 "the artifact. Delete the checksum file or resolve the artifact again.");
+        }
 
-            Files.copy(archivePath, candidate.getCopyPath(), StandardCopyOption.REPLACE_EXISTING);
+        long start = pMetrics.start();
+        if (repack)
+        {
+          // repacking has to take place between updating the manifest and signing
+          ArchiveRewriter.rewrite(archivePath, additionalManifestEntries);
+          pMetrics.record(SignMetrics.PHASE.REWRITE, start, Files.size(archivePath));
+          start = pMetrics.start();
+          PackUtility.repack(archivePath);
+          pMetrics.record(SignMetrics.PHASE.REPACK, start, Files.size(archivePath));
+          start = pMetrics.start();
+          pSignEngine.sign(archivePath, null, pPreviousSignedPath);
+        }
+        else
+          pSignEngine.sign(archivePath, additionalManifestEntries, pPreviousSignedPath);
+        pMetrics.record(SignMetrics.PHASE.SIGN, start, Files.size(archivePath));
 
-            // install signed checksum
-            signChecksumHelper.installSignChecksum(candidate.getSignedCheckSumPath(), archivePath, repack);
+        // compressed jars of a former signature don't match the new one
+        for (Compressor.TYPE compressionType : Compressor.TYPE.values())
+          Files.deleteIfExists(pSignStore.getObjectPath(pCandidate.getStoreKey(), compressionType));
+        // the cache must not depend on the jar directory
+        pSignChecksumHelper.materialize(archivePath, pCandidate.getCopyPath(),
+                                        materialization == FileUtility.MATERIALIZATION.SYMLINK ?
+                                            FileUtility.MATERIALIZATION.COPY : materialization);
 
-            break;
-          case CACHED:
-          case SIGNED:
-            break;
-          default:
-            throw new MojoExecutionException("unknown type: " + candidate.getType());
-        }
+        String signedChecksum = pSignChecksumHelper.getChecksum(archivePath, repack);
+        pSignStore.put(pCandidate.getStoreKey(),
+                       new CacheIndex.Entry(pCandidate.getChecksum(), signedChecksum, pKeyDigest));
 
-        if (Thread.interrupted())
-          throw new InterruptedException();
-      }
+        break;
+      case CACHED:
+      case SIGNED:
+        break;
+      default:
+        throw new MojoExecutionException("unknown type: " + pCandidate.getType());
     }
-    return candidates;
-  }
 
+    if (Thread.interrupted())
+      throw new InterruptedException();
+  }
 
-  private void _verify(DefaultJarSigner pJarSigner, SignCandidate pCandidate, AtomicInteger pSignedCount,
-                       AtomicInteger pVerifiedCount)
-      throws IOException, JavaToolException, CommandLineException, MojoExecutionException, InterruptedException
+  /**
+   * @return the signed copy of the jar that was placed at the archive's path by a former run or <tt>null</tt> if there
+   * is none or incremental signing is off.
+   */
+  private Path _getPreviousSignedPath(SignCandidate pCandidate, Pipeline pPipeline) throws IOException
   {
-    Path archivePath = pack200 ? PackUtility.getPackPath(pCandidate.getArchivePath()) : pCandidate.getArchivePath();
+    if (!incrementalSign || pCandidate.getType() != SignCandidate.TYPE.NEW)
+      return null;
+    String previousKey = pPipeline.cacheIndex.getReference(pCandidate.getReferenceName());
+    if (previousKey == null || previousKey.equals(pCandidate.getStoreKey()))
+      return null;
+    // the former copy isn't locked, it is replaced atomically and a copy removed meanwhile only disables the reuse
+    Path previousSignedPath = pPipeline.signStore.getObjectPath(previousKey);
+    return Files.exists(previousSignedPath) ? previousSignedPath : null;
+  }
 
-    switch (pCandidate.getType())
-    {
-      case NEW:
-        pSignedCount.incrementAndGet();
 
-        // fall through
-      case CACHED:
-        if (pCandidate.getType() != SignCandidate.TYPE.NEW)
-          synchronized (id.intern())
-          {
-            Files.copy(pCandidate.getCopyPath(), archivePath, StandardCopyOption.REPLACE_EXISTING);
-          }
+  /**
+   * A hard linked jar shares its file with the signed copy in the store, so a tool that modifies the jar in place
+   * modifies the copy, too. With <tt>HARDLINK</tt> the checksum of a copy is therefore compared with the indexed one
+   * before the copy is placed again, and a modified copy is removed. The caller has to hold the lock of the candidate's
+   * store entry.
+   *
+   * @return whether the signed copy of the candidate exists and is unmodified.
+   */
+  private boolean _isCopyIntact(SignCandidate pCandidate, SignChecksumHelper pChecksumHelper, SignStore pSignStore)
+      throws IOException, MojoExecutionException
+  {
+    Path copyPath = pCandidate.getCopyPath();
+    if (!Files.exists(copyPath))
+      return false;
+    if (materialization != FileUtility.MATERIALIZATION.HARDLINK)
+      return true;
+    CacheIndex.Entry entry = pSignStore.get(pCandidate.getStoreKey());
+    if (entry != null && pChecksumHelper.getChecksum(copyPath, repack).equals(entry.getSignedChecksum()))
+      return true;
+    getLog().warn("The cached copy of " + pCandidate.getArchivePath() + " was modified in place, it is removed.");
+    Files.delete(copyPath);
+    return false;
+  }
 
-        // fall through
-      default:
-        if (pack200)
+  /**
+   * @return <i>false</i> if the signed copy of a cached jar was removed since it was classified, e.g. by the eviction of
+   * another build. The jar has to be signed again then.
+   */
+  private boolean _verify(SignCandidate pCandidate, Pipeline pPipeline)
+      throws IOException, MojoExecutionException, InterruptedException
+  {
+    Path archivePath = pCandidate.getArchivePath();
+    if (pCandidate.getType() == SignCandidate.TYPE.CACHED)
+      try (CacheLock ignored = CacheLock.lock(pCandidate.getEntryPath()))
+      {
+        if (!_isCopyIntact(pCandidate, pPipeline.signChecksumHelper, pPipeline.signStore))
         {
-          Path unpackPath = pCandidate.getArchivePath();
-          PackUtility.unpack(archivePath, unpackPath);
-          archivePath = unpackPath;
+          getLog().debug("The cached copy of " + archivePath + " was removed, it is signed again.");
+          return false;
         }
+        pPipeline.signChecksumHelper.materialize(pCandidate.getCopyPath(), archivePath, materialization);
+      }
 
-        SignUtility.verify(pJarSigner, alias, keystore, storepass, archivePath);
+    SignStore signStore = pPipeline.signStore;
+    signStore.recordHit(pCandidate.getStoreKey());
+    SignMetrics metrics = pPipeline.metrics;
+    metrics.count(SignMetrics.COUNTER.valueOf(pCandidate.getType().name()));
 
-        if (pack200)
-          Files.delete(archivePath);
+    if (pCandidate.getType() == SignCandidate.TYPE.NEW)
+      pPipeline.signedCount.incrementAndGet();
+    // a dependency that is signed already is placed as it is
+    if (pCandidate.getType() == SignCandidate.TYPE.SIGNED && pCandidate.isCopied())
+      pPipeline.signChecksumHelper.materialize(pCandidate.getSourcePath(), pCandidate.getArchivePath(),
+                                               materialization);
 
-        pVerifiedCount.incrementAndGet();
-        break;
+    String signedChecksum = null;
+    if (pPipeline.certificateFingerprint != null)
+      signedChecksum = pPipeline.signChecksumHelper.getChecksum(archivePath, repack);
+    if (signedChecksum != null && pCandidate.getType() != SignCandidate.TYPE.NEW &&
+        _isTrusted(pCandidate, signedChecksum, pPipeline))
+    {
+      pPipeline.trustedCount.incrementAndGet();
+      metrics.count(SignMetrics.COUNTER.TRUSTED);
     }
+    else
+    {
+      long start = metrics.start();
+      pPipeline.verifyEngine.verify(archivePath);
+      metrics.record(SignMetrics.PHASE.VERIFY, start, Files.size(archivePath));
+
+      if (signedChecksum != null)
+        signStore.recordVerification(pCandidate.getStoreKey(), signedChecksum, pPipeline.certificateFingerprint);
+      pPipeline.verifiedCount.incrementAndGet();
+    }
+
+    if (pPipeline.compressor != null)
+      _compress(pCandidate, pPipeline);
 
     if (Thread.interrupted())
       throw new InterruptedException();
+    return true;
+  }
+
+  /**
+   * Replaces the signed jar in the jar directory by its compressed form. Compressed jars are cached in the store, so
+   * each signed jar is compressed once. They are created without the lock of the store entry, so compressing doesn't
+   * block other jars: concurrent executions create the same content and move it into place atomically.
+   */
+  private void _compress(SignCandidate pCandidate, Pipeline pPipeline)
+      throws IOException, MojoExecutionException, InterruptedException
+  {
+    Compressor compressor = pPipeline.compressor;
+    SignMetrics metrics = pPipeline.metrics;
+    Path archivePath = pCandidate.getArchivePath();
+    Path compressedPath = pPipeline.signStore.getObjectPath(pCandidate.getStoreKey(), compressor.getType());
+    if (!Files.exists(compressedPath))
+    {
+      Path tempPath = FileUtility.createTempFile(compressedPath);
+      try
+      {
+        long start = metrics.start();
+        compressor.compress(archivePath, tempPath);
+        metrics.record(SignMetrics.PHASE.COMPRESS, start, Files.size(tempPath));
+        if (!compressor.isLossless())
+          _verifyDecompressed(tempPath, pPipeline);
+        FileUtility.move(tempPath, compressedPath);
+      }
+      finally
+      {
+        Files.deleteIfExists(tempPath);
+      }
+    }
+    pPipeline.signChecksumHelper.materialize(compressedPath, compressor.getType().getPath(archivePath),
+                                             materialization);
+    Files.delete(archivePath);
   }
 
-  private boolean _isNewKeyStoreKey(Path pCachePath) throws IOException, MojoExecutionException
+  /**
+   * Verifies that the signature survives compression. This is done once when the compressed jar is created.
+   */
+  private void _verifyDecompressed(Path pCompressedPath, Pipeline pPipeline)
+      throws IOException, MojoExecutionException
   {
-    byte[] digest = SignUtility.getKeyStoreKeyDigest(keystore, alias, storepass, keypass, digester);
-    Path kskcPath = pCachePath.resolve("_key_store_key_digest." + digester.getAlgorithm().toLowerCase());
-    if (Files.exists(kskcPath))
+    SignMetrics metrics = pPipeline.metrics;
+    Path decompressedPath = FileUtility.createTempFile(pCompressedPath);
+    try
     {
-      byte[] bytes = Files.readAllBytes(kskcPath);
-      if (Arrays.equals(digest, bytes))
-        return false;
+      long start = metrics.start();
+      pPipeline.compressor.decompress(pCompressedPath, decompressedPath);
+      metrics.record(SignMetrics.PHASE.DECOMPRESS, start, Files.size(decompressedPath));
+      start = metrics.start();
+      pPipeline.verifyEngine.verify(decompressedPath);
+      metrics.record(SignMetrics.PHASE.VERIFY, start, Files.size(decompressedPath));
+    }
+    finally
+    {
+      Files.deleteIfExists(decompressedPath);
+    }
+  }
+
+  /**
+   * @return whether the jar equals a jar that was verified with the current certificate before.
+   */
+  private boolean _isTrusted(SignCandidate pCandidate, String pSignedChecksum, Pipeline pPipeline)
+  {
+    CacheIndex.Verification verification = pPipeline.signStore.getVerification(pCandidate.getStoreKey());
+    if (verification == null || !verification.getSignedChecksum().equals(pSignedChecksum) ||
+        !verification.getCertificateFingerprint().equals(pPipeline.certificateFingerprint))
+      return false;
+    if (auditAge > 0 && System.currentTimeMillis() - verification.getTime() > TimeUnit.DAYS.toMillis(auditAge))
+      return false;
+    return auditRate <= 0 || ThreadLocalRandom.current().nextInt(100) >= auditRate;
+  }
+
+  /**
+   * @return the fingerprint of the certificate that recorded verifications have to match or <tt>null</tt> if they
+   * aren't trusted.
+   */
+  private String _getTrustedCertificateFingerprint(X509Certificate pCertificate) throws MojoExecutionException
+  {
+    if (!trustVerified)
+      return null;
+    try
+    {
+      pCertificate.checkValidity();
+    }
+    catch (CertificateExpiredException | CertificateNotYetValidException e)
+    {
+      // jars signed with an invalid certificate are verified to report their state
+      return null;
+    }
+    return SigningKey.getCertificateFingerprint(pCertificate);
+  }
+
+  /**
+   * @return the engine of the running sign daemon or <tt>null</tt> if no daemon is used.
+   */
+  private DaemonSignEngine _connectDaemon(Path pCacheRootPath) throws IOException, MojoExecutionException
+  {
+    if (!daemon)
+      return null;
+    if (engine != SignEngine.TYPE.INTERNAL)
+      throw new MojoExecutionException("The sign daemon signs like the INTERNAL engine, so daemon requires engine " +
+                                           "INTERNAL instead of " + engine + ".");
+    DaemonSignEngine daemonSignEngine = DaemonSignEngine.connect(SignDaemon.getDaemonFile(pCacheRootPath, keystore, alias));
+    if (daemonSignEngine == null)
+      getLog().info("No sign daemon is running for alias '" + alias + "', jars are signed in this process.");
+    else if (!daemonSignEngine.isConfiguredFor(SignDaemon.getConfiguration(keystore, storepass, keypass,
+                                                                           SignUtility.getTsas(tsa))))
+    {
+      getLog().warn("The sign daemon for alias '" + alias + "' was started with another keystore version, other " +
+                        "passwords or other TSAs, jars are signed in this process. Restart the daemon to use it " +
+                        "again.");
+      return null;
+    }
+    else
+      getLog().info("Jars are signed by the sign daemon for alias '" + alias + "'.");
+    return daemonSignEngine;
+  }
+
+  /**
+   * @return the compressor of the signed jars or <tt>null</tt> if they aren't compressed.
+   */
+  private Compressor _createCompressor()
+  {
+    Compressor.TYPE type = compression == null && pack200 ? Compressor.TYPE.PACK200 : compression;
+    if (type == Compressor.TYPE.PACK200 && !PackUtility.isAvailable())
+    {
+      getLog().warn("Pack200 is not available in this JVM, jars are compressed with GZIP instead.");
+      type = Compressor.TYPE.GZIP;
+    }
+    if (type == null)
+      return null;
+    switch (type)
+    {
+      case PACK200:
+        return new Pack200Compressor();
+      case GZIP:
+      default:
+        return new GzipCompressor();
     }
-    Files.write(kskcPath, digest);
-    return true;
   }
 
-  private Path _getCachePath() throws IOException
+  private SignEngine _createSignEngine(SignEngine.TYPE pType, SigningKey pSigningKey, TimestampClient pTimestampClient,
+                                       SignMetrics pMetrics)
   {
-    Path cachePath = Paths.get(localRepository.getBasedir()).getParent().resolve("jarsign-cache").resolve(id);
-    return Files.createDirectories(cachePath);
+    switch (pType)
+    {
+      case INTERNAL:
+        return new InternalSignEngine(pSigningKey, pTimestampClient, pMetrics);
+      case JARSIGNER:
+      default:
+        return new JarSignerSignEngine(getLog(), alias, keystore, storepass, keypass, SignUtility.getTsas(tsa),
+                                       pMetrics);
+    }
+  }
+
+  /**
+   * @return all options that influence the signed result of a jar.
+   */
+  private String _getSignOptions()
+  {
+    Map<String, String> manifestEntries = additionalManifestEntries == null ? Collections.<String, String>emptyMap() :
+        additionalManifestEntries;
+    // jars are compressed after signing, pack200 keeps its former value, so the keys of existing stores stay valid
+    return "repack=" + repack + ";pack200=false;manifest=" + new TreeMap<>(manifestEntries);
+  }
+
+  private void _evict(SignStore pSignStore, Collection<SignCandidate> pCandidates)
+      throws IOException, InterruptedException
+  {
+    if (cacheMaxSize <= 0 && cacheMaxAge <= 0)
+      return;
+    Set<String> usedKeys = new HashSet<>();
+    for (SignCandidate candidate : pCandidates)
+      usedKeys.add(candidate.getStoreKey());
+    Set<String> evictedKeys = pSignStore.evict(cacheMaxSize * 1024 * 1024, TimeUnit.DAYS.toMillis(cacheMaxAge),
+                                               usedKeys);
+    if (!evictedKeys.isEmpty())
+      getLog().info(evictedKeys.size() + " signed jars have been removed from the cache.");
+  }
+
+  private void _writeReport(SignMetrics pMetrics, TimestampClient pTimestampClient, Compressor pCompressor,
+                            RemoteCache pRemoteCache, boolean pDaemon) throws IOException
+  {
+    Map<String, Object> properties = new LinkedHashMap<>();
+    properties.put("id", id);
+    properties.put("engine", engine.name());
+    properties.put("checksumAlgorithm", checksumAlgorithm.name());
+    if (pCompressor != null)
+      properties.put("compression", pCompressor.getType().name());
+    if (pRemoteCache != null)
+      properties.put("remoteCache", pRemoteCache.toString());
+    properties.put("daemon", pDaemon);
+    if (pTimestampClient != null)
+      properties.put("tsa", pTimestampClient.getReport());
+    Path reportPath = Paths.get(reportFile);
+    pMetrics.writeReport(reportPath.isAbsolute() ? reportPath : project.getBasedir().toPath().resolve(reportPath),
+                         properties);
   }
 
   private String _normalizeFilePath(String pPath)
@@ -288,4 +1010,234 @@ public class SignMojo extends AbstractMojo
     return pPath.replaceFirst("^~/", System.getProperty("user.home") + "/");
   }
 
-}
\ No newline at end of file
+
+  /**
+   * Streams jars through the stages classify, sign and verify. Each jar moves to the next stage as soon as it is done
+   * with the current one, so signing and verifying overlap. Only new jars pass the sign stage.
+   * <p>
+   * With a remote cache, jars that are missing in the local store pass a download stage after their checksum was
+   * calculated and are classified afterwards. Downloads of all jars run concurrently with the checksums of the others.
+   * Signed jars are uploaded after their verification.
+   */
+  private class Pipeline
+  {
+    private final SignService signService;
+    private final BoundedExecutor classifyExecutor;
+    private final BoundedExecutor signExecutor;
+    private final BoundedExecutor verifyExecutor;
+    private final BoundedExecutor fetchExecutor;
+    private final BoundedExecutor uploadExecutor;
+    private final SignEngine signEngine;
+    private final SignEngine verifyEngine;
+    private final Compressor compressor;
+    private final SignChecksumHelper signChecksumHelper;
+    private final SignChecksumHelper formerChecksumHelper;
+    private final Path cachePath;
+    private final CacheIndex cacheIndex;
+    private final SignStore signStore;
+    private final RemoteCache remoteCache;
+    private final String keyDigest;
+    private final String certificateFingerprint;
+    private final SignMetrics metrics;
+    private final Queue<Future<?>> futures = new ConcurrentLinkedQueue<>();
+    private final Queue<SignCandidate> candidates = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger signedCount = new AtomicInteger();
+    private final AtomicInteger verifiedCount = new AtomicInteger();
+    private final AtomicInteger trustedCount = new AtomicInteger();
+    private final AtomicInteger downloadedCount = new AtomicInteger();
+
+    Pipeline(SignService pSignService, SignEngine pSignEngine, SignEngine pVerifyEngine, Compressor pCompressor,
+             SignChecksumHelper pSignChecksumHelper, SignChecksumHelper pFormerChecksumHelper, Path pCachePath,
+             CacheIndex pCacheIndex, SignStore pSignStore, RemoteCache pRemoteCache, String pKeyDigest,
+             String pCertificateFingerprint, SignMetrics pMetrics)
+    {
+      signService = pSignService;
+      classifyExecutor = pSignService.getClassifyExecutor();
+      signExecutor = pSignService.getSignExecutor();
+      verifyExecutor = pSignService.getVerifyExecutor();
+      fetchExecutor = pSignService.getFetchExecutor();
+      uploadExecutor = pSignService.getUploadExecutor();
+      signEngine = pSignEngine;
+      verifyEngine = pVerifyEngine;
+      compressor = pCompressor;
+      signChecksumHelper = pSignChecksumHelper;
+      formerChecksumHelper = pFormerChecksumHelper;
+      cachePath = pCachePath;
+      cacheIndex = pCacheIndex;
+      signStore = pSignStore;
+      remoteCache = pRemoteCache;
+      keyDigest = pKeyDigest;
+      certificateFingerprint = pCertificateFingerprint;
+      metrics = pMetrics;
+    }
+
+    /**
+     * @param pArchivePath the path of the signed archive.
+     * @param pSourcePath  the file the archive is taken from.
+     */
+    void submit(final Path pArchivePath, final Path pSourcePath) throws InterruptedException
+    {
+      futures.add(classifyExecutor.submit(new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          String checksum = _getChecksum(pArchivePath, pSourcePath, Pipeline.this);
+          if (_isFetchNeeded(checksum, Pipeline.this))
+            _submitFetch(pArchivePath, pSourcePath, checksum);
+          else
+            _submitClassified(_classify(pArchivePath, pSourcePath, checksum, Pipeline.this));
+          return null;
+        }
+      }));
+    }
+
+    /**
+     * Waits till all submitted jars passed the pipeline. Follow-up tasks are queued before the task that submits them
+     * finishes, so the queue is empty only when all tasks are done.
+     */
+    void await() throws MojoExecutionException, InterruptedException
+    {
+      for (Future<?> future = futures.poll(); future != null; future = futures.poll())
+      {
+        try
+        {
+          future.get();
+        }
+        catch (ExecutionException e)
+        {
+          Throwable cause = e.getCause();
+          if (cause instanceof MojoExecutionException)
+            throw (MojoExecutionException) cause;
+          throw new MojoExecutionException(cause.getMessage(), cause);
+        }
+      }
+    }
+
+    /**
+     * Cancels all tasks that are not done yet.
+     */
+    void cancel()
+    {
+      for (Future<?> future = futures.poll(); future != null; future = futures.poll())
+        future.cancel(true);
+    }
+
+    private void _submitFetch(final Path pArchivePath, final Path pSourcePath, final String pChecksum)
+        throws InterruptedException
+    {
+      futures.add(fetchExecutor.submit(new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          _fetch(pArchivePath, pSourcePath, pChecksum, Pipeline.this);
+          _submitClassified(_classify(pArchivePath, pSourcePath, pChecksum, Pipeline.this));
+          return null;
+        }
+      }));
+    }
+
+    private void _submitClassified(SignCandidate pCandidate) throws IOException, InterruptedException
+    {
+      if (pCandidate.getType() == SignCandidate.TYPE.NEW)
+        _submitSign(pCandidate);
+      else
+        _submitVerify(pCandidate);
+    }
+
+    /**
+     * Jars whose store entry is signed by another pipeline already wait for it. They are classified again right after
+     * it, which usually only copies the signed jar.
+     */
+    private void _submitSign(final SignCandidate pCandidate) throws InterruptedException
+    {
+      final String storeKey = pCandidate.getStoreKey();
+      final Callable<Void> signTask = new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          _submitVerify(_sign(pCandidate, Pipeline.this));
+          return null;
+        }
+      };
+      FutureTask<Void> waiter = new FutureTask<>(signTask);
+      if (!signService.beginSigning(storeKey, waiter))
+      {
+        futures.add(waiter);
+        return;
+      }
+      // the waiters are released when the task is done, also if it is cancelled before it started
+      Runnable endSigning = new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          signService.endSigning(storeKey);
+        }
+      };
+      try
+      {
+        futures.add(signExecutor.submit(signTask, endSigning));
+      }
+      catch (InterruptedException | RuntimeException e)
+      {
+        endSigning.run();
+        throw e;
+      }
+    }
+
+    private void _submitVerify(final SignCandidate pCandidate) throws IOException, InterruptedException
+    {
+      cacheIndex.putReference(pCandidate.getReferenceName(), pCandidate.getStoreKey());
+      candidates.add(pCandidate);
+      futures.add(verifyExecutor.submit(new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          if (!_verify(pCandidate, Pipeline.this))
+          {
+            _submitResign(pCandidate);
+            return null;
+          }
+          if (remoteCache != null && remoteCacheUpload && pCandidate.getType() == SignCandidate.TYPE.NEW)
+            _submitUpload(pCandidate);
+          return null;
+        }
+      }));
+    }
+
+    /**
+     * Signs a jar again whose cached copy was removed after it was classified. The jar was admitted to the pipeline
+     * already, so the verify stage doesn't block on the sign stage, which may wait for the verify stage itself.
+     */
+    private void _submitResign(final SignCandidate pCandidate)
+    {
+      futures.add(signExecutor.submitAdmitted(new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          _submitVerify(_sign(pCandidate, Pipeline.this));
+          return null;
+        }
+      }));
+    }
+
+    private void _submitUpload(final SignCandidate pCandidate) throws InterruptedException
+    {
+      futures.add(uploadExecutor.submit(new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          _upload(pCandidate, Pipeline.this);
+          return null;
+        }
+      }));
+    }
+  }
+
+}
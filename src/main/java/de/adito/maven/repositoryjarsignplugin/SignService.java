@@ -0,0 +1,219 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.execution.*;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+
+/**
+ * Services shared by all sign executions of a build. In a multi module build every module that signs uses the same
+ * bounded pool for each stage, the same loaded keys, cache indexes, stores and TSA clients. Jars with the same content
+ * are signed only once, even if several modules ship them at the same time.
+ * <p>
+ * The modules of a parallel build work on copies of the session, so services are kept per execution request.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class SignService
+{
+
+  private static final Map<MavenExecutionRequest, SignService> SERVICES = new WeakHashMap<>();
+
+  private final BoundedExecutor classifyExecutor;
+  private final BoundedExecutor signExecutor;
+  private final BoundedExecutor verifyExecutor;
+  private final BoundedExecutor fetchExecutor;
+  private final BoundedExecutor uploadExecutor;
+  private final Map<String, SigningKey> signingKeys = new HashMap<>();
+  private final Map<String, CacheIndex> cacheIndexes = new HashMap<>();
+  private final Map<String, SignStore> signStores = new HashMap<>();
+  private final Map<String, TimestampClient> timestampClients = new HashMap<>();
+  private final Map<String, RemoteCache> remoteCaches = new HashMap<>();
+  private final Map<String, List<Runnable>> signing = new HashMap<>();
+
+
+  private SignService(int pSignThreads, int pVerifyThreads, int pRemoteCacheThreads)
+  {
+    // every stage can take as many waiting jars as it has threads, so memory and temporary files stay bounded.
+    int availableProcessors = Runtime.getRuntime().availableProcessors();
+    classifyExecutor = new BoundedExecutor(availableProcessors, availableProcessors);
+    signExecutor = new BoundedExecutor(pSignThreads, pSignThreads);
+    verifyExecutor = new BoundedExecutor(pVerifyThreads, pVerifyThreads);
+    fetchExecutor = new BoundedExecutor(pRemoteCacheThreads, pRemoteCacheThreads);
+    uploadExecutor = new BoundedExecutor(pRemoteCacheThreads, pRemoteCacheThreads);
+  }
+
+  /**
+   * @param pSession            the session of the build.
+   * @param pSignThreads        the number of sign threads if the service has to be created.
+   * @param pVerifyThreads      the number of verify threads if the service has to be created.
+   * @param pRemoteCacheThreads the number of download and of upload threads if the service has to be created.
+   * @return the service of the build. It is created by the first execution.
+   */
+  static SignService get(MavenSession pSession, int pSignThreads, int pVerifyThreads, int pRemoteCacheThreads)
+  {
+    synchronized (SERVICES)
+    {
+      SignService signService = SERVICES.get(pSession.getRequest());
+      if (signService == null)
+      {
+        signService = new SignService(pSignThreads, pVerifyThreads, pRemoteCacheThreads);
+        SERVICES.put(pSession.getRequest(), signService);
+      }
+      return signService;
+    }
+  }
+
+  BoundedExecutor getClassifyExecutor()
+  {
+    return classifyExecutor;
+  }
+
+  BoundedExecutor getSignExecutor()
+  {
+    return signExecutor;
+  }
+
+  BoundedExecutor getVerifyExecutor()
+  {
+    return verifyExecutor;
+  }
+
+  /**
+   * @return the executor for downloads from the remote cache. They mostly wait for the network, so they don't take
+   * threads of the other stages.
+   */
+  BoundedExecutor getFetchExecutor()
+  {
+    return fetchExecutor;
+  }
+
+  /**
+   * @return the executor for uploads to the remote cache. Uploads are submitted by the verify stage, which a download
+   * may wait for, so they have their own executor.
+   */
+  BoundedExecutor getUploadExecutor()
+  {
+    return uploadExecutor;
+  }
+
+  /**
+   * @return the key of a keystore alias. The keystore is loaded once per build.
+   */
+  synchronized SigningKey getSigningKey(String pKeystore, String pAlias, String pStorepass, String pKeypass)
+      throws MojoExecutionException
+  {
+    String name = pKeystore + "\n" + pAlias + "\n" + pStorepass + "\n" + pKeypass;
+    SigningKey signingKey = signingKeys.get(name);
+    if (signingKey == null)
+    {
+      signingKey = SigningKey.load(pKeystore, pAlias, pStorepass, pKeypass);
+      signingKeys.put(name, signingKey);
+    }
+    return signingKey;
+  }
+
+  /**
+   * @return the index of a cache id. See {@link CacheIndex#load(Path, String, String)}.
+   */
+  synchronized CacheIndex getCacheIndex(Path pCachePath, String pChecksumPostfix, String pKeyDigest)
+      throws IOException, InterruptedException
+  {
+    String name = pCachePath + "\n" + pKeyDigest;
+    CacheIndex cacheIndex = cacheIndexes.get(name);
+    if (cacheIndex == null)
+    {
+      cacheIndex = CacheIndex.load(pCachePath, pChecksumPostfix, pKeyDigest);
+      cacheIndexes.put(name, cacheIndex);
+    }
+    return cacheIndex;
+  }
+
+  /**
+   * @return the store for the sign options. See {@link SignStore#load(Path, String, String)}.
+   */
+  synchronized SignStore getSignStore(Path pCacheRootPath, String pAlgorithm, String pOptions)
+      throws IOException, InterruptedException
+  {
+    String name = pCacheRootPath + "\n" + pAlgorithm + "\n" + pOptions;
+    SignStore signStore = signStores.get(name);
+    if (signStore == null)
+    {
+      signStore = SignStore.load(pCacheRootPath, pAlgorithm, pOptions);
+      signStores.put(name, signStore);
+    }
+    return signStore;
+  }
+
+  /**
+   * @return the client for the TSAs. See {@link TimestampClient#TimestampClient(List, int, long)}.
+   */
+  synchronized TimestampClient getTimestampClient(List<String> pTsas, int pMaxRequests, long pHedgeDelay)
+  {
+    String name = pTsas + "\n" + pMaxRequests + "\n" + pHedgeDelay;
+    TimestampClient timestampClient = timestampClients.get(name);
+    if (timestampClient == null)
+    {
+      timestampClient = new TimestampClient(pTsas, pMaxRequests, pHedgeDelay);
+      timestampClients.put(name, timestampClient);
+    }
+    return timestampClient;
+  }
+
+  /**
+   * @return the remote cache at a location. See {@link RemoteCache#create(String)}. Failures are counted per build.
+   */
+  synchronized RemoteCache getRemoteCache(String pLocation)
+  {
+    RemoteCache remoteCache = remoteCaches.get(pLocation);
+    if (remoteCache == null)
+    {
+      remoteCache = RemoteCache.create(pLocation);
+      remoteCaches.put(pLocation, remoteCache);
+    }
+    return remoteCache;
+  }
+
+  /**
+   * Registers that a store entry is going to be signed.
+   *
+   * @param pStoreKey the key of the store entry.
+   * @param pWaiter   runs in the sign stage after the entry was signed if another execution signs it already.
+   * @return <tt>true</tt> if the caller has to sign the entry and call {@link #endSigning(String)} when the sign task
+   * is done or cancelled, <tt>false</tt> if the waiter was registered.
+   */
+  synchronized boolean beginSigning(String pStoreKey, Runnable pWaiter)
+  {
+    List<Runnable> waiters = signing.get(pStoreKey);
+    if (waiters == null)
+    {
+      signing.put(pStoreKey, new ArrayList<Runnable>());
+      return true;
+    }
+    waiters.add(pWaiter);
+    return false;
+  }
+
+  /**
+   * Submits the waiters of a store entry that was signed, failed to be signed or whose sign task was cancelled. They
+   * were admitted to the sign stage already, so they are submitted without blocking, and they don't run in the thread
+   * of the former signer, which may belong to a failed execution.
+   *
+   * @param pStoreKey the key of the store entry.
+   */
+  void endSigning(String pStoreKey)
+  {
+    List<Runnable> waiters;
+    synchronized (this)
+    {
+      waiters = signing.remove(pStoreKey);
+    }
+    if (waiters != null)
+      for (Runnable waiter : waiters)
+        signExecutor.submitAdmitted(Executors.callable(waiter));
+  }
+
+}
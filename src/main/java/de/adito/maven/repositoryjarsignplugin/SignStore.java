@@ -0,0 +1,307 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.codehaus.plexus.digest.Hex;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+/**
+ * Content addressed store of signed jars that is shared by all cache ids. Every signed jar is stored once under a key
+ * that is derived from the checksum of the unsigned input, the digest of the signing key and the sign options. The
+ * caches of the ids only hold references to these keys.
+ * <p>
+ * The index of the store maps each key to the checksums of input and result. The checksum of the result is indexed,
+ * too, so jars that are already signed are recognized no matter where they come from. The store is bounded by evicting
+ * the entries that were used least recently.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class SignStore
+{
+
+  static final String DIRECTORY_NAME = "_store";
+  private static final String OBJECT_POSTFIX = ".jar";
+
+  private Path storePath;
+  private CacheIndex index;
+  private String algorithm;
+  private String options;
+
+
+  private SignStore(Path pStorePath, CacheIndex pIndex, String pAlgorithm, String pOptions)
+  {
+    storePath = pStorePath;
+    index = pIndex;
+    algorithm = pAlgorithm;
+    options = pOptions;
+  }
+
+  /**
+   * @param pCacheRootPath the directory that contains the caches of all ids.
+   * @param pAlgorithm     the algorithm used for keys.
+   * @param pOptions       all options that influence the signed result. May be <tt>null</tt> if no keys are derived.
+   * @return the loaded store.
+   */
+  static SignStore load(Path pCacheRootPath, String pAlgorithm, String pOptions) throws IOException, InterruptedException
+  {
+    Path storePath = Files.createDirectories(pCacheRootPath.resolve(DIRECTORY_NAME));
+    return new SignStore(storePath, CacheIndex.load(storePath, null, null), pAlgorithm, pOptions);
+  }
+
+  /**
+   * @param pChecksum  the checksum of a jar.
+   * @param pKeyDigest the digest of the signing key.
+   * @return the key the signed result of the jar is stored with.
+   */
+  String getKey(String pChecksum, String pKeyDigest) throws IOException
+  {
+    try
+    {
+      MessageDigest messageDigest = MessageDigest.getInstance(algorithm);
+      messageDigest.update((pChecksum + "\n" + pKeyDigest + "\n" + options).getBytes(StandardCharsets.UTF_8));
+      return Hex.encode(messageDigest.digest());
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new IOException("Failed to create store key with " + algorithm + ".", e);
+    }
+  }
+
+  /**
+   * @param pKey a store key.
+   * @return the path that identifies the stored entry for locking.
+   */
+  Path getEntryPath(String pKey)
+  {
+    return storePath.resolve(pKey + OBJECT_POSTFIX);
+  }
+
+  /**
+   * @param pKey a store key.
+   * @return the path of the stored signed jar.
+   */
+  Path getObjectPath(String pKey)
+  {
+    return getEntryPath(pKey);
+  }
+
+  /**
+   * Compressed jars are kept next to the signed jar they were created from and are removed together with it.
+   *
+   * @param pKey         a store key.
+   * @param pCompression the compression.
+   * @return the path of the stored compressed jar.
+   */
+  Path getObjectPath(String pKey, Compressor.TYPE pCompression)
+  {
+    return pCompression.getPath(getEntryPath(pKey));
+  }
+
+  /**
+   * @param pKey a store key.
+   * @return the indexed entry for the key or <tt>null</tt>. For keys of signed results the entry of their input is
+   * returned.
+   */
+  CacheIndex.Entry get(String pKey) throws IOException
+  {
+    return index.get(pKey);
+  }
+
+  /**
+   * Indexes a signed jar. The caller has to hold the lock of the entry and has to have stored the jar already.
+   *
+   * @param pKey   the store key.
+   * @param pEntry the checksums of input and result.
+   */
+  void put(String pKey, CacheIndex.Entry pEntry) throws IOException, InterruptedException
+  {
+    index.put(pKey, pEntry);
+    index.put(getKey(pEntry.getSignedChecksum(), pEntry.getKeyDigest()), pEntry);
+  }
+
+  /**
+   * Indexes the checksum of a signed jar only, for example if the checksum was calculated with another algorithm. The
+   * caller has to hold the lock of the entry.
+   *
+   * @param pEntry the checksums of input and result.
+   */
+  void putSigned(CacheIndex.Entry pEntry) throws IOException, InterruptedException
+  {
+    index.put(getKey(pEntry.getSignedChecksum(), pEntry.getKeyDigest()), pEntry);
+  }
+
+  /**
+   * Records that an entry was used. Hits are written by {@link #flush()}.
+   *
+   * @param pKey the store key.
+   */
+  void recordHit(String pKey)
+  {
+    index.putHit(pKey, System.currentTimeMillis());
+  }
+
+  /**
+   * @param pKey a store key.
+   * @return the last successful verification of the stored jar or <tt>null</tt>.
+   */
+  CacheIndex.Verification getVerification(String pKey)
+  {
+    return index.getVerification(pKey);
+  }
+
+  /**
+   * Records a successful verification of a stored jar. Verifications are written by {@link #flush()}.
+   *
+   * @param pKey                    the store key.
+   * @param pSignedChecksum         the checksum of the verified jar.
+   * @param pCertificateFingerprint the fingerprint of the certificate the jar was verified with.
+   */
+  void recordVerification(String pKey, String pSignedChecksum, String pCertificateFingerprint)
+  {
+    index.putVerification(pKey, new CacheIndex.Verification(pSignedChecksum, pCertificateFingerprint,
+                                                            System.currentTimeMillis()));
+  }
+
+  void flush() throws IOException, InterruptedException
+  {
+    index.flush();
+  }
+
+  /**
+   * Removes the least recently used entries until the store fits the budget.
+   *
+   * @param pMaxSize  the maximum size of all stored jars in bytes. Values below one don't limit the size.
+   * @param pMaxAge   the maximum time in milliseconds since an entry was used last. Values below one don't limit the
+   *                  age.
+   * @param pKeepKeys keys that must not be removed.
+   * @return the keys of the removed entries.
+   */
+  Set<String> evict(long pMaxSize, long pMaxAge, Collection<String> pKeepKeys) throws IOException, InterruptedException
+  {
+    final Map<String, Long> lastHits = new HashMap<>();
+    Map<String, Long> sizes = new HashMap<>();
+    long totalSize = 0;
+    for (String key : index.getEntries().keySet())
+    {
+      long size = 0;
+      long lastModified = 0;
+      for (Path objectPath : _getObjectPaths(key))
+        if (Files.exists(objectPath))
+        {
+          size += Files.size(objectPath);
+          lastModified = Math.max(lastModified, Files.getLastModifiedTime(objectPath).toMillis());
+        }
+      if (lastModified == 0)
+        continue;
+      Long lastHit = index.getHit(key);
+      lastHits.put(key, lastHit == null ? lastModified : lastHit);
+      sizes.put(key, size);
+      totalSize += size;
+    }
+
+    List<String> keys = new ArrayList<>(lastHits.keySet());
+    Collections.sort(keys, new Comparator<String>()
+    {
+      @Override
+      public int compare(String pKey1, String pKey2)
+      {
+        return Long.compare(lastHits.get(pKey1), lastHits.get(pKey2));
+      }
+    });
+
+    long now = System.currentTimeMillis();
+    Set<String> evictedKeys = new HashSet<>();
+    for (String key : keys)
+    {
+      boolean tooOld = pMaxAge > 0 && now - lastHits.get(key) > pMaxAge;
+      boolean tooLarge = pMaxSize > 0 && totalSize > pMaxSize;
+      if (!tooOld && !tooLarge)
+        break;
+      if (pKeepKeys.contains(key))
+        continue;
+      _delete(key);
+      totalSize -= sizes.get(key);
+      evictedKeys.add(key);
+    }
+    index.remove(evictedKeys);
+    return evictedKeys;
+  }
+
+  /**
+   * Removes all entries that are neither referenced nor indexed as the signed result of a referenced entry.
+   *
+   * @param pReferencedKeys the keys referenced by the caches of all ids.
+   * @return the number of removed entries.
+   */
+  int removeUnreferenced(Set<String> pReferencedKeys) throws IOException, InterruptedException
+  {
+    Map<String, CacheIndex.Entry> entries = index.getEntries();
+    Set<String> referencedChecksums = new HashSet<>();
+    for (String key : pReferencedKeys)
+    {
+      CacheIndex.Entry entry = entries.get(key);
+      if (entry != null)
+        referencedChecksums.add(entry.getChecksum());
+    }
+
+    Set<String> removedKeys = new HashSet<>();
+    for (Map.Entry<String, CacheIndex.Entry> entry : entries.entrySet())
+    {
+      if (pReferencedKeys.contains(entry.getKey()) || referencedChecksums.contains(entry.getValue().getChecksum()))
+        continue;
+      _delete(entry.getKey());
+      removedKeys.add(entry.getKey());
+    }
+    index.remove(removedKeys);
+    return removedKeys.size();
+  }
+
+  /**
+   * @return the keys of all indexed entries.
+   */
+  Set<String> getKeys() throws IOException
+  {
+    return index.getEntries().keySet();
+  }
+
+  /**
+   * @return the names of all files that belong to indexed entries.
+   */
+  Set<String> getFileNames() throws IOException
+  {
+    Set<String> fileNames = new HashSet<>();
+    fileNames.add(CacheIndex.FILE_NAME);
+    for (String key : getKeys())
+      for (Path objectPath : _getObjectPaths(key))
+        if (Files.exists(objectPath))
+          fileNames.add(objectPath.getFileName().toString());
+    return fileNames;
+  }
+
+  Path getStorePath()
+  {
+    return storePath;
+  }
+
+  private void _delete(String pKey) throws IOException, InterruptedException
+  {
+    try (CacheLock ignored = CacheLock.lock(getEntryPath(pKey)))
+    {
+      for (Path objectPath : _getObjectPaths(pKey))
+        Files.deleteIfExists(objectPath);
+    }
+  }
+
+  private List<Path> _getObjectPaths(String pKey)
+  {
+    List<Path> objectPaths = new ArrayList<>();
+    objectPaths.add(getObjectPath(pKey));
+    for (Compressor.TYPE compression : Compressor.TYPE.values())
+      objectPaths.add(getObjectPath(pKey, compression));
+    return objectPaths;
+  }
+
+}
@@ -1,21 +1,17 @@
 package de.adito.maven.repositoryjarsignplugin;
 
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.plugin.MojoExecutionException;
-import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.shared.jarsigner.*;
 import org.apache.maven.shared.utils.cli.CommandLineException;
 import org.apache.maven.shared.utils.cli.javatool.*;
-import org.codehaus.plexus.digest.*;
-import org.zeroturnaround.zip.ZipUtil;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.security.*;
-import java.security.cert.CertificateException;
 import java.util.*;
-import java.util.jar.*;
 
 /**
  * Utility for signing.
@@ -29,86 +25,152 @@ public class SignUtility
   {
   }
 
-  static Set<Path> getWorkPaths(MavenProject pProject, String pJarDirectory, String pTypes) throws IOException
+  /**
+   * @param pLocalRepository the local repository.
+   * @return the directory that contains the store and the caches of all ids.
+   */
+  static Path getCacheRootPath(ArtifactRepository pLocalRepository) throws IOException
+  {
+    return Files.createDirectories(Paths.get(pLocalRepository.getBasedir()).getParent().resolve("jarsign-cache"));
+  }
+
+  /**
+   * @param pProject      the project.
+   * @param pJarDirectory the configured jar directory.
+   * @return the absolute path of the jar directory.
+   */
+  static Path getJarDirectoryPath(MavenProject pProject, String pJarDirectory)
   {
     Path path = Paths.get(pJarDirectory);
-    if (!path.isAbsolute())
-      path = pProject.getBasedir().toPath().resolve(path);
+    return path.isAbsolute() ? path : pProject.getBasedir().toPath().resolve(path);
+  }
 
-    final PathMatcher matcher = path.getFileSystem().getPathMatcher("glob:**.{" + pTypes + "}");
-    final Set<Path> workFiles = new HashSet<>();
+  /**
+   * @param pTsa the configured TSA urls separated by commas. May be <tt>null</tt>.
+   * @return the TSA urls.
+   */
+  static List<String> getTsas(String pTsa)
+  {
+    List<String> tsas = new ArrayList<>();
+    if (pTsa != null)
+      for (String url : pTsa.split(","))
+        if (!url.trim().isEmpty())
+          tsas.add(url.trim());
+    return tsas;
+  }
 
-    if (Files.exists(path))
+  /**
+   * @param pProject       the project with resolved dependencies.
+   * @param pJarDirectory  the directory the signed dependencies are written to.
+   * @param pScopes        a comma separated string with the scopes of the dependencies that shall be signed.
+   * @param pTypes         a comma separated string with all extensions that shall be signed.
+   * @return the files in the local repository by the paths of the signed dependencies in the jar directory, ordered
+   * largest first.
+   */
+  static Map<Path, Path> getDependencyPaths(MavenProject pProject, String pJarDirectory, String pScopes, String pTypes)
+  {
+    Path path = getJarDirectoryPath(pProject, pJarDirectory);
+    List<String> scopes = Arrays.asList(pScopes.split("\\s*,\\s*"));
+    List<String> types = Arrays.asList(pTypes.split("\\s*,\\s*"));
+    Map<Path, Path> dependencyPaths = new LinkedHashMap<>();
+    for (Artifact artifact : pProject.getArtifacts())
     {
-      Files.walkFileTree(path, new SimpleFileVisitor<Path>()
-      {
-        @Override
-        public FileVisitResult visitFile(Path pFilePath, BasicFileAttributes attrs) throws IOException
-        {
-          FileVisitResult visitResult = super.visitFile(pFilePath, attrs);
-          if (matcher.matches(pFilePath))
-            workFiles.add(pFilePath);
-          return visitResult;
-        }
-      });
+      File file = artifact.getFile();
+      if (file == null || !file.isFile() || !scopes.contains(artifact.getScope()))
+        continue;
+      String fileName = file.getName();
+      if (!types.contains(fileName.substring(fileName.lastIndexOf('.') + 1)))
+        continue;
+      Path targetPath = path.resolve(fileName);
+      // artifacts of different groups may have the same file name
+      if (dependencyPaths.containsKey(targetPath))
+        targetPath = path.resolve(artifact.getGroupId() + "." + fileName);
+      dependencyPaths.put(targetPath, file.toPath());
     }
 
-    return workFiles;
+    // largest first, like the jars of the jar directory
+    List<Map.Entry<Path, Path>> entries = new ArrayList<>(dependencyPaths.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<Path, Path>>()
+    {
+      @Override
+      public int compare(Map.Entry<Path, Path> pEntry1, Map.Entry<Path, Path> pEntry2)
+      {
+        return Long.compare(pEntry2.getValue().toFile().length(), pEntry1.getValue().toFile().length());
+      }
+    });
+    Map<Path, Path> orderedPaths = new LinkedHashMap<>();
+    for (Map.Entry<Path, Path> entry : entries)
+      orderedPaths.put(entry.getKey(), entry.getValue());
+    return orderedPaths;
   }
 
-  static byte[] getKeyStoreKeyDigest(String pKeystore, String pAlias, String pStorepass, String pKeypass, Digester pDigester)
-      throws MojoExecutionException
+  /**
+   * @param pName the name of a zip entry.
+   * @return whether the entry is a signature file or a signature block.
+   */
+  static boolean isSignatureFile(String pName)
   {
-    try
+    String name = pName.toUpperCase(Locale.ENGLISH);
+    if (!name.startsWith("META-INF/") || name.indexOf('/', "META-INF/".length()) != -1)
+      return false;
+    return name.endsWith(".SF") || name.endsWith(".DSA") || name.endsWith(".RSA") || name.endsWith(".EC") ||
+        name.startsWith("META-INF/SIG-");
+  }
+
+  /**
+   * Splits a serialized manifest into its sections the way they are digested for signature files.
+   *
+   * @param pManifest the manifest bytes.
+   * @return the raw bytes of each section by entry name. The main section is mapped to <tt>null</tt>.
+   */
+  static Map<String, byte[]> getManifestSections(byte[] pManifest)
+  {
+    Map<String, byte[]> sections = new LinkedHashMap<>();
+    int sectionStart = 0;
+    int pos = 0;
+    while (pos < pManifest.length)
     {
-      try (InputStream ksis = Files.newInputStream(Paths.get(pKeystore)))
+      int lineEnd = pos;
+      while (lineEnd < pManifest.length && pManifest[lineEnd] != '\n')
+        lineEnd++;
+      int next = Math.min(lineEnd + 1, pManifest.length);
+      boolean emptyLine = lineEnd == pos || (lineEnd == pos + 1 && pManifest[pos] == '\r');
+      if (emptyLine)
       {
-        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
-        keyStore.load(ksis, pStorepass.toCharArray());
-        Key key = keyStore.getKey(pAlias, pKeypass.toCharArray());
-
-
-        MessageDigest md = MessageDigest.getInstance(pDigester.getAlgorithm());
-        md.reset();
-        byte[] result = Hex.encode(md.digest(key.getEncoded())).getBytes();
-        md.reset();
-        return result;
+        if (pos > sectionStart)
+          sections.put(_getSectionName(pManifest, sectionStart), Arrays.copyOfRange(pManifest, sectionStart, next));
+        sectionStart = next;
       }
+      pos = next;
     }
-    catch (IOException | UnrecoverableKeyException | CertificateException | NoSuchAlgorithmException | KeyStoreException e)
-    {
-      throw new MojoExecutionException("Could not read key for signing.", e);
-    }
+    if (sectionStart < pManifest.length)
+      sections.put(_getSectionName(pManifest, sectionStart), Arrays.copyOfRange(pManifest, sectionStart, pManifest.length));
+    return sections;
   }
 
-  static void updateManifest(Log pLogger, Map<String, String> pAdditionalManifestEntries, Path pPath) throws IOException
+  private static String _getSectionName(byte[] pManifest, int pSectionStart)
   {
-    String manifestPath = "META-INF/MANIFEST.MF";
-
-    Manifest manifest;
-    byte[] zipContent = ZipUtil.unpackEntry(pPath.toFile(), manifestPath);
-    if (zipContent == null)
-      manifest = new Manifest();
-    else
-      try (ByteArrayInputStream inputStream = new ByteArrayInputStream(zipContent))
+    if (pSectionStart == 0)
+      return null;
+    ByteArrayOutputStream name = new ByteArrayOutputStream();
+    int pos = pSectionStart + "Name: ".length();
+    while (pos < pManifest.length)
+    {
+      byte b = pManifest[pos];
+      if (b == '\r' || b == '\n')
       {
-        manifest = new Manifest(inputStream);
+        pos += b == '\r' && pos + 1 < pManifest.length && pManifest[pos + 1] == '\n' ? 2 : 1;
+        // continuation lines start with a space
+        if (pos >= pManifest.length || pManifest[pos] != ' ')
+          break;
       }
-
-    Attributes mainAttributes = manifest.getMainAttributes();
-    if (pAdditionalManifestEntries != null)
-      for (Map.Entry<String, String> entry : pAdditionalManifestEntries.entrySet())
-        mainAttributes.putValue(entry.getKey(), entry.getValue());
-
-    try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream())
-    {
-      manifest.write(outputStream);
-      ZipUtil.replaceEntry(pPath.toFile(), manifestPath, outputStream.toByteArray());
-      pLogger.info("Updated manifest for " + pPath + ".");
+      else
+        name.write(b);
+      pos++;
     }
+    return new String(name.toByteArray(), StandardCharsets.UTF_8);
   }
 
-
   static void sign(DefaultJarSigner pJarSigner, String pAlias, String pKeystore, String pStorepass,
                    String pKeypass, String pTsa, Path pArchivePath)
       throws CommandLineException, JavaToolException, MojoExecutionException
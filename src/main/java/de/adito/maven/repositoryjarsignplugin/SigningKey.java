@@ -0,0 +1,149 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.digest.Hex;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.security.cert.*;
+import java.security.cert.Certificate;
+import java.util.*;
+import javax.net.ssl.*;
+
+/**
+ * The private key and certificate chain of a keystore alias. The keystore is read once so that all signing and
+ * verifying of a run can share the key. Like jarsigner, the certificates of the keystore and the default trust store of
+ * the JVM are trusted when certificate chains of signatures and time stamps are verified.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class SigningKey
+{
+
+  private String alias;
+  private PrivateKey privateKey;
+  private List<X509Certificate> certificateChain;
+  private Set<X509Certificate> trustedCertificates;
+
+
+  private SigningKey(String pAlias, PrivateKey pPrivateKey, List<X509Certificate> pCertificateChain,
+                     Set<X509Certificate> pTrustedCertificates)
+  {
+    alias = pAlias;
+    privateKey = pPrivateKey;
+    certificateChain = pCertificateChain;
+    trustedCertificates = pTrustedCertificates;
+  }
+
+  static SigningKey load(String pKeystore, String pAlias, String pStorepass, String pKeypass) throws MojoExecutionException
+  {
+    try (InputStream ksis = Files.newInputStream(Paths.get(pKeystore)))
+    {
+      KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      keyStore.load(ksis, pStorepass.toCharArray());
+      Key key = keyStore.getKey(pAlias, (pKeypass == null ? pStorepass : pKeypass).toCharArray());
+      if (!(key instanceof PrivateKey))
+        throw new MojoExecutionException("No private key for alias '" + pAlias + "' found in " + pKeystore + ".");
+
+      List<X509Certificate> chain = new ArrayList<>();
+      Certificate[] certificates = keyStore.getCertificateChain(pAlias);
+      if (certificates != null)
+        for (Certificate certificate : certificates)
+          chain.add((X509Certificate) certificate);
+      if (chain.isEmpty())
+        throw new MojoExecutionException("No certificate chain for alias '" + pAlias + "' found in " + pKeystore + ".");
+
+      return new SigningKey(pAlias, (PrivateKey) key, Collections.unmodifiableList(chain),
+                            Collections.unmodifiableSet(_getTrustedCertificates(keyStore)));
+    }
+    catch (IOException | UnrecoverableKeyException | CertificateException | NoSuchAlgorithmException | KeyStoreException e)
+    {
+      throw new MojoExecutionException("Could not read key for signing.", e);
+    }
+  }
+
+  String getAlias()
+  {
+    return alias;
+  }
+
+  PrivateKey getPrivateKey()
+  {
+    return privateKey;
+  }
+
+  X509Certificate getCertificate()
+  {
+    return certificateChain.get(0);
+  }
+
+  List<X509Certificate> getCertificateChain()
+  {
+    return certificateChain;
+  }
+
+  /**
+   * @return the trust anchors for certificate chains: the trusted certificates of the keystore, the roots of its
+   * certificate chains and the certificates of the default trust store.
+   */
+  Set<X509Certificate> getTrustedCertificates()
+  {
+    return trustedCertificates;
+  }
+
+  /**
+   * @param pAlgorithm the digest algorithm.
+   * @return the hex encoded digest of the encoded private key.
+   */
+  byte[] getDigest(String pAlgorithm) throws MojoExecutionException
+  {
+    try
+    {
+      MessageDigest md = MessageDigest.getInstance(pAlgorithm);
+      return Hex.encode(md.digest(privateKey.getEncoded())).getBytes();
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new MojoExecutionException("Could not read key for signing.", e);
+    }
+  }
+
+  /**
+   * @param pCertificate a certificate.
+   * @return the hex encoded SHA-256 digest of the encoded certificate.
+   */
+  static String getCertificateFingerprint(X509Certificate pCertificate) throws MojoExecutionException
+  {
+    try
+    {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      return Hex.encode(md.digest(pCertificate.getEncoded()));
+    }
+    catch (NoSuchAlgorithmException | CertificateEncodingException e)
+    {
+      throw new MojoExecutionException("Could not read certificate for signing.", e);
+    }
+  }
+
+  private static Set<X509Certificate> _getTrustedCertificates(KeyStore pKeyStore)
+      throws KeyStoreException, NoSuchAlgorithmException
+  {
+    Set<X509Certificate> trusted = new HashSet<>();
+    for (String alias : Collections.list(pKeyStore.aliases()))
+    {
+      Certificate[] chain = pKeyStore.getCertificateChain(alias);
+      Certificate certificate = chain != null && chain.length > 0 ? chain[chain.length - 1] :
+          pKeyStore.isCertificateEntry(alias) ? pKeyStore.getCertificate(alias) : null;
+      if (certificate instanceof X509Certificate)
+        trusted.add((X509Certificate) certificate);
+    }
+    TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    trustManagerFactory.init((KeyStore) null);
+    for (TrustManager trustManager : trustManagerFactory.getTrustManagers())
+      if (trustManager instanceof X509TrustManager)
+        trusted.addAll(Arrays.asList(((X509TrustManager) trustManager).getAcceptedIssuers()));
+    return trusted;
+  }
+
+}
@@ -0,0 +1,362 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.tsp.*;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Requests RFC 3161 time stamp tokens from one or more time stamping authorities. The client is shared by all sign
+ * threads. Connections are kept alive and reused, the number of requests in flight is limited and the latency of every
+ * TSA is recorded. Requests go to the fastest TSA first. When it doesn't answer within the hedge delay the same request
+ * is sent to the next TSA as well and the first valid token wins. Failed requests are repeated at the next TSA.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class TimestampClient
+{
+
+  private static final int TIMEOUT = 30000;
+  /**
+   * The hedge delay as long as the latency of a TSA is unknown.
+   */
+  private static final long INITIAL_HEDGE_DELAY = 5000;
+  private static final long MIN_HEDGE_DELAY = 500;
+
+  private List<Authority> authorities;
+  private Semaphore requests;
+  private long hedgeDelay;
+  private ExecutorService executorService;
+  private SecureRandom random = new SecureRandom();
+
+
+  /**
+   * @param pTsas        the urls of the time stamping authorities in the order of preference.
+   * @param pMaxRequests the maximum number of requests in flight. Values below one don't limit the requests.
+   * @param pHedgeDelay  the time in milliseconds after which a request is sent to the next TSA as well. Values below
+   *                     one derive the delay from the recorded latency of the TSA.
+   */
+  TimestampClient(List<String> pTsas, int pMaxRequests, long pHedgeDelay)
+  {
+    authorities = new ArrayList<>();
+    for (String tsa : pTsas)
+      authorities.add(new Authority(tsa));
+    requests = new Semaphore(pMaxRequests > 0 ? pMaxRequests : Integer.MAX_VALUE);
+    hedgeDelay = pHedgeDelay;
+    executorService = Executors.newCachedThreadPool(new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(Runnable pRunnable)
+      {
+        // the client isn't closed, idle threads end by themselves and must not keep the JVM alive
+        Thread thread = new Thread(pRunnable, "tsa-request");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * @param pSignature the signature that shall be time stamped.
+   * @return the DER encoded time stamp token.
+   */
+  byte[] timestamp(byte[] pSignature) throws IOException, MojoExecutionException
+  {
+    byte[] digest;
+    try
+    {
+      digest = MessageDigest.getInstance("SHA-256").digest(pSignature);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new MojoExecutionException("Time stamping failed.", e);
+    }
+
+    List<Authority> orderedAuthorities = _getOrderedAuthorities();
+    // a single TSA gets a second chance, too
+    int maxAttempts = Math.max(2, orderedAuthorities.size());
+    CompletionService<byte[]> completionService = new ExecutorCompletionService<>(executorService);
+    List<Future<byte[]>> futures = new ArrayList<>();
+    Exception failure = null;
+    try
+    {
+      futures.add(completionService.submit(new Request(orderedAuthorities.get(0), digest)));
+      int running = 1;
+      while (running > 0)
+      {
+        Future<byte[]> future;
+        if (futures.size() < maxAttempts)
+          future = completionService.poll(_getHedgeDelay(orderedAuthorities.get(0)), TimeUnit.MILLISECONDS);
+        else
+          future = completionService.take();
+
+        if (future == null)
+        {
+          Authority authority = orderedAuthorities.get(futures.size() % orderedAuthorities.size());
+          futures.add(completionService.submit(new Request(authority, digest)));
+          running++;
+          continue;
+        }
+
+        running--;
+        try
+        {
+          return future.get();
+        }
+        catch (ExecutionException e)
+        {
+          failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+          if (running == 0 && futures.size() < maxAttempts)
+          {
+            Authority authority = orderedAuthorities.get(futures.size() % orderedAuthorities.size());
+            futures.add(completionService.submit(new Request(authority, digest)));
+            running++;
+          }
+        }
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Time stamping was interrupted.");
+    }
+    finally
+    {
+      for (Future<byte[]> future : futures)
+        future.cancel(true);
+    }
+
+    if (failure instanceof IOException)
+      throw (IOException) failure;
+    if (failure instanceof MojoExecutionException)
+      throw (MojoExecutionException) failure;
+    throw new MojoExecutionException("Time stamping failed.", failure);
+  }
+
+  /**
+   * @return a line for each TSA with the number of requests, failures and the average latency.
+   */
+  List<String> getStatistics()
+  {
+    List<String> statistics = new ArrayList<>();
+    for (Authority authority : authorities)
+      statistics.add(authority.toString());
+    return statistics;
+  }
+
+  /**
+   * @return the url, the number of requests and failures and the average latency of each TSA.
+   */
+  List<Map<String, Object>> getReport()
+  {
+    List<Map<String, Object>> report = new ArrayList<>();
+    for (Authority authority : authorities)
+      report.add(authority.getReport());
+    return report;
+  }
+
+  /**
+   * @return the authorities ordered by their recorded latency. Authorities that failed last are tried last.
+   */
+  private List<Authority> _getOrderedAuthorities()
+  {
+    // scores change concurrently, so they are taken once before sorting
+    final Map<Authority, Long> scores = new HashMap<>();
+    for (Authority authority : authorities)
+      scores.put(authority, authority.getScore());
+    List<Authority> orderedAuthorities = new ArrayList<>(authorities);
+    Collections.sort(orderedAuthorities, new Comparator<Authority>()
+    {
+      @Override
+      public int compare(Authority pAuthority1, Authority pAuthority2)
+      {
+        return Long.compare(scores.get(pAuthority1), scores.get(pAuthority2));
+      }
+    });
+    return orderedAuthorities;
+  }
+
+  private long _getHedgeDelay(Authority pAuthority)
+  {
+    if (hedgeDelay > 0)
+      return hedgeDelay;
+    long latency = pAuthority.getLatency();
+    return latency < 0 ? INITIAL_HEDGE_DELAY : Math.max(MIN_HEDGE_DELAY, 2 * latency);
+  }
+
+
+  /**
+   * A time stamping authority and its recorded latency.
+   */
+  private static class Authority
+  {
+    private static final double WEIGHT = 0.3;
+
+    private final String tsa;
+    private int requestCount;
+    private int failureCount;
+    private int consecutiveFailureCount;
+    private double latency = -1;
+
+    Authority(String pTsa)
+    {
+      tsa = pTsa;
+    }
+
+    synchronized void recordSuccess(long pLatency)
+    {
+      requestCount++;
+      consecutiveFailureCount = 0;
+      latency = latency < 0 ? pLatency : WEIGHT * pLatency + (1 - WEIGHT) * latency;
+    }
+
+    synchronized void recordFailure()
+    {
+      requestCount++;
+      failureCount++;
+      consecutiveFailureCount++;
+    }
+
+    /**
+     * @return the weighted average latency in milliseconds or <tt>-1</tt> if no request succeeded yet.
+     */
+    synchronized long getLatency()
+    {
+      return Math.round(latency);
+    }
+
+    /**
+     * @return the expected time a request takes. Every failure in a row counts as a timeout.
+     */
+    synchronized long getScore()
+    {
+      return Math.max(0, Math.round(latency)) + (long) consecutiveFailureCount * TIMEOUT;
+    }
+
+    synchronized Map<String, Object> getReport()
+    {
+      Map<String, Object> report = new LinkedHashMap<>();
+      report.put("url", tsa);
+      report.put("requests", requestCount);
+      report.put("failures", failureCount);
+      report.put("latencyMillis", latency < 0 ? null : Math.round(latency));
+      return report;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+      return tsa + ": " + requestCount + " requests, " + failureCount + " failed, " +
+          (latency < 0 ? "no latency" : Math.round(latency) + " ms latency") + ".";
+    }
+  }
+
+  /**
+   * Requests a token for one digest from one authority.
+   */
+  private class Request implements Callable<byte[]>
+  {
+    private final Authority authority;
+    private final byte[] digest;
+
+    Request(Authority pAuthority, byte[] pDigest)
+    {
+      authority = pAuthority;
+      digest = pDigest;
+    }
+
+    @Override
+    public byte[] call() throws IOException, MojoExecutionException, InterruptedException
+    {
+      requests.acquire();
+      try
+      {
+        long start = System.nanoTime();
+        byte[] token = _request();
+        authority.recordSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return token;
+      }
+      catch (IOException | MojoExecutionException e)
+      {
+        authority.recordFailure();
+        throw e;
+      }
+      finally
+      {
+        requests.release();
+      }
+    }
+
+    private byte[] _request() throws IOException, MojoExecutionException
+    {
+      try
+      {
+        TimeStampRequestGenerator requestGenerator = new TimeStampRequestGenerator();
+        requestGenerator.setCertReq(true);
+        TimeStampRequest request = requestGenerator.generate(NISTObjectIdentifiers.id_sha256, digest,
+                                                             new BigInteger(64, random));
+
+        TimeStampResponse response = new TimeStampResponse(_post(request.getEncoded()));
+        response.validate(request);
+        TimeStampToken token = response.getTimeStampToken();
+        if (token == null)
+          throw new MojoExecutionException("Time stamping failed at " + authority.tsa + ": " + response.getStatusString());
+        return token.getEncoded();
+      }
+      catch (TSPException e)
+      {
+        throw new MojoExecutionException("Time stamping failed at " + authority.tsa + ".", e);
+      }
+    }
+
+    /**
+     * The connection isn't disconnected and its streams are read completely, so it is kept alive and reused.
+     */
+    private byte[] _post(byte[] pRequest) throws IOException
+    {
+      HttpURLConnection connection = (HttpURLConnection) new URL(authority.tsa).openConnection();
+      connection.setConnectTimeout(TIMEOUT);
+      connection.setReadTimeout(TIMEOUT);
+      connection.setDoOutput(true);
+      connection.setRequestMethod("POST");
+      connection.setRequestProperty("Content-Type", "application/timestamp-query");
+      connection.setFixedLengthStreamingMode(pRequest.length);
+      try (OutputStream outputStream = connection.getOutputStream())
+      {
+        outputStream.write(pRequest);
+      }
+      int responseCode = connection.getResponseCode();
+      if (responseCode != HttpURLConnection.HTTP_OK)
+      {
+        try (InputStream errorStream = connection.getErrorStream())
+        {
+          if (errorStream != null)
+            _read(errorStream);
+        }
+        throw new IOException("Time stamping failed at " + authority.tsa + " with response code " + responseCode + ".");
+      }
+      try (InputStream inputStream = connection.getInputStream())
+      {
+        return _read(inputStream);
+      }
+    }
+
+    private byte[] _read(InputStream pInputStream) throws IOException
+    {
+      try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream())
+      {
+        byte[] buffer = new byte[4096];
+        for (int read = pInputStream.read(buffer); read != -1; read = pInputStream.read(buffer))
+          outputStream.write(buffer, 0, read);
+        return outputStream.toByteArray();
+      }
+    }
+  }
+
+}
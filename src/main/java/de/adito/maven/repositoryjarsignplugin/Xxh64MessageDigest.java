@@ -0,0 +1,154 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import java.nio.*;
+import java.security.MessageDigest;
+
+/**
+ * XXH64, a fast non-cryptographic hash, as a MessageDigest, so it can be used wherever checksums are calculated. The
+ * digest is the hash in big endian order followed by the length of the input, so inputs of different length never
+ * collide. It must not be used where an attacker might craft colliding inputs.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class Xxh64MessageDigest extends MessageDigest
+{
+
+  static final String ALGORITHM = "XXH64";
+
+  private static final long PRIME1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME3 = 0x165667B19E3779F9L;
+  private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME5 = 0x27D4EB2F165667C5L;
+  private static final int STRIPE = 32;
+
+  private final byte[] buffer = new byte[STRIPE];
+  private final ByteBuffer bufferView = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+  private int bufferSize;
+  private long length;
+  private long v1;
+  private long v2;
+  private long v3;
+  private long v4;
+
+
+  Xxh64MessageDigest()
+  {
+    super(ALGORITHM);
+    engineReset();
+  }
+
+  @Override
+  protected int engineGetDigestLength()
+  {
+    return 16;
+  }
+
+  @Override
+  protected void engineUpdate(byte pInput)
+  {
+    engineUpdate(new byte[]{pInput}, 0, 1);
+  }
+
+  @Override
+  protected void engineUpdate(byte[] pInput, int pOffset, int pLength)
+  {
+    length += pLength;
+    int position = pOffset;
+    int end = pOffset + pLength;
+    if (bufferSize > 0)
+    {
+      int count = Math.min(STRIPE - bufferSize, pLength);
+      System.arraycopy(pInput, pOffset, buffer, bufferSize, count);
+      bufferSize += count;
+      position += count;
+      if (bufferSize < STRIPE)
+        return;
+      _update(bufferView, 0);
+      bufferSize = 0;
+    }
+    if (end - position >= STRIPE)
+    {
+      ByteBuffer input = ByteBuffer.wrap(pInput).order(ByteOrder.LITTLE_ENDIAN);
+      for (; end - position >= STRIPE; position += STRIPE)
+        _update(input, position);
+    }
+    bufferSize = end - position;
+    System.arraycopy(pInput, position, buffer, 0, bufferSize);
+  }
+
+  @Override
+  protected byte[] engineDigest()
+  {
+    long hash;
+    if (length >= STRIPE)
+    {
+      hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+      hash = _merge(hash, v1);
+      hash = _merge(hash, v2);
+      hash = _merge(hash, v3);
+      hash = _merge(hash, v4);
+    }
+    else
+      hash = PRIME5;
+    hash += length;
+
+    int position = 0;
+    for (; position + 8 <= bufferSize; position += 8)
+    {
+      hash ^= _round(0, bufferView.getLong(position));
+      hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+    }
+    if (position + 4 <= bufferSize)
+    {
+      hash ^= (bufferView.getInt(position) & 0xFFFFFFFFL) * PRIME1;
+      hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+      position += 4;
+    }
+    for (; position < bufferSize; position++)
+    {
+      hash ^= (buffer[position] & 0xFF) * PRIME5;
+      hash = Long.rotateLeft(hash, 11) * PRIME1;
+    }
+
+    hash ^= hash >>> 33;
+    hash *= PRIME2;
+    hash ^= hash >>> 29;
+    hash *= PRIME3;
+    hash ^= hash >>> 32;
+
+    byte[] digest = ByteBuffer.allocate(16).putLong(hash).putLong(length).array();
+    engineReset();
+    return digest;
+  }
+
+  @Override
+  protected void engineReset()
+  {
+    bufferSize = 0;
+    length = 0;
+    v1 = PRIME1 + PRIME2;
+    v2 = PRIME2;
+    v3 = 0;
+    v4 = -PRIME1;
+  }
+
+  private void _update(ByteBuffer pInput, int pPosition)
+  {
+    v1 = _round(v1, pInput.getLong(pPosition));
+    v2 = _round(v2, pInput.getLong(pPosition + 8));
+    v3 = _round(v3, pInput.getLong(pPosition + 16));
+    v4 = _round(v4, pInput.getLong(pPosition + 24));
+  }
+
+  private static long _round(long pAccumulator, long pInput)
+  {
+    return Long.rotateLeft(pAccumulator + pInput * PRIME2, 31) * PRIME1;
+  }
+
+  private static long _merge(long pHash, long pAccumulator)
+  {
+    return (pHash ^ _round(0, pAccumulator)) * PRIME1 + PRIME4;
+  }
+
+}
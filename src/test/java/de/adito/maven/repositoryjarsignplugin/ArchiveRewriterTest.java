@@ -0,0 +1,209 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.zip.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the {@link ArchiveRewriter} writes the manifest first, replaces former signatures and keeps the bytes of
+ * all other entries, both when it copies them raw with {@link RawZipFile} and {@link RawZipOutput} and when it has to
+ * fall back to recompressing them.
+ *
+ * @author j.boesl, 17.10.26
+ */
+public class ArchiveRewriterTest
+{
+
+  private static final String SIGNATURE_NAME = "META-INF/NEW.SF";
+  private static final byte[] SIGNATURE = "Signature-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8);
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+  @Test
+  public void testRawCopy() throws Exception
+  {
+    Path source = temporaryFolder.getRoot().toPath().resolve("source.jar");
+    try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(source)))
+    {
+      // a level the fallback doesn't use, so recompressed entries would differ in size
+      zipOutputStream.setLevel(Deflater.BEST_SPEED);
+      zipOutputStream.putNextEntry(new ZipEntry("test/"));
+      ZipEntry compressedEntry = new ZipEntry("test/Compressed.txt");
+      compressedEntry.setComment("comment");
+      zipOutputStream.putNextEntry(compressedEntry);
+      zipOutputStream.write(_createData(100000));
+      byte[] stored = _createData(1000);
+      CRC32 crc = new CRC32();
+      crc.update(stored);
+      ZipEntry storedEntry = new ZipEntry("test/Stored.bin");
+      storedEntry.setMethod(ZipEntry.STORED);
+      storedEntry.setSize(stored.length);
+      storedEntry.setCrc(crc.getValue());
+      zipOutputStream.putNextEntry(storedEntry);
+      zipOutputStream.write(stored);
+      _putSignature(zipOutputStream);
+    }
+
+    Path target = _rewrite(source);
+    Map<String, ZipEntry> sourceEntries = _assertRewritten(source, target);
+    try (ZipFile zipFile = new ZipFile(target.toFile()))
+    {
+      for (ZipEntry sourceEntry : sourceEntries.values())
+      {
+        ZipEntry entry = zipFile.getEntry(sourceEntry.getName());
+        assertEquals(sourceEntry.getName(), sourceEntry.getMethod(), entry.getMethod());
+        assertEquals(sourceEntry.getName(), sourceEntry.getCompressedSize(), entry.getCompressedSize());
+        assertEquals(sourceEntry.getName(), sourceEntry.getComment(), entry.getComment());
+      }
+    }
+  }
+
+  /**
+   * Archives with more than 65534 entries need zip64, which {@link RawZipFile} doesn't read.
+   */
+  @Test
+  public void testRecompressedFallback() throws Exception
+  {
+    Path source = temporaryFolder.getRoot().toPath().resolve("source.jar");
+    try (ZipOutputStream zipOutputStream = new ZipOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(source))))
+    {
+      for (int i = 0; i < 0xFFFF; i++)
+      {
+        zipOutputStream.putNextEntry(new ZipEntry("test/" + i + ".txt"));
+        zipOutputStream.write(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+      }
+      _putSignature(zipOutputStream);
+    }
+    try
+    {
+      new RawZipFile(source).close();
+      fail("zip64 archive was read");
+    }
+    catch (ZipException e)
+    {
+      // expected
+    }
+
+    _assertRewritten(source, _rewrite(source));
+  }
+
+  /**
+   * Adds a manifest with digests of a former signature and its signature file after the content entries, where
+   * {@link JarInputStream} wouldn't find them.
+   */
+  private static void _putSignature(ZipOutputStream pZipOutputStream) throws IOException
+  {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    Attributes attributes = new Attributes();
+    attributes.putValue("SHA-256-Digest", "digest");
+    manifest.getEntries().put("test/Compressed.txt", attributes);
+    pZipOutputStream.putNextEntry(new ZipEntry(JarFile.MANIFEST_NAME));
+    manifest.write(pZipOutputStream);
+    pZipOutputStream.putNextEntry(new ZipEntry("META-INF/OLD.SF"));
+    pZipOutputStream.write(SIGNATURE);
+  }
+
+  private Path _rewrite(Path pSource) throws IOException
+  {
+    Path target = temporaryFolder.getRoot().toPath().resolve("target.jar");
+    try (ArchiveRewriter rewriter = new ArchiveRewriter(pSource, Collections.singletonMap("Added", "yes")))
+    {
+      rewriter.write(target, rewriter.getManifestBytes(), Collections.singletonMap(SIGNATURE_NAME, SIGNATURE));
+    }
+    return target;
+  }
+
+  /**
+   * Reads the target with {@link JarInputStream} and checks that it contains the merged manifest, the new signature
+   * file and all content entries of the source with unchanged bytes and CRCs.
+   *
+   * @return the content entries of the source by name.
+   */
+  private static Map<String, ZipEntry> _assertRewritten(Path pSource, Path pTarget) throws IOException
+  {
+    Map<String, ZipEntry> sourceEntries = new LinkedHashMap<>();
+    Map<String, byte[]> sourceContents = new HashMap<>();
+    try (ZipFile zipFile = new ZipFile(pSource.toFile()))
+    {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements())
+      {
+        ZipEntry entry = entries.nextElement();
+        if (!entry.getName().startsWith("META-INF/"))
+          try (InputStream inputStream = zipFile.getInputStream(entry))
+          {
+            sourceEntries.put(entry.getName(), entry);
+            sourceContents.put(entry.getName(), _read(inputStream));
+          }
+      }
+    }
+
+    List<String> names = new ArrayList<>();
+    try (JarInputStream jarInputStream = new JarInputStream(Files.newInputStream(pTarget)))
+    {
+      Manifest manifest = jarInputStream.getManifest();
+      assertNotNull("the manifest isn't the first entry", manifest);
+      assertEquals("yes", manifest.getMainAttributes().getValue("Added"));
+      assertTrue(manifest.getEntries().isEmpty());
+
+      for (JarEntry entry = jarInputStream.getNextJarEntry(); entry != null; entry = jarInputStream.getNextJarEntry())
+      {
+        names.add(entry.getName());
+        byte[] content = _read(jarInputStream);
+        if (entry.getName().equals(SIGNATURE_NAME))
+          assertArrayEquals(SIGNATURE, content);
+        else
+        {
+          ZipEntry sourceEntry = sourceEntries.get(entry.getName());
+          assertNotNull(entry.getName(), sourceEntry);
+          assertArrayEquals(entry.getName(), sourceContents.get(entry.getName()), content);
+          assertEquals(entry.getName(), sourceEntry.getCrc(), entry.getCrc());
+        }
+      }
+    }
+    List<String> expectedNames = new ArrayList<>();
+    expectedNames.add(SIGNATURE_NAME);
+    expectedNames.addAll(sourceEntries.keySet());
+    assertEquals(expectedNames, names);
+    return sourceEntries;
+  }
+
+  /**
+   * @return text of random words, so it compresses differently with each level.
+   */
+  private static byte[] _createData(int pLength)
+  {
+    Random random = new Random(pLength);
+    StringBuilder builder = new StringBuilder();
+    while (builder.length() < pLength)
+    {
+      int length = 1 + random.nextInt(8);
+      for (int i = 0; i < length; i++)
+        builder.append((char) ('a' + random.nextInt(6)));
+      builder.append(' ');
+    }
+    return builder.substring(0, pLength).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] _read(InputStream pInputStream) throws IOException
+  {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    for (int read = pInputStream.read(buffer); read != -1; read = pInputStream.read(buffer))
+      outputStream.write(buffer, 0, read);
+    return outputStream.toByteArray();
+  }
+
+}
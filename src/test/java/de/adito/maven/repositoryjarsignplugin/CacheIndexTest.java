@@ -0,0 +1,154 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the {@link CacheIndex} log survives appends, compactions and torn lines, that other instances of the same
+ * cache see the changes, and that checksum files of former versions are migrated.
+ *
+ * @author j.boesl, 17.10.26
+ */
+public class CacheIndexTest
+{
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path cachePath;
+  private Path indexPath;
+
+
+  @Before
+  public void createCache()
+  {
+    cachePath = temporaryFolder.getRoot().toPath();
+    indexPath = cachePath.resolve(CacheIndex.FILE_NAME);
+  }
+
+  @Test
+  public void testAppend() throws Exception
+  {
+    CacheIndex index = CacheIndex.load(cachePath, null, null);
+    index.put("a", new CacheIndex.Entry("checksum", "signed", "key"));
+    index.putReference("r", "store");
+    index.putHit("a", 5);
+    index.putVerification("a", new CacheIndex.Verification("signed", "certificate", 7));
+    index.putFingerprint("/a.jar", new FileFingerprint(1, 2, "fileKey", 3, "digest"));
+    index.flush();
+
+    CacheIndex loaded = CacheIndex.load(cachePath, null, null);
+    CacheIndex.Entry entry = loaded.get("a");
+    assertEquals("checksum", entry.getChecksum());
+    assertEquals("signed", entry.getSignedChecksum());
+    assertEquals("key", entry.getKeyDigest());
+    assertEquals("store", loaded.getReference("r"));
+    assertEquals(Long.valueOf(5), loaded.getHit("a"));
+    assertEquals(7, loaded.getVerification("a").getTime());
+    assertEquals("digest", loaded.getFingerprint("/a.jar").getDigest());
+  }
+
+  @Test
+  public void testRefresh() throws Exception
+  {
+    CacheIndex index = CacheIndex.load(cachePath, null, null);
+    index.put("a", new CacheIndex.Entry("a", null, null));
+    CacheIndex other = CacheIndex.load(cachePath, null, null);
+    index.put("b", new CacheIndex.Entry("b", null, null));
+    assertEquals("b", other.get("b").getChecksum());
+    other.put("c", new CacheIndex.Entry("c", null, null));
+    assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), index.getEntries().keySet());
+  }
+
+  @Test
+  public void testCompaction() throws Exception
+  {
+    CacheIndex index = CacheIndex.load(cachePath, null, null);
+    index.put("a", new CacheIndex.Entry("0", null, null));
+    CacheIndex other = CacheIndex.load(cachePath, null, null);
+    for (int i = 1; i <= 1000; i++)
+      index.put("a", new CacheIndex.Entry(String.valueOf(i), null, null));
+    assertTrue(Files.readAllLines(indexPath, StandardCharsets.UTF_8).size() < 1000);
+
+    assertEquals("1000", other.get("a").getChecksum());
+    other.put("b", new CacheIndex.Entry("b", null, null));
+    CacheIndex loaded = CacheIndex.load(cachePath, null, null);
+    assertEquals("1000", loaded.get("a").getChecksum());
+    assertEquals("b", loaded.get("b").getChecksum());
+  }
+
+  /**
+   * File systems without file keys can't tell a compacted index from the former one, so the header has to.
+   */
+  @Test
+  public void testCompactionInPlace() throws Exception
+  {
+    CacheIndex index = CacheIndex.load(cachePath, null, null);
+    index.put("a", new CacheIndex.Entry("a", null, null));
+    CacheIndex other = CacheIndex.load(cachePath, null, null);
+    Path formerIndexPath = cachePath.resolve("former");
+    Files.createLink(formerIndexPath, indexPath);
+
+    index.remove(Collections.singleton("a"));
+    index.put("b", new CacheIndex.Entry("bb", null, null));
+    // the compacted content is moved back into the file of the former index
+    Files.write(formerIndexPath, Files.readAllBytes(indexPath));
+    Files.move(formerIndexPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+
+    assertNull(other.get("a"));
+    assertEquals("bb", other.get("b").getChecksum());
+  }
+
+  @Test
+  public void testTornLine() throws Exception
+  {
+    CacheIndex index = CacheIndex.load(cachePath, null, null);
+    index.put("a", new CacheIndex.Entry("a", null, null));
+    Files.write(indexPath, "H\ta\t12x".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    CacheIndex other = CacheIndex.load(cachePath, null, null);
+    other.putHit("a", 5);
+    other.flush();
+    Files.write(indexPath, "H\tb\tx\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    CacheIndex loaded = CacheIndex.load(cachePath, null, null);
+    assertEquals("a", loaded.get("a").getChecksum());
+    assertEquals(Long.valueOf(5), loaded.getHit("a"));
+    assertNull(loaded.getHit("b"));
+  }
+
+  @Test
+  public void testMigration() throws Exception
+  {
+    Files.write(cachePath.resolve("a.jar"), new byte[]{1});
+    Files.write(cachePath.resolve("a.jar.sha1"), "checksum\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(cachePath.resolve("a.jar.signed.sha1"), "signed\n".getBytes(StandardCharsets.UTF_8));
+    // the checksum files of an entry whose jar is gone are deleted without being migrated
+    Files.write(cachePath.resolve("b.jar.sha1"), "checksum\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(cachePath.resolve("b.jar.signed.sha1"), "signed\n".getBytes(StandardCharsets.UTF_8));
+    Path keyDigestPath = cachePath.resolve("_key_store_key_digest.sha1");
+    Files.write(keyDigestPath, "key".getBytes(StandardCharsets.UTF_8));
+
+    CacheIndex index = CacheIndex.load(cachePath, ".sha1", "key");
+    CacheIndex.Entry entry = index.get("a.jar");
+    assertEquals("checksum", entry.getChecksum());
+    assertEquals("signed", entry.getSignedChecksum());
+    assertEquals("key", entry.getKeyDigest());
+    assertNull(index.get("b.jar"));
+    assertFalse(Files.exists(cachePath.resolve("a.jar.sha1")));
+    assertFalse(Files.exists(cachePath.resolve("a.jar.signed.sha1")));
+    assertFalse(Files.exists(cachePath.resolve("b.jar.sha1")));
+    assertFalse(Files.exists(cachePath.resolve("b.jar.signed.sha1")));
+    assertTrue(Files.exists(keyDigestPath));
+    assertTrue(Files.exists(cachePath.resolve("a.jar")));
+
+    assertEquals("checksum", CacheIndex.load(cachePath, ".sha1", "key").get("a.jar").getChecksum());
+  }
+
+}
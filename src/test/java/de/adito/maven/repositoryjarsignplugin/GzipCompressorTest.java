@@ -0,0 +1,91 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the blocks the {@link GzipCompressor} compresses in parallel form one gzip stream that any gzip reader
+ * restores byte by byte.
+ *
+ * @author j.boesl, 17.10.26
+ */
+public class GzipCompressorTest
+{
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+  @Test
+  public void testSingleBlock() throws Exception
+  {
+    _assertRoundTrip(_createData(GzipCompressor.BLOCK_SIZE / 3));
+  }
+
+  @Test
+  public void testMultipleBlocks() throws Exception
+  {
+    _assertRoundTrip(_createData(3 * GzipCompressor.BLOCK_SIZE + GzipCompressor.BLOCK_SIZE / 2));
+  }
+
+  @Test
+  public void testExactBlockSize() throws Exception
+  {
+    _assertRoundTrip(_createData(GzipCompressor.BLOCK_SIZE));
+  }
+
+  /**
+   * Compresses the data, restores it with {@link GZIPInputStream} and with {@link GzipCompressor#decompress(Path, Path)}
+   * and checks that both are equal to the data.
+   */
+  private void _assertRoundTrip(byte[] pData) throws IOException
+  {
+    Path archivePath = temporaryFolder.newFile("test.jar").toPath();
+    Files.write(archivePath, pData);
+    Path compressedPath = Compressor.TYPE.GZIP.getPath(archivePath);
+    GzipCompressor compressor = new GzipCompressor();
+    compressor.compress(archivePath, compressedPath);
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(compressedPath)))
+    {
+      byte[] buffer = new byte[8192];
+      for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer))
+        outputStream.write(buffer, 0, read);
+    }
+    assertArrayEquals(pData, outputStream.toByteArray());
+
+    Path decompressedPath = temporaryFolder.getRoot().toPath().resolve("decompressed.jar");
+    compressor.decompress(compressedPath, decompressedPath);
+    assertArrayEquals(pData, Files.readAllBytes(decompressedPath));
+  }
+
+  /**
+   * @return random data with repetitions, so blocks contain back references into the dictionary of the former block.
+   */
+  private static byte[] _createData(int pLength)
+  {
+    Random random = new Random(pLength);
+    byte[] data = new byte[pLength];
+    byte[] pattern = new byte[4096];
+    random.nextBytes(pattern);
+    for (int i = 0; i < pLength; )
+      if (random.nextBoolean())
+      {
+        int length = Math.min(random.nextInt(pattern.length), pLength - i);
+        System.arraycopy(pattern, 0, data, i, length);
+        i += length;
+      }
+      else
+        data[i++] = (byte) random.nextInt();
+    return data;
+  }
+
+}
@@ -0,0 +1,93 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.security.cert.X509Certificate;
+import java.util.*;
+import java.util.jar.*;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the {@link JarSignerSignEngine} falls back to the next TSA when jarsigner fails with one and removes the
+ * digests of former signatures.
+ *
+ * @author j.boesl, 17.10.26
+ */
+public class JarSignerSignEngineTest
+{
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testTsaFallback() throws Exception
+  {
+    Path keystore = temporaryFolder.getRoot().toPath().resolve("keystore");
+    TestKeys keys = TestKeys.create("Test", false);
+    keys.store(keystore);
+    Path jar = temporaryFolder.getRoot().toPath().resolve("test.jar");
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    try (OutputStream outputStream = Files.newOutputStream(jar);
+         JarOutputStream jarOutputStream = new JarOutputStream(outputStream, manifest))
+    {
+      jarOutputStream.putNextEntry(new ZipEntry("test/Test.txt"));
+      jarOutputStream.write(new byte[]{1, 2, 3});
+    }
+
+    TestKeys tsaKeys = TestKeys.create("Test TSA", true);
+    try (StubTsa failingTsa = new StubTsa(tsaKeys, 0);
+         StubTsa workingTsa = new StubTsa(tsaKeys, 0))
+    {
+      failingTsa.setFailing(true);
+      JarSignerSignEngine signEngine = new JarSignerSignEngine(
+          new DefaultLog(new ConsoleLogger(Logger.LEVEL_INFO, "test")), TestKeys.ALIAS, keystore.toString(),
+          TestKeys.PASSWORD, null, Arrays.asList(failingTsa.getUrl(), workingTsa.getUrl()), null);
+      signEngine.sign(jar, null, null);
+
+      assertEquals(1, failingTsa.getRequestCount());
+      assertEquals(1, workingTsa.getRequestCount());
+    }
+    new JarVerifier(keys.getCertificate(), Collections.<X509Certificate>emptySet()).verify(jar);
+  }
+
+  @Test
+  public void testFormerDigestsAreRemoved() throws Exception
+  {
+    Path keystore = temporaryFolder.getRoot().toPath().resolve("keystore");
+    TestKeys keys = TestKeys.create("Test", false);
+    keys.store(keystore);
+    // a jar whose signature files were removed, but not the digests in its manifest
+    Path jar = temporaryFolder.getRoot().toPath().resolve("test.jar");
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    Attributes attributes = new Attributes();
+    attributes.putValue("MD5-Digest", "AAAAAAAAAAAAAAAAAAAAAA==");
+    manifest.getEntries().put("test/Test.txt", attributes);
+    try (OutputStream outputStream = Files.newOutputStream(jar);
+         JarOutputStream jarOutputStream = new JarOutputStream(outputStream, manifest))
+    {
+      jarOutputStream.putNextEntry(new ZipEntry("test/Test.txt"));
+      jarOutputStream.write(new byte[]{1, 2, 3});
+    }
+
+    new JarSignerSignEngine(new DefaultLog(new ConsoleLogger(Logger.LEVEL_INFO, "test")), TestKeys.ALIAS,
+                            keystore.toString(), TestKeys.PASSWORD, null, Collections.<String>emptyList(), null)
+        .sign(jar, null, null);
+
+    try (JarFile jarFile = new JarFile(jar.toFile(), false))
+    {
+      assertNull(jarFile.getManifest().getAttributes("test/Test.txt").getValue("MD5-Digest"));
+    }
+    new JarVerifier(keys.getCertificate(), Collections.<X509Certificate>emptySet()).verify(jar);
+  }
+
+}
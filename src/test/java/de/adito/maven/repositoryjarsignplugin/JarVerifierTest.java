@@ -0,0 +1,180 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.cert.X509Certificate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.*;
+import java.util.zip.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the {@link JarVerifier} rejects jars that are tampered with, signed by another key or signed with an expired
+ * certificate, unless a trusted timestamp proves that they were signed while the certificate was valid.
+ *
+ * @author j.boesl, 17.10.26
+ */
+public class JarVerifierTest
+{
+
+  private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private List<StubTsa> stubTsas = new ArrayList<>();
+
+
+  @After
+  public void closeStubTsas()
+  {
+    for (StubTsa stubTsa : stubTsas)
+      stubTsa.close();
+  }
+
+  @Test
+  public void testValid() throws Exception
+  {
+    SigningKey signingKey = _store(TestKeys.create("Test", false));
+    Path jar = _sign(signingKey, null);
+    _createVerifier(signingKey).verify(jar);
+  }
+
+  @Test
+  public void testTamperedEntry() throws Exception
+  {
+    SigningKey signingKey = _store(TestKeys.create("Test", false));
+    Path jar = _sign(signingKey, null);
+
+    Path tamperedJar = temporaryFolder.getRoot().toPath().resolve("tampered.jar");
+    try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(jar));
+         ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(tamperedJar)))
+    {
+      for (ZipEntry entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry())
+      {
+        zipOutputStream.putNextEntry(new ZipEntry(entry.getName()));
+        byte[] bytes = _read(zipInputStream);
+        if (entry.getName().equals("test/Test.txt"))
+          bytes[0]++;
+        zipOutputStream.write(bytes);
+      }
+    }
+    _assertRejected(_createVerifier(signingKey), tamperedJar);
+  }
+
+  @Test
+  public void testWrongSigner() throws Exception
+  {
+    SigningKey signingKey = _store(TestKeys.create("Test", false));
+    Path jar = _sign(signingKey, null);
+    TestKeys expectedKeys = TestKeys.create("Expected", false);
+    _assertRejected(new JarVerifier(expectedKeys.getCertificate(), signingKey.getTrustedCertificates()), jar);
+  }
+
+  @Test
+  public void testExpiredWithoutTimestamp() throws Exception
+  {
+    SigningKey signingKey = _store(_createExpiredKeys());
+    Path jar = _sign(signingKey, null);
+    _assertRejected(_createVerifier(signingKey), jar);
+  }
+
+  @Test
+  public void testExpiredWithTimestamp() throws Exception
+  {
+    TestKeys tsaKeys = _createTsaKeys();
+    SigningKey signingKey = _store(_createExpiredKeys(), tsaKeys.getCertificate());
+    Path jar = _sign(signingKey, _createStubTsa(tsaKeys, new Date(System.currentTimeMillis() - 20 * DAY)));
+    _createVerifier(signingKey).verify(jar);
+  }
+
+  @Test
+  public void testForgedTimestamp() throws Exception
+  {
+    // the backdated timestamp is issued by a TSA whose self issued certificate isn't trusted
+    SigningKey signingKey = _store(_createExpiredKeys());
+    Path jar = _sign(signingKey, _createStubTsa(_createTsaKeys(), new Date(System.currentTimeMillis() - 20 * DAY)));
+    _assertRejected(_createVerifier(signingKey), jar);
+  }
+
+  private static TestKeys _createExpiredKeys() throws Exception
+  {
+    long now = System.currentTimeMillis();
+    return TestKeys.create("Expired", false, new Date(now - 30 * DAY), new Date(now - 10 * DAY));
+  }
+
+  private static TestKeys _createTsaKeys() throws Exception
+  {
+    long now = System.currentTimeMillis();
+    return TestKeys.create("Test TSA", true, new Date(now - 365 * DAY), new Date(now + 365 * DAY));
+  }
+
+  private StubTsa _createStubTsa(TestKeys pKeys, Date pTime) throws Exception
+  {
+    StubTsa stubTsa = new StubTsa(pKeys, 0);
+    stubTsas.add(stubTsa);
+    stubTsa.setTime(pTime);
+    return stubTsa;
+  }
+
+  /**
+   * Stores the keys in a keystore and loads them again, so the trusted certificates are the ones of a real keystore.
+   */
+  private SigningKey _store(TestKeys pKeys, X509Certificate... pTrustedCertificates) throws Exception
+  {
+    Path keystore = temporaryFolder.newFile().toPath();
+    pKeys.store(keystore, pTrustedCertificates);
+    return SigningKey.load(keystore.toString(), TestKeys.ALIAS, TestKeys.PASSWORD, null);
+  }
+
+  private Path _sign(SigningKey pSigningKey, StubTsa pStubTsa) throws Exception
+  {
+    Path jar = temporaryFolder.getRoot().toPath().resolve("test.jar");
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    try (OutputStream outputStream = Files.newOutputStream(jar);
+         JarOutputStream jarOutputStream = new JarOutputStream(outputStream, manifest))
+    {
+      jarOutputStream.putNextEntry(new ZipEntry("test/Test.txt"));
+      jarOutputStream.write(new byte[]{1, 2, 3});
+    }
+    TimestampClient timestampClient = pStubTsa == null ? null :
+        new TimestampClient(Collections.singletonList(pStubTsa.getUrl()), 0, 0);
+    new InternalSignEngine(pSigningKey, timestampClient, null).sign(jar, null, null);
+    return jar;
+  }
+
+  private static JarVerifier _createVerifier(SigningKey pSigningKey)
+  {
+    return new JarVerifier(pSigningKey.getCertificate(), pSigningKey.getTrustedCertificates());
+  }
+
+  private static void _assertRejected(JarVerifier pVerifier, Path pJar) throws IOException
+  {
+    try
+    {
+      pVerifier.verify(pJar);
+      fail(pJar.getFileName() + " was accepted.");
+    }
+    catch (MojoExecutionException e)
+    {
+      // expected
+    }
+  }
+
+  private static byte[] _read(InputStream pInputStream) throws IOException
+  {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    for (int read = pInputStream.read(buffer); read != -1; read = pInputStream.read(buffer))
+      outputStream.write(buffer, 0, read);
+    return outputStream.toByteArray();
+  }
+
+}
@@ -0,0 +1,185 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import com.sun.net.httpserver.*;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.tsp.*;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A local RFC 3161 time stamping authority, so signing with time stamps can be tested and measured offline and without
+ * the variance of a public TSA. The latency of a real TSA is simulated by a fixed delay before each response. The stub
+ * counts its requests and can be switched to fail them.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class StubTsa implements Closeable
+{
+
+  private static final ASN1ObjectIdentifier POLICY = new ASN1ObjectIdentifier("1.3.6.1.4.1.59150.1");
+
+  private final TimeStampResponseGenerator responseGenerator;
+  private final long latency;
+  private final AtomicLong serialNumber = new AtomicLong();
+  private final AtomicInteger requestCount = new AtomicInteger();
+  private final AtomicInteger runningCount = new AtomicInteger();
+  private final AtomicInteger maxRunningCount = new AtomicInteger();
+  private volatile boolean failing;
+  private volatile Date time;
+  private final HttpServer server;
+  private final ExecutorService executorService;
+
+
+  /**
+   * @param pKeys    the key and certificate the tokens are signed with. The certificate has to be a TSA certificate.
+   * @param pLatency the delay of each response in milliseconds.
+   */
+  StubTsa(TestKeys pKeys, long pLatency) throws Exception
+  {
+    TimeStampTokenGenerator tokenGenerator = new TimeStampTokenGenerator(
+        new JcaSimpleSignerInfoGeneratorBuilder().build("SHA256withRSA", pKeys.getPrivateKey(), pKeys.getCertificate()),
+        new JcaDigestCalculatorProviderBuilder().build().get(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1)),
+        POLICY);
+    tokenGenerator.addCertificates(new JcaCertStore(Collections.singletonList(pKeys.getCertificate())));
+    responseGenerator = new TimeStampResponseGenerator(tokenGenerator, TSPAlgorithms.ALLOWED);
+    latency = pLatency;
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    executorService = Executors.newCachedThreadPool();
+    server.setExecutor(executorService);
+    server.createContext("/", new HttpHandler()
+    {
+      @Override
+      public void handle(HttpExchange pExchange) throws IOException
+      {
+        _handle(pExchange);
+      }
+    });
+    server.start();
+  }
+
+  /**
+   * @return the url to send time stamp requests to.
+   */
+  String getUrl()
+  {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+  }
+
+  /**
+   * @param pFailing whether requests are answered with <tt>500</tt> instead of a time stamp.
+   */
+  void setFailing(boolean pFailing)
+  {
+    failing = pFailing;
+  }
+
+  /**
+   * @param pTime the time the tokens are issued at or <tt>null</tt> for the current time.
+   */
+  void setTime(Date pTime)
+  {
+    time = pTime;
+  }
+
+  /**
+   * @return the number of requests received so far.
+   */
+  int getRequestCount()
+  {
+    return requestCount.get();
+  }
+
+  /**
+   * @return the maximum number of requests that were handled at the same time.
+   */
+  int getMaxRunningCount()
+  {
+    return maxRunningCount.get();
+  }
+
+  @Override
+  public void close()
+  {
+    server.stop(0);
+    executorService.shutdownNow();
+  }
+
+  private void _handle(HttpExchange pExchange) throws IOException
+  {
+    requestCount.incrementAndGet();
+    int count = runningCount.incrementAndGet();
+    for (int max = maxRunningCount.get(); count > max && !maxRunningCount.compareAndSet(max, count); )
+      max = maxRunningCount.get();
+    boolean running = true;
+    try
+    {
+      byte[] requestBytes;
+      try (InputStream inputStream = pExchange.getRequestBody())
+      {
+        requestBytes = _read(inputStream);
+      }
+      if (failing)
+      {
+        pExchange.sendResponseHeaders(HttpURLConnection.HTTP_INTERNAL_ERROR, -1);
+        return;
+      }
+      TimeStampResponse response;
+      synchronized (responseGenerator)
+      {
+        response = responseGenerator.generate(new TimeStampRequest(requestBytes),
+                                              BigInteger.valueOf(serialNumber.incrementAndGet()),
+                                              time == null ? new Date() : time);
+      }
+      byte[] responseBytes = response.getEncoded();
+      if (latency > 0)
+        Thread.sleep(latency);
+      // not running anymore before the client gets the response, so it can't send another request before
+      runningCount.decrementAndGet();
+      running = false;
+      pExchange.getResponseHeaders().set("Content-Type", "application/timestamp-reply");
+      pExchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, responseBytes.length);
+      try (OutputStream outputStream = pExchange.getResponseBody())
+      {
+        outputStream.write(responseBytes);
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      pExchange.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, -1);
+    }
+    catch (TSPException | IOException e)
+    {
+      pExchange.sendResponseHeaders(HttpURLConnection.HTTP_BAD_REQUEST, -1);
+    }
+    finally
+    {
+      if (running)
+        runningCount.decrementAndGet();
+      pExchange.close();
+    }
+  }
+
+  private static byte[] _read(InputStream pInputStream) throws IOException
+  {
+    try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream())
+    {
+      byte[] buffer = new byte[4096];
+      for (int read = pInputStream.read(buffer); read != -1; read = pInputStream.read(buffer))
+        outputStream.write(buffer, 0, read);
+      return outputStream.toByteArray();
+    }
+  }
+
+}
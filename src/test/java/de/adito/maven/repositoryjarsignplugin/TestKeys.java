@@ -0,0 +1,105 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.*;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.jcajce.*;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.file.*;
+import java.security.*;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Self signed keys for tests and benchmarks. The signer key is stored in a keystore of the default type, so it can be
+ * loaded by {@link SigningKey}, jarsigner and the <tt>sign</tt> goal like a real one.
+ *
+ * @author j.boesl, 17.10.26
+ */
+class TestKeys
+{
+
+  static final String ALIAS = "test";
+  static final String PASSWORD = "test";
+
+  private final PrivateKey privateKey;
+  private final X509Certificate certificate;
+
+
+  private TestKeys(PrivateKey pPrivateKey, X509Certificate pCertificate)
+  {
+    privateKey = pPrivateKey;
+    certificate = pCertificate;
+  }
+
+  /**
+   * @param pCommonName the common name of the certificate.
+   * @param pTsa        whether the certificate may sign time stamps.
+   * @return a new RSA key with a self signed certificate.
+   */
+  static TestKeys create(String pCommonName, boolean pTsa) throws Exception
+  {
+    long now = System.currentTimeMillis();
+    return create(pCommonName, pTsa, new Date(now - TimeUnit.DAYS.toMillis(1)),
+                  new Date(now + TimeUnit.DAYS.toMillis(3650)));
+  }
+
+  /**
+   * @param pCommonName the common name of the certificate.
+   * @param pTsa        whether the certificate may sign time stamps.
+   * @param pNotBefore  the start of the validity of the certificate.
+   * @param pNotAfter   the end of the validity of the certificate.
+   * @return a new RSA key with a self signed certificate.
+   */
+  static TestKeys create(String pCommonName, boolean pTsa, Date pNotBefore, Date pNotAfter) throws Exception
+  {
+    KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+    keyPairGenerator.initialize(2048);
+    KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+    X500Name name = new X500Name("CN=" + pCommonName);
+    JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+        name, BigInteger.valueOf(System.nanoTime()), pNotBefore, pNotAfter, name, keyPair.getPublic());
+    if (pTsa)
+      // RFC 3161 requires the extended key usage to be critical and to contain time stamping only
+      builder.addExtension(Extension.extendedKeyUsage, true, new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping));
+    X509Certificate certificate = new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+    return new TestKeys(keyPair.getPrivate(), certificate);
+  }
+
+  PrivateKey getPrivateKey()
+  {
+    return privateKey;
+  }
+
+  X509Certificate getCertificate()
+  {
+    return certificate;
+  }
+
+  /**
+   * Stores the key under {@link #ALIAS} with {@link #PASSWORD} as store and key password.
+   *
+   * @param pKeystorePath        the keystore file.
+   * @param pTrustedCertificates certificates that are stored as trusted certificate entries in addition.
+   */
+  void store(Path pKeystorePath, X509Certificate... pTrustedCertificates) throws IOException, GeneralSecurityException
+  {
+    KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keyStore.load(null, null);
+    keyStore.setKeyEntry(ALIAS, privateKey, PASSWORD.toCharArray(), new Certificate[]{certificate});
+    for (int i = 0; i < pTrustedCertificates.length; i++)
+      keyStore.setCertificateEntry("trusted" + i, pTrustedCertificates[i]);
+    try (OutputStream outputStream = Files.newOutputStream(pKeystorePath))
+    {
+      keyStore.store(outputStream, PASSWORD.toCharArray());
+    }
+  }
+
+}
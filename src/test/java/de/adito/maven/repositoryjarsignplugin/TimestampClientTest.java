@@ -0,0 +1,126 @@
+package de.adito.maven.repositoryjarsignplugin;
+
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.junit.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the scheduling of time stamp requests by the {@link TimestampClient} against {@link StubTsa}s.
+ *
+ * @author j.boesl, 17.10.26
+ */
+public class TimestampClientTest
+{
+
+  private static TestKeys tsaKeys;
+
+  private List<StubTsa> stubTsas = new ArrayList<>();
+
+
+  @BeforeClass
+  public static void createKeys() throws Exception
+  {
+    tsaKeys = TestKeys.create("Test TSA", true);
+  }
+
+  @After
+  public void closeStubTsas()
+  {
+    for (StubTsa stubTsa : stubTsas)
+      stubTsa.close();
+  }
+
+  @Test
+  public void testFirstTokenWinsAfterHedgeDelay() throws Exception
+  {
+    StubTsa slowTsa = _createStubTsa(5000);
+    StubTsa fastTsa = _createStubTsa(0);
+    TimestampClient timestampClient = new TimestampClient(Arrays.asList(slowTsa.getUrl(), fastTsa.getUrl()), 0, 200);
+
+    long start = System.currentTimeMillis();
+    byte[] token = timestampClient.timestamp(new byte[]{1, 2, 3});
+    long duration = System.currentTimeMillis() - start;
+
+    _assertToken(token);
+    assertTrue("the token of the fast TSA wasn't taken, took " + duration + " ms", duration < 2500);
+    assertEquals(1, slowTsa.getRequestCount());
+    assertEquals(1, fastTsa.getRequestCount());
+  }
+
+  @Test
+  public void testFailoverToNextTsa() throws Exception
+  {
+    StubTsa failingTsa = _createStubTsa(0);
+    failingTsa.setFailing(true);
+    StubTsa workingTsa = _createStubTsa(0);
+    TimestampClient timestampClient = new TimestampClient(Arrays.asList(failingTsa.getUrl(), workingTsa.getUrl()), 0,
+                                                          10000);
+
+    long start = System.currentTimeMillis();
+    byte[] token = timestampClient.timestamp(new byte[]{1, 2, 3});
+    long duration = System.currentTimeMillis() - start;
+
+    _assertToken(token);
+    assertTrue("the failover waited for the hedge delay, took " + duration + " ms", duration < 5000);
+    assertEquals(1, failingTsa.getRequestCount());
+    assertEquals(1, workingTsa.getRequestCount());
+
+    // the failed TSA is tried last from now on
+    _assertToken(timestampClient.timestamp(new byte[]{4, 5, 6}));
+    assertEquals(1, failingTsa.getRequestCount());
+    assertEquals(2, workingTsa.getRequestCount());
+  }
+
+  @Test
+  public void testMaxRequests() throws Exception
+  {
+    final StubTsa stubTsa = _createStubTsa(200);
+    final TimestampClient timestampClient = new TimestampClient(Collections.singletonList(stubTsa.getUrl()), 2, 10000);
+
+    ExecutorService executorService = Executors.newFixedThreadPool(8);
+    try
+    {
+      List<Future<byte[]>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++)
+      {
+        final byte[] signature = {(byte) i};
+        futures.add(executorService.submit(new Callable<byte[]>()
+        {
+          @Override
+          public byte[] call() throws Exception
+          {
+            return timestampClient.timestamp(signature);
+          }
+        }));
+      }
+      for (Future<byte[]> future : futures)
+        _assertToken(future.get());
+    }
+    finally
+    {
+      executorService.shutdownNow();
+    }
+
+    assertEquals(8, stubTsa.getRequestCount());
+    assertEquals(2, stubTsa.getMaxRunningCount());
+  }
+
+  private StubTsa _createStubTsa(long pLatency) throws Exception
+  {
+    StubTsa stubTsa = new StubTsa(tsaKeys, pLatency);
+    stubTsas.add(stubTsa);
+    return stubTsa;
+  }
+
+  private static void _assertToken(byte[] pToken) throws Exception
+  {
+    TimeStampToken token = new TimeStampToken(new CMSSignedData(pToken));
+    assertEquals(tsaKeys.getCertificate().getSerialNumber(), token.getSID().getSerialNumber());
+  }
+
+}